@@ -0,0 +1,187 @@
+package com.logicsoft.molina.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.core.CachedTimestampSource;
+import com.logicsoft.molina.core.ErrorTemplates;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.exception.ApiResponseConstraintViolationAdvice;
+import com.logicsoft.molina.exception.ApiResponseGenericExceptionAdvice;
+import com.logicsoft.molina.exception.ApiResponseReactiveExceptionAdvice;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@code @ExceptionHandler} of the three exception advices, including serialization of the returned
+ * envelope, against a {@link ProblemDetail} (Spring's default error body) serialized without an envelope.
+ * Statuses with an {@link ErrorTemplates error template} are written by the advices themselves; the
+ * {@code *Serialized} variants run the same handlers without templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionAdviceBenchmark {
+
+    private ObjectMapper mapper;
+    private ApiResponseGenericExceptionAdvice generic;
+    private ApiResponseConstraintViolationAdvice constraints;
+    private ApiResponseReactiveExceptionAdvice reactive;
+    private ApiResponseGenericExceptionAdvice genericSerialized;
+    private ApiResponseReactiveExceptionAdvice reactiveSerialized;
+
+    private MethodArgumentNotValidException argumentNotValid;
+    private WebExchangeBindException bindException;
+    private ServerWebInputException inputException;
+    private ConstraintViolationException constraintViolation;
+    private ResponseStatusException notFound;
+    private IllegalStateException unexpected;
+
+    @Setup
+    public void setup() throws Exception {
+        mapper = Fixtures.mapper();
+        TimestampSource timestamps = new CachedTimestampSource(CachedTimestampSource.Precision.MILLIS);
+        generic = new ApiResponseGenericExceptionAdvice(timestamps);
+        constraints = new ApiResponseConstraintViolationAdvice(timestamps);
+        reactive = new ApiResponseReactiveExceptionAdvice(timestamps);
+        genericSerialized = new ApiResponseGenericExceptionAdvice(timestamps, ResponseHandlerMetrics.NOOP,
+                ExceptionClassifier.defaults(), ErrorTemplates.NONE);
+        reactiveSerialized = new ApiResponseReactiveExceptionAdvice(timestamps, ResponseHandlerMetrics.NOOP,
+                ExceptionClassifier.defaults(), ErrorTemplates.NONE);
+
+        MethodParameter parameter = new MethodParameter(
+                Fixtures.Handlers.class.getMethod("object"), -1);
+        BeanPropertyBindingResult binding = new BeanPropertyBindingResult(new Fixtures.Invalid("", 0), "invalid");
+        binding.rejectValue("name", "NotBlank", "must not be blank");
+        binding.rejectValue("age", "Min", "must be greater than or equal to 1");
+        argumentNotValid = new MethodArgumentNotValidException(parameter, binding);
+        bindException = new WebExchangeBindException(parameter, binding);
+        inputException = new ServerWebInputException("Type mismatch", parameter);
+
+        try (var factory = Validation.buildDefaultValidatorFactory()) {
+            Validator validator = factory.getValidator();
+            constraintViolation = new ConstraintViolationException(validator.validate(new Fixtures.Invalid("", 0)));
+        }
+        notFound = new ResponseStatusException(HttpStatus.NOT_FOUND, "Item 42 not found");
+        unexpected = new IllegalStateException("Connection reset");
+    }
+
+    /* -------- MVC -------- */
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/items");
+        request.addHeader("Accept", "application/json");
+        return request;
+    }
+
+    @Benchmark
+    public byte[] mvcValidation() throws IOException {
+        return mapper.writeValueAsBytes(generic.handleValidation(argumentNotValid, request(), new MockHttpServletResponse()));
+    }
+
+    @Benchmark
+    public byte[] mvcAny() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return body(generic.handleAny(unexpected, request(), response), response);
+    }
+
+    @Benchmark
+    public byte[] mvcAnySerialized() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return body(genericSerialized.handleAny(unexpected, request(), response), response);
+    }
+
+    @Benchmark
+    public byte[] mvcConstraintViolation() throws IOException {
+        return mapper.writeValueAsBytes(
+                constraints.handleConstraintViolation(constraintViolation, request(), new MockHttpServletResponse()));
+    }
+
+    /* -------- WebFlux -------- */
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/items").accept(MediaType.APPLICATION_JSON));
+    }
+
+    @Benchmark
+    public byte[] reactiveBind() throws IOException {
+        return body(reactive.handleBind(bindException, exchange()));
+    }
+
+    @Benchmark
+    public byte[] reactiveInput() throws IOException {
+        return body(reactive.handleInput(inputException, exchange()));
+    }
+
+    @Benchmark
+    public byte[] reactiveConstraintViolation() throws IOException {
+        return body(reactive.handleCve(constraintViolation, exchange()));
+    }
+
+    @Benchmark
+    public byte[] reactiveResponseStatus() throws IOException {
+        MockServerWebExchange exchange = exchange();
+        return body(reactive.handleRse(notFound, exchange), exchange);
+    }
+
+    @Benchmark
+    public byte[] reactiveResponseStatusSerialized() throws IOException {
+        MockServerWebExchange exchange = exchange();
+        return body(reactiveSerialized.handleRse(notFound, exchange), exchange);
+    }
+
+    @Benchmark
+    public byte[] reactiveAny() throws IOException {
+        MockServerWebExchange exchange = exchange();
+        return body(reactive.handleAny(unexpected, exchange), exchange);
+    }
+
+    /* -------- baseline -------- */
+
+    @Benchmark
+    public byte[] unwrapped() throws IOException {
+        return mapper.writeValueAsBytes(ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, "Item 42 not found"));
+    }
+
+    private byte[] body(Mono<? extends ResponseEntity<?>> response) throws IOException {
+        ResponseEntity<?> entity = response.block();
+        return mapper.writeValueAsBytes(entity != null ? entity.getBody() : null);
+    }
+
+    /* A templated envelope is in the response rather than returned */
+    private byte[] body(Object envelope, MockHttpServletResponse response) throws IOException {
+        return (envelope != null) ? mapper.writeValueAsBytes(envelope) : response.getContentAsByteArray();
+    }
+
+    private byte[] body(Mono<? extends ResponseEntity<?>> response, MockServerWebExchange exchange)
+            throws IOException {
+        ResponseEntity<?> entity = response.block();
+        if (entity != null) return mapper.writeValueAsBytes(entity.getBody());
+        String body = exchange.getResponse().getBodyAsString().block();
+        return (body != null) ? body.getBytes(StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.logicsoft.molina.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.logicsoft.molina.annotations.FluxMode;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.ReflectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Shared payloads and handler methods for the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    record Item(long id, String name, String description, double price, List<String> tags, Instant createdAt) {
+    }
+
+    record Invalid(@NotBlank String name, @Min(1) int age) {
+    }
+
+    static Item item(long id) {
+        return new Item(id, "item-" + id, "A moderately sized description for item " + id,
+                id * 1.25, List.of("alpha", "beta", "gamma"), Instant.parse("2025-08-16T12:00:00Z"));
+    }
+
+    static List<Item> items(int size) {
+        Item[] items = new Item[size];
+        for (int i = 0; i < size; i++) items[i] = item(i);
+        return List.of(items);
+    }
+
+    static String text(int length) {
+        return "x".repeat(length);
+    }
+
+    static ObjectMapper mapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    static MethodParameter returnType(String methodName) {
+        Method method = ReflectionUtils.findMethod(Handlers.class, methodName);
+        if (method == null) throw new IllegalArgumentException(methodName);
+        return new MethodParameter(method, -1);
+    }
+
+    /**
+     * Handler methods whose return types mirror typical controllers; only their signatures are used.
+     */
+    static class Handlers {
+
+        @ResponseHandler
+        public Item object() {
+            return null;
+        }
+
+        @ResponseHandler
+        public String string() {
+            return null;
+        }
+
+        @ResponseHandler
+        public Mono<Item> mono() {
+            return null;
+        }
+
+        @ResponseHandler
+        public Flux<Item> flux() {
+            return null;
+        }
+
+        @ResponseHandler(flux = FluxMode.STREAM)
+        public Flux<Item> fluxStream() {
+            return null;
+        }
+
+        public Item rawObject() {
+            return null;
+        }
+
+        public Flux<Item> rawFlux() {
+            return null;
+        }
+    }
+}
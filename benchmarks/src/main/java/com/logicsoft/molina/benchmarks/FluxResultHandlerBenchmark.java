@@ -0,0 +1,71 @@
+package com.logicsoft.molina.benchmarks;
+
+import com.logicsoft.molina.core.ApiResponseResultHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ApiResponseResultHandler#handleResult} for a {@code Flux} in collect and stream mode, against the
+ * same Flux written by {@code ResponseBodyResultHandler} without an envelope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FluxResultHandlerBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private ReactiveSupport support;
+    private MethodParameter fluxType;
+    private MethodParameter streamType;
+    private MethodParameter rawFluxType;
+    private List<Fixtures.Item> items;
+
+    @Setup
+    public void setup() {
+        support = new ReactiveSupport();
+        fluxType = Fixtures.returnType("flux");
+        streamType = Fixtures.returnType("fluxStream");
+        rawFluxType = Fixtures.returnType("rawFlux");
+        items = Fixtures.items(size);
+    }
+
+    @Benchmark
+    public long collect() {
+        return handle(support.handler::handleResult, fluxType);
+    }
+
+    @Benchmark
+    public long stream() {
+        return handle(support.handler::handleResult, streamType);
+    }
+
+    @Benchmark
+    public long unwrapped() {
+        return handle(support.baseline::handleResult, rawFluxType);
+    }
+
+    private long handle(Handler handler, MethodParameter returnType) {
+        AtomicLong bytes = new AtomicLong();
+        handler.handle(support.exchange(bytes),
+                ReactiveSupport.result(Flux.fromIterable(items), returnType)).block();
+        return bytes.get();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Mono<Void> handle(ServerWebExchange exchange, HandlerResult result);
+    }
+}
@@ -0,0 +1,116 @@
+package com.logicsoft.molina.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.core.ApiResponseMvcAdvice;
+import com.logicsoft.molina.core.CachedTimestampSource;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ApiResponseMvcAdvice#beforeBodyWrite} followed by the converter write Spring MVC would perform,
+ * for the Jackson and String converters, against the same payload written without an envelope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MvcAdviceBenchmark {
+
+    @Param({"JACKSON", "STRING"})
+    public String converter;
+
+    private ApiResponseMvcAdvice advice;
+    private ApiResponseMvcAdvice directAdvice;
+    private MappingJackson2HttpMessageConverter jackson;
+    private StringHttpMessageConverter string;
+    private MethodParameter returnType;
+    private Object body;
+    private MediaType contentType;
+    private Class<? extends HttpMessageConverter<?>> converterType;
+
+    @Setup
+    public void setup() {
+        ObjectMapper mapper = Fixtures.mapper();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("objectMapper", mapper);
+        GenericApplicationContext ctx = new GenericApplicationContext();
+        ctx.refresh();
+        HandlerDescriptorRegistry descriptors = new HandlerDescriptorRegistry();
+        CachedTimestampSource timestamps = new CachedTimestampSource(CachedTimestampSource.Precision.MILLIS);
+        ExceptionClassifier classifier = ExceptionClassifier.defaults();
+        advice = new ApiResponseMvcAdvice(beanFactory.getBeanProvider(ObjectMapper.class), ctx, false,
+                descriptors, false, timestamps, ResponseHandlerMetrics.NOOP, null, classifier,
+                "fields", false);
+        directAdvice = new ApiResponseMvcAdvice(beanFactory.getBeanProvider(ObjectMapper.class), ctx, false,
+                descriptors, true, timestamps, ResponseHandlerMetrics.NOOP, null, classifier,
+                "fields", false);
+        jackson = new MappingJackson2HttpMessageConverter(mapper);
+        string = new StringHttpMessageConverter(StandardCharsets.UTF_8);
+
+        if ("STRING".equals(converter)) {
+            returnType = Fixtures.returnType("string");
+            body = Fixtures.text(512);
+            contentType = MediaType.TEXT_PLAIN;
+            converterType = StringHttpMessageConverter.class;
+        } else {
+            returnType = Fixtures.returnType("object");
+            body = Fixtures.item(42);
+            contentType = MediaType.APPLICATION_JSON;
+            converterType = MappingJackson2HttpMessageConverter.class;
+        }
+    }
+
+    @Benchmark
+    public void wrapped(Blackhole bh) throws IOException {
+        bh.consume(write(advice));
+    }
+
+    @Benchmark
+    public void wrappedDirect(Blackhole bh) throws IOException {
+        bh.consume(write(directAdvice));
+    }
+
+    @Benchmark
+    public void unwrapped(Blackhole bh) throws IOException {
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        convert(body, new ServletServerHttpResponse(servletResponse));
+        bh.consume(servletResponse.getContentAsByteArray());
+    }
+
+    private byte[] write(ApiResponseMvcAdvice target) throws IOException {
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+        ServletServerHttpRequest request = new ServletServerHttpRequest(new MockHttpServletRequest("GET", "/items/42"));
+        Object wrapped = target.beforeBodyWrite(body, returnType, contentType, converterType, request, response);
+        if (wrapped != null) convert(wrapped, response);
+        return servletResponse.getContentAsByteArray();
+    }
+
+    private void convert(Object value, ServletServerHttpResponse response) throws IOException {
+        if (value instanceof String text && converterType == StringHttpMessageConverter.class) {
+            string.write(text, contentType, response);
+        } else {
+            jackson.write(value, MediaType.APPLICATION_JSON, response);
+        }
+    }
+}
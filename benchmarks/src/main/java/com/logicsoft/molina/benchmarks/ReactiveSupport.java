@@ -0,0 +1,74 @@
+package com.logicsoft.molina.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.core.ApiResponseResultHandler;
+import com.logicsoft.molina.core.CachedTimestampSource;
+import com.logicsoft.molina.core.ErrorTemplates;
+import com.logicsoft.molina.core.FluxBounds;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolverBuilder;
+import org.springframework.web.reactive.result.method.annotation.ResponseBodyResultHandler;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wiring shared by the WebFlux benchmarks: the envelope handler, the plain {@link ResponseBodyResultHandler}
+ * used as the unwrapped baseline, and exchanges whose response body is consumed and released.
+ */
+final class ReactiveSupport {
+
+    final ApiResponseResultHandler handler;
+    final ResponseBodyResultHandler baseline;
+    private final ServerCodecConfigurer codecs;
+    private final DefaultWebSessionManager sessions = new DefaultWebSessionManager();
+    private final AcceptHeaderLocaleContextResolver locales = new AcceptHeaderLocaleContextResolver();
+
+    ReactiveSupport() {
+        ObjectMapper mapper = Fixtures.mapper();
+        this.codecs = ServerCodecConfigurer.create();
+        codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(mapper));
+        RequestedContentTypeResolver resolver = new RequestedContentTypeResolverBuilder().build();
+        this.handler = new ApiResponseResultHandler(codecs, resolver, mapper, new HandlerDescriptorRegistry(),
+                new CachedTimestampSource(CachedTimestampSource.Precision.MILLIS), ResponseHandlerMetrics.NOOP, null,
+                ExceptionClassifier.defaults(), null, FluxBounds.UNBOUNDED, "fields", ErrorTemplates.defaults(),
+                false);
+        this.baseline = new ResponseBodyResultHandler(codecs.getWriters(), resolver);
+    }
+
+    static HandlerResult result(Object value, MethodParameter returnType) {
+        return new HandlerResult(new Fixtures.Handlers(), value, returnType);
+    }
+
+    /**
+     * A GET exchange accepting JSON whose response body is drained; the counter holds the number of bytes
+     * written once the handler's {@code Mono<Void>} completes. Codecs and session manager are shared, as
+     * in a running server ({@code MockServerWebExchange} would build new codecs per exchange).
+     */
+    ServerWebExchange exchange(AtomicLong bytes) {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        response.setWriteHandler(body -> Flux.from(body)
+                .doOnNext(buffer -> {
+                    bytes.addAndGet(buffer.readableByteCount());
+                    DataBufferUtils.release(buffer);
+                })
+                .then());
+        return new DefaultServerWebExchange(MockServerHttpRequest.get("/items").accept(MediaType.APPLICATION_JSON).build(),
+                response, sessions, codecs, locales);
+    }
+}
@@ -0,0 +1,60 @@
+package com.logicsoft.molina.benchmarks;
+
+import com.logicsoft.molina.core.ApiResponseResultHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ApiResponseResultHandler#handleResult} for a plain object and a {@code Mono}, against the same
+ * value written by {@code ResponseBodyResultHandler} without an envelope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultHandlerBenchmark {
+
+    private ReactiveSupport support;
+    private MethodParameter objectType;
+    private MethodParameter monoType;
+    private MethodParameter rawObjectType;
+    private Fixtures.Item item;
+
+    @Setup
+    public void setup() {
+        support = new ReactiveSupport();
+        objectType = Fixtures.returnType("object");
+        monoType = Fixtures.returnType("mono");
+        rawObjectType = Fixtures.returnType("rawObject");
+        item = Fixtures.item(42);
+    }
+
+    @Benchmark
+    public long plain() {
+        AtomicLong bytes = new AtomicLong();
+        support.handler.handleResult(support.exchange(bytes), ReactiveSupport.result(item, objectType)).block();
+        return bytes.get();
+    }
+
+    @Benchmark
+    public long mono() {
+        AtomicLong bytes = new AtomicLong();
+        support.handler.handleResult(support.exchange(bytes),
+                ReactiveSupport.result(Mono.just(item), monoType)).block();
+        return bytes.get();
+    }
+
+    @Benchmark
+    public long unwrapped() {
+        AtomicLong bytes = new AtomicLong();
+        support.baseline.handleResult(support.exchange(bytes),
+                ReactiveSupport.result(item, rawObjectType)).block();
+        return bytes.get();
+    }
+}
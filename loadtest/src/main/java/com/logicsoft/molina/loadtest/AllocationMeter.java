@@ -0,0 +1,33 @@
+package com.logicsoft.molina.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+
+/**
+ * Bytes allocated by the server side of the JVM: every thread except the load generator's own ({@code loadgen-*})
+ * and the HTTP client's ({@code HttpClient-*}). Threads that end between two readings take their count with
+ * them, which is why the servers' worker pools are left at their steady size during a run.
+ */
+final class AllocationMeter {
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    AllocationMeter() {
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    long serverAllocatedBytes() {
+        long[] ids = threads.getAllThreadIds();
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] == null || allocated[i] < 0) continue;
+            String name = infos[i].getThreadName();
+            if (name.startsWith(LoadGenerator.THREAD_PREFIX) || name.startsWith("HttpClient-")) continue;
+            total += allocated[i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,151 @@
+package com.logicsoft.molina.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives one endpoint over HTTP/1.1 keep-alive connections and records response latencies.
+ * <ul>
+ *     <li>Closed loop: {@code concurrency} threads each send a request as soon as the previous one returned.
+ *     Measures throughput at that concurrency.</li>
+ *     <li>Open loop: requests start at a fixed {@code rate}, whether or not earlier ones have returned, and
+ *     their latency is counted from the time they were due. A slow server therefore shows up in the
+ *     percentiles instead of just lowering the request rate (no coordinated omission).</li>
+ * </ul>
+ */
+final class LoadGenerator implements AutoCloseable {
+
+    static final String THREAD_PREFIX = "loadgen-";
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService clientExecutor = Executors.newCachedThreadPool(this::thread);
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(clientExecutor)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final AllocationMeter allocations = new AllocationMeter();
+
+    /**
+     * Runs a closed loop against {@code uri} for {@code warmup} (not recorded), then for {@code duration}.
+     */
+    Result closed(String stack, String endpoint, URI uri, int expectedStatus, int concurrency,
+                  Duration warmup, Duration duration) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        Recorder recorder = new Recorder(HIGHEST_MICROS, 3);
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long warmupEnd = System.nanoTime() + warmup.toNanos();
+        long end = warmupEnd + duration.toNanos();
+
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = thread(() -> {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    boolean ok = send(request, expectedStatus);
+                    long done = System.nanoTime();
+                    if (now < warmupEnd) continue;
+                    recorder.recordValue(Math.min(HIGHEST_MICROS, (done - now) / 1000));
+                    requests.increment();
+                    if (!ok) errors.increment();
+                }
+            });
+        }
+        for (Thread worker : workers) worker.start();
+        sleepUntil(warmupEnd);
+        long allocatedAtStart = allocations.serverAllocatedBytes();
+        for (Thread worker : workers) worker.join();
+        long allocated = allocations.serverAllocatedBytes() - allocatedAtStart;
+        return new Result(stack, endpoint, requests.sum(), errors.sum(), duration.toNanos() / 1e9,
+                recorder.getIntervalHistogram(), allocated);
+    }
+
+    /**
+     * Runs an open loop at {@code rate} requests per second for {@code warmup} (not recorded), then for
+     * {@code duration}. At most {@code maxOutstanding} requests are in flight; when that many are pending,
+     * the next one waits, and the wait counts as latency.
+     */
+    Result open(String stack, String endpoint, URI uri, int expectedStatus, int rate, int maxOutstanding,
+                Duration warmup, Duration duration) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        Recorder recorder = new Recorder(HIGHEST_MICROS, 3);
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        Semaphore outstanding = new Semaphore(maxOutstanding);
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long warmupEnd = start + warmup.toNanos();
+        long end = warmupEnd + duration.toNanos();
+        long allocatedAtStart = 0;
+        boolean measuring = false;
+
+        for (long i = 0; ; i++) {
+            long due = start + i * period;
+            if (due >= end) break;
+            if (!measuring && due >= warmupEnd) {
+                measuring = true;
+                recorder.reset();
+                allocatedAtStart = allocations.serverAllocatedBytes();
+            }
+            sleepUntil(due);
+            outstanding.acquire();
+            boolean recorded = measuring;
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                outstanding.release();
+                if (!recorded) return;
+                recorder.recordValue(Math.min(HIGHEST_MICROS, (System.nanoTime() - due) / 1000));
+                requests.increment();
+                if (failure != null || response.statusCode() != expectedStatus) errors.increment();
+            });
+        }
+        outstanding.acquire(maxOutstanding);
+        outstanding.release(maxOutstanding);
+        long allocated = allocations.serverAllocatedBytes() - allocatedAtStart;
+        Histogram latency = recorder.getIntervalHistogram();
+        return new Result(stack, endpoint, requests.sum(), errors.sum(), duration.toNanos() / 1e9, latency,
+                allocated);
+    }
+
+    @Override
+    public void close() {
+        clientExecutor.shutdownNow();
+    }
+
+    private boolean send(HttpRequest request, int expectedStatus) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == expectedStatus;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Thread thread(Runnable task) {
+        Thread thread = new Thread(task, THREAD_PREFIX + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) LockSupport.parkNanos(remaining);
+    }
+}
@@ -0,0 +1,141 @@
+package com.logicsoft.molina.loadtest;
+
+import com.logicsoft.molina.loadtest.mvc.MvcLoadApp;
+import com.logicsoft.molina.loadtest.reactive.ReactiveLoadApp;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Starts the MVC (Tomcat) and WebFlux (Netty) sample apps on localhost and drives every endpoint, raw then
+ * wrapped, with a closed- or open-loop generator. Prints throughput, latency percentiles and server allocation
+ * per endpoint, and optionally writes them as CSV to compare two versions.
+ * <p>
+ * Options ({@code --name=value}):
+ * <ul>
+ *     <li>{@code stack} — {@code mvc}, {@code webflux} or {@code all} (default)</li>
+ *     <li>{@code mode} — {@code closed} (default) or {@code open}</li>
+ *     <li>{@code concurrency} — closed-loop connections, default 64</li>
+ *     <li>{@code rate} — open-loop requests per second, default 2000</li>
+ *     <li>{@code max-outstanding} — open-loop bound on requests in flight, default 1024</li>
+ *     <li>{@code warmup}, {@code duration} — seconds per endpoint, default 5 and 10</li>
+ *     <li>{@code endpoints} — comma-separated subset of {@code object,mono,flux-10,flux-1000,invalid}</li>
+ *     <li>{@code csv} — file to write the results to</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private static final List<Endpoint> ENDPOINTS = List.of(
+            new Endpoint("object", "/object", 200),
+            new Endpoint("mono", "/mono", 200),
+            new Endpoint("flux-10", "/flux?n=10", 200),
+            new Endpoint("flux-1000", "/flux?n=1000", 200),
+            new Endpoint("invalid", "/invalid?age=0", 400));
+
+    private record Endpoint(String name, String path, int status) {
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String stack = options.getOrDefault("stack", "all");
+        boolean open = "open".equals(options.getOrDefault("mode", "closed"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        int rate = Integer.parseInt(options.getOrDefault("rate", "2000"));
+        int maxOutstanding = Integer.parseInt(options.getOrDefault("max-outstanding", "1024"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "10")));
+        List<String> selected = options.containsKey("endpoints")
+                ? Arrays.asList(options.get("endpoints").split(","))
+                : ENDPOINTS.stream().map(Endpoint::name).toList();
+
+        List<Result> results = new ArrayList<>();
+        System.out.printf(Locale.ROOT, "mode=%s %s, warmup=%ss, duration=%ss%n", open ? "open" : "closed",
+                open ? "rate=" + rate + "/s" : "concurrency=" + concurrency, warmup.toSeconds(), duration.toSeconds());
+        printHeader(System.out);
+        try (LoadGenerator generator = new LoadGenerator()) {
+            for (String name : List.of("mvc", "webflux")) {
+                if (!stack.equals("all") && !stack.equals(name)) continue;
+                try (ConfigurableApplicationContext app = start(name)) {
+                    int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+                    for (Endpoint endpoint : ENDPOINTS) {
+                        if (!selected.contains(endpoint.name())) continue;
+                        for (String variant : List.of("/raw", "/wrapped")) {
+                            String path = variant + endpoint.path();
+                            URI uri = URI.create("http://localhost:" + port + path);
+                            Result result = open
+                                    ? generator.open(name, path, uri, endpoint.status(), rate, maxOutstanding,
+                                    warmup, duration)
+                                    : generator.closed(name, path, uri, endpoint.status(), concurrency,
+                                    warmup, duration);
+                            print(System.out, result);
+                            results.add(result);
+                        }
+                    }
+                }
+            }
+        }
+        if (options.containsKey("csv")) writeCsv(Path.of(options.get("csv")), open ? "open" : "closed", results);
+    }
+
+    private static ConfigurableApplicationContext start(String stack) {
+        boolean mvc = stack.equals("mvc");
+        return new SpringApplicationBuilder(mvc ? MvcLoadApp.class : ReactiveLoadApp.class)
+                .web(mvc ? WebApplicationType.SERVLET : WebApplicationType.REACTIVE)
+                .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=warn")
+                .run();
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.printf(Locale.ROOT, "%-8s %-24s %10s %9s %9s %9s %9s %7s %9s %8s%n",
+                "stack", "endpoint", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors", "B/req", "MB/s");
+    }
+
+    private static void print(PrintStream out, Result r) {
+        out.printf(Locale.ROOT, "%-8s %-24s %10.0f %9.3f %9.3f %9.3f %9.3f %7d %9d %8.1f%n",
+                r.stack(), r.endpoint(), r.throughput(), r.percentileMillis(50), r.percentileMillis(99),
+                r.percentileMillis(99.9), r.latency().getMaxValue() / 1000.0, r.errors(), r.bytesPerRequest(),
+                r.allocationMbPerSecond());
+    }
+
+    private static void writeCsv(Path file, String mode, List<Result> results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("stack,endpoint,mode,requests,errors,throughput,p50_ms,p99_ms,p999_ms,max_ms,bytes_per_request,"
+                + "alloc_mb_per_s");
+        for (Result r : results) {
+            lines.add(String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d,%.1f",
+                    r.stack(), r.endpoint(), mode, r.requests(), r.errors(), r.throughput(),
+                    r.percentileMillis(50), r.percentileMillis(99), r.percentileMillis(99.9),
+                    r.latency().getMaxValue() / 1000.0, r.bytesPerRequest(), r.allocationMbPerSecond()));
+        }
+        Files.write(file, lines);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,35 @@
+package com.logicsoft.molina.loadtest;
+
+import jakarta.validation.constraints.Min;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Payloads shared by the MVC and WebFlux load-test apps; the same shapes as the JMH fixtures.
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    public record Item(long id, String name, String description, double price, List<String> tags, Instant createdAt) {
+    }
+
+    /** Query of the validation endpoints; {@code age=0} fails. */
+    public record Query(@Min(1) int age) {
+    }
+
+    private static final Instant CREATED = Instant.parse("2025-08-16T12:00:00Z");
+
+    public static Item item(long id) {
+        return new Item(id, "item-" + id, "A moderately sized description for item " + id,
+                id * 1.25, List.of("alpha", "beta", "gamma"), CREATED);
+    }
+
+    public static List<Item> items(int size) {
+        Item[] items = new Item[size];
+        for (int i = 0; i < size; i++) items[i] = item(i);
+        return List.of(items);
+    }
+}
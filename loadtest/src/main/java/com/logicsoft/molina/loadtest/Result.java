@@ -0,0 +1,28 @@
+package com.logicsoft.molina.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Measurements of one endpoint: latencies in microseconds, and the bytes the server allocated meanwhile.
+ *
+ * @param errors responses with an unexpected status, and failed requests
+ */
+record Result(String stack, String endpoint, long requests, long errors, double seconds, Histogram latency,
+              long allocatedBytes) {
+
+    double throughput() {
+        return requests / seconds;
+    }
+
+    long bytesPerRequest() {
+        return (requests > 0) ? allocatedBytes / requests : 0;
+    }
+
+    double allocationMbPerSecond() {
+        return allocatedBytes / seconds / (1024 * 1024);
+    }
+
+    double percentileMillis(double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.logicsoft.molina.loadtest.mvc;
+
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.loadtest.Payloads;
+import com.logicsoft.molina.loadtest.Payloads.Item;
+import com.logicsoft.molina.loadtest.Payloads.Query;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Spring MVC app on Tomcat with each endpoint twice: under {@code /raw} as plain Spring, under {@code /wrapped}
+ * with {@link ResponseHandler}.
+ */
+@SpringBootApplication
+public class MvcLoadApp {
+
+    @RestController
+    static class Endpoints {
+
+        @GetMapping("/raw/object")
+        public Item rawObject() {
+            return Payloads.item(1);
+        }
+
+        @GetMapping("/wrapped/object")
+        @ResponseHandler
+        public Item wrappedObject() {
+            return Payloads.item(1);
+        }
+
+        @GetMapping("/raw/mono")
+        public Mono<Item> rawMono() {
+            return Mono.fromSupplier(() -> Payloads.item(1));
+        }
+
+        @GetMapping("/wrapped/mono")
+        @ResponseHandler
+        public Mono<Item> wrappedMono() {
+            return Mono.fromSupplier(() -> Payloads.item(1));
+        }
+
+        @GetMapping("/raw/flux")
+        public Flux<Item> rawFlux(@RequestParam int n) {
+            return Flux.fromIterable(Payloads.items(n));
+        }
+
+        @GetMapping("/wrapped/flux")
+        @ResponseHandler
+        public Flux<Item> wrappedFlux(@RequestParam int n) {
+            return Flux.fromIterable(Payloads.items(n));
+        }
+
+        /* Baseline of the validation path: the same 400 built by hand, without an exception */
+        @GetMapping("/raw/invalid")
+        public ResponseEntity<Map<String, Object>> rawInvalid(@RequestParam int age) {
+            if (age < 1) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("errors", Map.of("age", "must be greater than or equal to 1")));
+            }
+            return ResponseEntity.ok(Map.of("age", age));
+        }
+
+        @GetMapping("/wrapped/invalid")
+        @ResponseHandler
+        public Map<String, Object> wrappedInvalid(@Valid Query query) {
+            return Map.of("age", query.age());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.logicsoft.molina.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bounds of a {@code Flux} collected into one envelope ({@link FluxMode#COLLECT}, WebFlux). Once the elements
+ * received cross either bound the {@code Flux} is cancelled, and the response is what {@link #overflow()}
+ * says. Unset attributes take the global {@code molina.response-handler.flux.*} settings.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Bounded {
+
+    /**
+     * Maximum number of elements; 0 for no bound, negative for the global setting.
+     */
+    long maxElements() default -1;
+
+    /**
+     * Maximum estimated size of the encoded {@code data}, in bytes; 0 for no bound, negative for the global
+     * setting. The estimate encodes a sample of the elements and extrapolates for the others.
+     */
+    long maxBytes() default -1;
+
+    /**
+     * What to answer once a bound is crossed.
+     */
+    Overflow overflow() default Overflow.DEFAULT;
+
+    /**
+     * Property of the last element sent whose value becomes the {@code next} cursor of a truncated envelope;
+     * when empty, {@code next} is the number of elements sent.
+     */
+    String cursor() default "";
+
+    enum Overflow {
+        /** The global setting ({@link #REJECT} unless configured). */
+        DEFAULT,
+        /**
+         * Sends the elements within the bounds, with {@code "message":"Result truncated"} and a {@code next}
+         * cursor to continue from.
+         */
+        TRUNCATE,
+        /** Sends a {@code 507} error envelope. */
+        REJECT
+    }
+}
@@ -0,0 +1,42 @@
+package com.logicsoft.molina.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Response cache settings of a {@link ResponseHandler} method. The encoded JSON envelope of a successful
+ * {@code GET} is kept in memory and served on later requests with the same key without calling the
+ * controller; only the {@code timestamp} is written fresh. Requires Caffeine on the classpath.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+
+    /**
+     * Time to live of an entry in milliseconds; 0 (the default) disables caching.
+     */
+    long ttlMillis() default 0;
+
+    /**
+     * Whether the query string is part of the key (the request path always is).
+     */
+    boolean query() default true;
+
+    /**
+     * Request headers whose values are part of the key, e.g. {@code Accept-Language}.
+     */
+    String[] headers() default {};
+
+    /**
+     * Upper bound, in bytes, of the encoded envelopes kept for this handler.
+     */
+    long maxBytes() default 16 * 1024 * 1024;
+
+    /**
+     * Also keeps a gzip-compressed copy, served to clients that send {@code Accept-Encoding: gzip}.
+     */
+    boolean gzip() default false;
+}
@@ -0,0 +1,34 @@
+package com.logicsoft.molina.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Request coalescing settings of a WebFlux {@link ResponseHandler} method. While the {@code Mono} of a
+ * {@code GET} is pending, identical requests (same key) subscribe to it instead of their own, and the JSON
+ * envelope is encoded once for all of them; only the {@code timestamp} is written per response. Meant for
+ * idempotent reads whose {@code Mono} does its work on subscription, the usual case.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Coalesced {
+
+    /**
+     * Enables coalescing; disabled by default.
+     */
+    boolean enabled() default false;
+
+    /**
+     * Whether the query string is part of the key (the request path always is).
+     */
+    boolean query() default true;
+
+    /**
+     * Request headers whose values are part of the key, e.g. {@code Authorization} when the data depends on
+     * the caller.
+     */
+    String[] headers() default {};
+}
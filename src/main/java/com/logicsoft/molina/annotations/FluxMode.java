@@ -0,0 +1,30 @@
+package com.logicsoft.molina.annotations;
+
+/**
+ * How a {@code Flux<T>} result of a {@link ResponseHandler} method is written. {@link #COLLECT} and
+ * {@link #STREAM} handlers switch to {@link #NDJSON} or {@link #SSE} when the request asks for
+ * {@code application/x-ndjson} or {@code text/event-stream}.
+ */
+public enum FluxMode {
+    /**
+     * Collects every element and writes a single envelope with {@code data} as a list.
+     */
+    COLLECT,
+    /**
+     * Writes the envelope prefix right away and encodes each element into {@code data} as it arrives.
+     * A failure after the prefix has been sent closes the array and appends {@code errors} and
+     * {@code message} to the envelope.
+     */
+    STREAM,
+    /**
+     * Writes one envelope per element (or per {@link ResponseHandler#batchSize() batch}) as newline-delimited
+     * JSON ({@code application/x-ndjson}), flushing after each one, and ends with a terminal envelope that
+     * carries the completion or error status.
+     */
+    NDJSON,
+    /**
+     * Same as {@link #NDJSON} but framed as Server-Sent Events ({@code text/event-stream}); the terminal
+     * envelope is sent as a {@code complete} or {@code error} event.
+     */
+    SSE
+}
@@ -0,0 +1,43 @@
+package com.logicsoft.molina.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Adaptive concurrency limit of a {@link ResponseHandler} method. The number of requests the handler may run
+ * at once follows its observed latency: it grows while latency stays at its long-term level and shrinks as soon
+ * as requests start queueing. Requests over the limit are answered with a {@code 503} error envelope and a
+ * {@code Retry-After} header before the controller runs.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Limited {
+
+    /**
+     * Enables the limit; disabled by default.
+     */
+    boolean enabled() default false;
+
+    /**
+     * Concurrent requests allowed before any latency was observed.
+     */
+    int initialLimit() default 20;
+
+    /**
+     * Lower bound of the limit.
+     */
+    int minLimit() default 4;
+
+    /**
+     * Upper bound of the limit.
+     */
+    int maxLimit() default 200;
+
+    /**
+     * Value of the {@code Retry-After} header of rejected requests, in seconds.
+     */
+    int retryAfterSeconds() default 1;
+}
@@ -8,4 +8,59 @@ import java.lang.annotation.*;
 public @interface ResponseHandler {
     int status() default 200;
     boolean result() default true;
-}
\ No newline at end of file
+    FluxMode flux() default FluxMode.COLLECT;
+
+    /**
+     * Elements per envelope in {@link FluxMode#NDJSON} / {@link FluxMode#SSE}; above 1, {@code data} is a list.
+     */
+    int batchSize() default 1;
+
+    /**
+     * Maximum time, in milliseconds, a partial batch waits for more elements; 0 waits for a full batch.
+     */
+    long batchTimeoutMillis() default 0;
+
+    /**
+     * Caches the encoded envelope; disabled unless {@link Cached#ttlMillis()} is set.
+     */
+    Cached cache() default @Cached;
+
+    /**
+     * Bounds a collected {@code Flux} by element count and encoded size (WebFlux); unbounded unless set here
+     * or globally.
+     */
+    Bounded bounds() default @Bounded;
+
+    /**
+     * Shares one pending {@code Mono} and one encoded envelope among identical concurrent requests (WebFlux);
+     * disabled unless {@link Coalesced#enabled()} is set.
+     */
+    Coalesced coalesce() default @Coalesced;
+
+    /**
+     * Bounds the requests running at once by an adaptive, latency-based limit and rejects the excess with a
+     * {@code 503}; disabled unless {@link Limited#enabled()} is set.
+     */
+    Limited limit() default @Limited;
+
+    /**
+     * Sends a strong {@code ETag}, hashed over the JSON envelope without its timestamp, and answers a matching
+     * {@code If-None-Match} with {@code 304 Not Modified}. Applies to {@code 200} JSON envelopes; return
+     * {@link com.logicsoft.molina.api.Versioned} to derive the tag from a version key instead.
+     */
+    boolean etag() default false;
+
+    /**
+     * Time budget of the response in milliseconds, 0 for none. When it runs out the pending {@code Mono} /
+     * {@code Flux} (or MVC async task) is cancelled and the client gets a {@code 504} error envelope. A request
+     * deadline header, when configured, can shorten it.
+     */
+    long timeoutMillis() default 0;
+
+    /**
+     * Properties of {@code data} written when the request names none in the fields parameter (e.g.
+     * {@code id,name,items(sku,qty)}); empty writes them all. See
+     * {@link com.logicsoft.molina.core.FieldProjection} for the syntax.
+     */
+    String fields() default "";
+}
@@ -1,5 +1,6 @@
 package com.logicsoft.molina.api;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,6 +14,8 @@ import java.util.Map;
 @AllArgsConstructor
 @NoArgsConstructor
 public class ApiResponse<T> {
+    /* ISO-8601 in every format, also through mappers that write dates as numbers (e.g. the default Smile/CBOR ones) */
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
     private Instant timestamp;
     private int status;
     private boolean result;
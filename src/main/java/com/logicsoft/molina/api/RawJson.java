@@ -0,0 +1,258 @@
+package com.logicsoft.molina.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON that is already serialized (e.g. read from a cache or a downstream service). Returned from a
+ * {@code @ResponseHandler} method, or used as {@code data} of an {@link ApiResponse}, its bytes are copied
+ * verbatim into {@code "data":} without being parsed. The content is trusted; call {@link #validate()} for a
+ * streaming syntax check when it is not.
+ */
+@JsonSerialize(using = RawJson.Serializer.class)
+public abstract class RawJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    RawJson() {
+    }
+
+    public static RawJson of(byte[] json) {
+        return new Bytes(json, 0, json.length);
+    }
+
+    public static RawJson of(byte[] json, int offset, int length) {
+        return new Bytes(json, offset, length);
+    }
+
+    public static RawJson of(String json) {
+        return of(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Wraps the remaining bytes of {@code json}; the buffer's position is left untouched.
+     */
+    public static RawJson of(ByteBuffer json) {
+        return new Buffer(json.duplicate());
+    }
+
+    /**
+     * Wraps the readable bytes of {@code json}. The buffer is released once it has been written.
+     */
+    public static RawJson of(DataBuffer json) {
+        return new Data(json);
+    }
+
+    /**
+     * Streams the content of {@code json} each time it is written or validated.
+     */
+    public static RawJson of(Resource json) {
+        return new Source(json);
+    }
+
+    /**
+     * Copies the JSON bytes to {@code out}.
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    abstract InputStream open() throws IOException;
+
+    /**
+     * Tokenizes the content without building a tree and checks it is exactly one JSON value.
+     *
+     * @return this instance
+     * @throws IllegalStateException when the content is not valid JSON
+     */
+    public RawJson validate() {
+        try (InputStream in = open(); JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() == null) throw new IllegalStateException("Raw JSON is empty");
+            parser.skipChildren();
+            if (parser.nextToken() != null) throw new IllegalStateException("Raw JSON has trailing content");
+            return this;
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid raw JSON", e);
+        }
+    }
+
+    private static void write(OutputStream out, ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+        ByteBuffer source = buffer.duplicate();
+        while (source.hasRemaining()) {
+            int n = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /* -------- sources -------- */
+
+    private static final class Bytes extends RawJson {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        Bytes(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        InputStream open() {
+            return new ByteArrayInputStream(bytes, offset, length);
+        }
+
+        @Override
+        public String toString() {
+            return "RawJson[" + length + " bytes]";
+        }
+    }
+
+    private static final class Buffer extends RawJson {
+        private final ByteBuffer buffer;
+
+        Buffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            write(out, buffer);
+        }
+
+        @Override
+        InputStream open() {
+            if (buffer.hasArray()) {
+                return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                        buffer.remaining());
+            }
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.duplicate().get(copy);
+            return new ByteArrayInputStream(copy);
+        }
+
+        @Override
+        public String toString() {
+            return "RawJson[" + buffer.remaining() + " bytes]";
+        }
+    }
+
+    private static final class Data extends RawJson {
+        private final DataBuffer buffer;
+
+        Data(DataBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (DataBuffer.ByteBufferIterator it = buffer.readableByteBuffers()) {
+                while (it.hasNext()) write(out, it.next());
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        @Override
+        InputStream open() {
+            byte[] copy = new byte[buffer.readableByteCount()];
+            int offset = 0;
+            try (DataBuffer.ByteBufferIterator it = buffer.readableByteBuffers()) {
+                while (it.hasNext()) {
+                    ByteBuffer next = it.next();
+                    int n = next.remaining();
+                    next.get(copy, offset, n);
+                    offset += n;
+                }
+            }
+            return new ByteArrayInputStream(copy);
+        }
+
+        @Override
+        public String toString() {
+            return "RawJson[" + buffer.readableByteCount() + " bytes]";
+        }
+    }
+
+    private static final class Source extends RawJson {
+        private final Resource resource;
+
+        Source(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = resource.getInputStream()) {
+                in.transferTo(out);
+            }
+        }
+
+        @Override
+        InputStream open() throws IOException {
+            return resource.getInputStream();
+        }
+
+        @Override
+        public String toString() {
+            return "RawJson[" + resource.getDescription() + "]";
+        }
+    }
+
+    /**
+     * Used when the envelope is serialized reflectively (message converters, generic codecs): the content is
+     * still emitted as a raw value, but goes through a {@code String}. Other formats (Smile, CBOR, MessagePack, ...)
+     * have no raw values, so there the JSON is tokenized and copied over.
+     */
+    public static final class Serializer extends StdSerializer<RawJson> {
+
+        public Serializer() {
+            super(RawJson.class);
+        }
+
+        @Override
+        public void serialize(RawJson value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            if (!isJson(gen)) {
+                try (InputStream in = value.open(); JsonParser parser = FACTORY.createParser(in)) {
+                    parser.nextToken();
+                    gen.copyCurrentStructure(parser);
+                }
+                return;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            value.writeTo(out);
+            gen.writeRawValue(out.toString(StandardCharsets.UTF_8));
+        }
+
+        private static boolean isJson(JsonGenerator gen) {
+            while (gen instanceof JsonGeneratorDelegate delegate) gen = delegate.delegate();
+            return gen instanceof JsonGeneratorImpl;
+        }
+    }
+}
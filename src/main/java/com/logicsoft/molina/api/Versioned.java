@@ -0,0 +1,40 @@
+package com.logicsoft.molina.api;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Data of a {@code @ResponseHandler} method together with a version key (a revision, an update timestamp, a
+ * hash kept next to the data...). The ETag is derived from the key, so a matching {@code If-None-Match} is
+ * answered with {@code 304 Not Modified} before anything is serialized, and before a {@link #lazy lazy} value
+ * is even loaded. Equal keys must mean equal data.
+ */
+public final class Versioned<T> {
+
+    private final String version;
+    private final Supplier<? extends T> data;
+
+    private Versioned(String version, Supplier<? extends T> data) {
+        this.version = Objects.requireNonNull(version, "version");
+        this.data = data;
+    }
+
+    public static <T> Versioned<T> of(String version, T data) {
+        return new Versioned<>(version, () -> data);
+    }
+
+    /**
+     * Defers loading the data until the response is actually written.
+     */
+    public static <T> Versioned<T> lazy(String version, Supplier<? extends T> data) {
+        return new Versioned<>(version, Objects.requireNonNull(data, "data"));
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public T getData() {
+        return data.get();
+    }
+}
@@ -0,0 +1,169 @@
+package com.logicsoft.molina.batch;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The async context of a {@link BatchServletRequest}. The worker thread running the call plays the container:
+ * after a dispatch that started async processing it waits in {@link #awaitDispatch()} until the handler
+ * dispatches or completes, then dispatches again with {@code DispatcherType.ASYNC}.
+ */
+final class BatchAsyncContext implements AsyncContext {
+
+    /* The usual container default when the application sets no async timeout */
+    private static final long DEFAULT_TIMEOUT = 30_000;
+
+    private enum State { STARTED, DISPATCHED, COMPLETED }
+
+    private final BatchServletRequest request;
+    private final List<AsyncListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ServletResponse response;
+    private volatile long timeout = DEFAULT_TIMEOUT;
+    private State state = State.STARTED;
+
+    BatchAsyncContext(BatchServletRequest request, ServletResponse response) {
+        this.request = request;
+        this.response = response;
+    }
+
+    synchronized void restart(ServletResponse response) {
+        this.response = response;
+        this.state = State.STARTED;
+    }
+
+    /**
+     * Waits until the handler dispatches or completes the request. When the timeout elapses first the listeners
+     * are told, which is how Spring MVC dispatches its timeout result; a request nobody dispatched then ends
+     * with a {@code 500}.
+     *
+     * @return {@code true} to dispatch again, {@code false} once the request is complete
+     */
+    boolean awaitDispatch() throws IOException, InterruptedException {
+        if (!awaitEnd()) {
+            AsyncEvent event = new AsyncEvent(this, request, response);
+            for (AsyncListener listener : listeners) listener.onTimeout(event);
+        }
+        synchronized (this) {
+            if (state == State.STARTED) {
+                state = State.COMPLETED;
+                if (response instanceof HttpServletResponse http && !http.isCommitted()) {
+                    http.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+            }
+            return state == State.DISPATCHED;
+        }
+    }
+
+    void fireComplete() {
+        AsyncEvent event = new AsyncEvent(this, request, response);
+        for (AsyncListener listener : listeners) {
+            try {
+                listener.onComplete(event);
+            } catch (IOException ignored) {
+                // the call is over; nothing is left to report a listener failure to
+            }
+        }
+    }
+
+    /* true when dispatched or completed, false on timeout */
+    private synchronized boolean awaitEnd() throws InterruptedException {
+        long deadline = (timeout > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        while (state == State.STARTED) {
+            if (deadline == 0) {
+                wait();
+                continue;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void dispatch() {
+        if (state == State.STARTED) {
+            state = State.DISPATCHED;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void dispatch(String path) {
+        throw new UnsupportedOperationException("Batch requests can only be dispatched to their own path");
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+        throw new UnsupportedOperationException("Batch requests can only be dispatched to their own path");
+    }
+
+    @Override
+    public synchronized void complete() {
+        if (state == State.STARTED) {
+            state = State.COMPLETED;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void start(Runnable run) {
+        CompletableFuture.runAsync(run);
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+        return request;
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+        return response;
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+        return true;
+    }
+
+    @Override
+    public void addListener(AsyncListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> type) throws ServletException {
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+}
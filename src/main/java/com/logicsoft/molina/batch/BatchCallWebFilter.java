@@ -0,0 +1,30 @@
+package com.logicsoft.molina.batch;
+
+import org.springframework.core.Ordered;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Marks the exchange of a WebFlux batch call. The application's {@code HttpHandler} builds that exchange, so the
+ * {@link ReactiveBatchController} cannot set the attribute itself: it puts the marker in the Reactor context of the
+ * call instead, and this filter, running first, copies it to the exchange attributes.
+ */
+public class BatchCallWebFilter implements WebFilter, Ordered {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return Mono.deferContextual(context -> {
+            if (context.hasKey(BatchSupport.CALL_ATTRIBUTE)) {
+                exchange.getAttributes().put(BatchSupport.CALL_ATTRIBUTE, Boolean.TRUE);
+            }
+            return chain.filter(exchange);
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,139 @@
+package com.logicsoft.molina.batch;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.boot.web.servlet.AbstractFilterRegistrationBean;
+import org.springframework.boot.web.servlet.ServletContextInitializer;
+import org.springframework.boot.web.servlet.ServletContextInitializerBeans;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * The servlet filters of the application, as Spring Boot registers them ({@code Filter} beans and filter
+ * registration beans, Spring Security's included), in their order. The calls of an MVC batch run on worker threads,
+ * outside the container's filter chain: each one goes through the filters mapped to its path and dispatcher type
+ * before reaching the {@code DispatcherServlet}, as a request of its own would. Filters the container registers by
+ * itself, outside the application context, are not known here.
+ */
+final class BatchFilters {
+
+    private final ListableBeanFactory beans;
+    /* Read once the context is refreshed: filter beans may depend on the batch controller's dependencies */
+    private volatile List<Mapping> mappings;
+
+    BatchFilters(ListableBeanFactory beans) {
+        this.beans = beans;
+    }
+
+    /**
+     * Runs {@code request} through the filters that apply to it, then {@code servlet}.
+     */
+    void doFilter(BatchServletRequest request, ServletResponse response, Servlet servlet)
+            throws IOException, ServletException {
+        List<Filter> filters = new ArrayList<>();
+        for (Mapping mapping : mappings(servlet)) {
+            if (mapping.matches(request.getPathWithinApplication(), request.getDispatcherType())) {
+                filters.add(mapping.filter());
+            }
+        }
+        new Chain(filters, servlet).doFilter(request, response);
+    }
+
+    private List<Mapping> mappings(Servlet servlet) {
+        List<Mapping> current = mappings;
+        if (current == null) {
+            current = new ArrayList<>();
+            String servletName = (servlet.getServletConfig() != null) ? servlet.getServletConfig().getServletName()
+                    : null;
+            for (ServletContextInitializer initializer : new ServletContextInitializerBeans(beans)) {
+                if (!(initializer instanceof AbstractFilterRegistrationBean<?> registration)
+                        || !registration.isEnabled()) {
+                    continue;
+                }
+                List<String> patterns = urlPatterns(registration, servlet, servletName);
+                if (patterns != null) {
+                    current.add(new Mapping(registration.getFilter(), patterns,
+                            registration.determineDispatcherTypes()));
+                }
+            }
+            mappings = current;
+        }
+        return current;
+    }
+
+    /**
+     * The URL patterns the filter applies to, none for every path when it is mapped to every request or to the
+     * {@code DispatcherServlet} (by name or registration); {@code null} when it only applies to other servlets.
+     */
+    private static List<String> urlPatterns(AbstractFilterRegistrationBean<?> registration, Servlet servlet,
+                                            String servletName) {
+        Collection<String> names = registration.getServletNames();
+        Collection<ServletRegistrationBean<?>> servlets = registration.getServletRegistrationBeans();
+        if (names.isEmpty() && servlets.isEmpty()) return List.copyOf(registration.getUrlPatterns());
+        if (servletName != null && names.contains(servletName)) return List.of();
+        for (ServletRegistrationBean<?> target : servlets) {
+            if (target.getServlet() == servlet) return List.of();
+        }
+        return registration.getUrlPatterns().isEmpty() ? null : List.copyOf(registration.getUrlPatterns());
+    }
+
+    /**
+     * A filter with its URL patterns (none for every path) and dispatcher types.
+     */
+    private record Mapping(Filter filter, List<String> urlPatterns, EnumSet<DispatcherType> dispatcherTypes) {
+
+        boolean matches(String path, DispatcherType type) {
+            if (!dispatcherTypes.contains(type)) return false;
+            if (urlPatterns.isEmpty()) return true;
+            for (String pattern : urlPatterns) {
+                if (matches(pattern, path)) return true;
+            }
+            return false;
+        }
+
+        /* The servlet specification's rules: "/*" and "/", path prefixes "/p/*", extensions "*.e", exact paths */
+        private static boolean matches(String pattern, String path) {
+            if (pattern.equals("/*") || pattern.equals("/")) return true;
+            if (pattern.endsWith("/*")) {
+                String prefix = pattern.substring(0, pattern.length() - 2);
+                return path.equals(prefix) || path.startsWith(prefix + "/");
+            }
+            if (pattern.startsWith("*.")) {
+                return path.substring(path.lastIndexOf('/') + 1).endsWith(pattern.substring(1));
+            }
+            return pattern.equals(path) || (pattern.isEmpty() && path.equals("/"));
+        }
+    }
+
+    private static final class Chain implements FilterChain {
+
+        private final List<Filter> filters;
+        private final Servlet servlet;
+        private int next;
+
+        Chain(List<Filter> filters, Servlet servlet) {
+            this.filters = filters;
+            this.servlet = servlet;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            if (next < filters.size()) {
+                filters.get(next++).doFilter(request, response, this);
+            } else {
+                servlet.service(request, response);
+            }
+        }
+    }
+}
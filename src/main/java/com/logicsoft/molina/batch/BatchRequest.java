@@ -0,0 +1,18 @@
+package com.logicsoft.molina.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Map;
+
+/**
+ * One call of a batch: {@code {"method":"POST","path":"/orders?dryRun=true","headers":{...},"body":{...}}}.
+ * The path is relative to the context path and may carry a query string; {@code method} defaults to {@code GET}.
+ * Headers of the batch request itself are inherited unless {@code headers} overrides them.
+ */
+public record BatchRequest(String method, String path, Map<String, String> headers, JsonNode body) {
+
+    public BatchRequest {
+        method = (method == null || method.isBlank()) ? "GET" : method.trim().toUpperCase();
+        headers = (headers != null) ? headers : Map.of();
+    }
+}
@@ -0,0 +1,72 @@
+package com.logicsoft.molina.batch;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Buffers the response one call of a WebFlux batch writes, leaving the batch response untouched. Cookies set by
+ * a call are dropped.
+ */
+final class BatchServerHttpResponse extends AbstractServerHttpResponse {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+    BatchServerHttpResponse(DataBufferFactory bufferFactory) {
+        super(bufferFactory);
+    }
+
+    int status() {
+        HttpStatusCode status = getStatusCode();
+        return (status != null) ? status.value() : 200;
+    }
+
+    synchronized byte[] getContentAsByteArray() {
+        return body.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getNativeResponse() {
+        return (T) this;
+    }
+
+    @Override
+    protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+        return Flux.from(body).doOnNext(this::append).then();
+    }
+
+    @Override
+    protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+        return Flux.from(body).concatMap(this::writeWithInternal).then();
+    }
+
+    @Override
+    protected void applyStatusCode() {
+    }
+
+    @Override
+    protected void applyHeaders() {
+    }
+
+    @Override
+    protected void applyCookies() {
+    }
+
+    private synchronized void append(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            body.writeBytes(bytes);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package com.logicsoft.molina.batch;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletMapping;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.MappingMatch;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One call of an MVC batch, dispatched to the {@code DispatcherServlet} on a worker thread. Method, path, query,
+ * headers, body and attributes are its own; the rest (context path, session, principal, connection, ...) is the
+ * batch request's, read when the call is created on the container thread: the container's request is not meant to
+ * be used by several threads at once. Async handlers are supported through {@link BatchAsyncContext}.
+ * <p>
+ * The path of a call is relative to the context, like the batch request's. When the {@code DispatcherServlet} is
+ * mapped to a prefix ({@code spring.mvc.servlet.path}), the prefix is the call's servlet path and the rest its path
+ * info; a path outside the prefix does not reach the servlet.
+ * <p>
+ * The call carries the {@link BatchSupport#CALL_ATTRIBUTE} attribute.
+ */
+final class BatchServletRequest extends HttpServletRequestWrapper {
+
+    private final String method;
+    private final String path;
+    private final String servletPath;
+    private final String pathInfo;
+    private final HttpServletMapping mapping;
+    private final String requestUri;
+    private final String queryString;
+    private final StringBuffer requestUrl;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    private final Map<String, String[]> parameters;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    /* Read from the batch request on the container thread */
+    private final HttpServletRequest batch;
+    private final String contextPath;
+    private final String scheme;
+    private final String serverName;
+    private final int serverPort;
+    private final boolean secure;
+    private final String protocol;
+    private final String remoteAddr;
+    private final String remoteHost;
+    private final int remotePort;
+    private final String localAddr;
+    private final String localName;
+    private final int localPort;
+    private final Principal userPrincipal;
+    private final String remoteUser;
+    private final String authType;
+    private final Cookie[] cookies;
+    private final List<Locale> locales;
+    private final String requestedSessionId;
+    private final boolean requestedSessionIdValid;
+    private final boolean requestedSessionIdFromCookie;
+    private final boolean requestedSessionIdFromUrl;
+    private volatile HttpSession session;
+
+    private volatile DispatcherType dispatcherType = DispatcherType.REQUEST;
+    private volatile BatchAsyncContext asyncContext;
+    private volatile boolean asyncStarted;
+    private ServletInputStream input;
+
+    /**
+     * @param servletPrefix servlet path of the batch request when the {@code DispatcherServlet} is mapped to a path
+     *                      prefix ({@code ""} for {@code /*}), {@code null} when it is the default servlet
+     */
+    BatchServletRequest(HttpServletRequest batch, String servletPrefix, String method, String target,
+                        HttpHeaders headers, byte[] body) {
+        super(batch);
+        this.method = method;
+        this.path = BatchSupport.pathOf(target);
+        HttpServletMapping batchMapping = batch.getHttpServletMapping();
+        String servletName = (batchMapping != null) ? batchMapping.getServletName() : null;
+        if (servletPrefix == null) {
+            this.servletPath = path;
+            this.pathInfo = null;
+            this.mapping = new Mapping("", "/", MappingMatch.DEFAULT, servletName);
+        } else if (path.equals(servletPrefix) || path.startsWith(servletPrefix + "/")) {
+            this.servletPath = servletPrefix;
+            this.pathInfo = (path.length() > servletPrefix.length()) ? path.substring(servletPrefix.length()) : null;
+            this.mapping = new Mapping((pathInfo != null) ? pathInfo.substring(1) : "", servletPrefix + "/*",
+                    MappingMatch.PATH, servletName);
+        } else {
+            this.servletPath = null;
+            this.pathInfo = null;
+            this.mapping = null;
+        }
+        this.requestUri = batch.getContextPath() + path;
+        this.queryString = BatchSupport.queryOf(target);
+        StringBuffer url = batch.getRequestURL();
+        url.setLength(url.length() - batch.getRequestURI().length());
+        this.requestUrl = url.append(requestUri);
+        this.headers = headers;
+        this.body = body;
+        this.parameters = parameters(queryString);
+        this.attributes.put(BatchSupport.CALL_ATTRIBUTE, Boolean.TRUE);
+        this.batch = batch;
+        this.contextPath = batch.getContextPath();
+        this.scheme = batch.getScheme();
+        this.serverName = batch.getServerName();
+        this.serverPort = batch.getServerPort();
+        this.secure = batch.isSecure();
+        this.protocol = batch.getProtocol();
+        this.remoteAddr = batch.getRemoteAddr();
+        this.remoteHost = batch.getRemoteHost();
+        this.remotePort = batch.getRemotePort();
+        this.localAddr = batch.getLocalAddr();
+        this.localName = batch.getLocalName();
+        this.localPort = batch.getLocalPort();
+        this.userPrincipal = batch.getUserPrincipal();
+        this.remoteUser = batch.getRemoteUser();
+        this.authType = batch.getAuthType();
+        this.cookies = batch.getCookies();
+        this.locales = locales(headers);
+        this.requestedSessionId = batch.getRequestedSessionId();
+        this.requestedSessionIdValid = batch.isRequestedSessionIdValid();
+        this.requestedSessionIdFromCookie = batch.isRequestedSessionIdFromCookie();
+        this.requestedSessionIdFromUrl = batch.isRequestedSessionIdFromURL();
+        this.session = batch.getSession(false);
+    }
+
+    /**
+     * Whether the path of the call is one the {@code DispatcherServlet} is mapped to.
+     */
+    boolean reachesServlet() {
+        return mapping != null;
+    }
+
+    /** The path of the call within the context, servlet path and path info together. */
+    String getPathWithinApplication() {
+        return path;
+    }
+
+    /* -------- Async -------- */
+
+    /**
+     * The async context when the last dispatch started async processing, or {@code null}.
+     */
+    BatchAsyncContext pendingAsync() {
+        return asyncStarted ? asyncContext : null;
+    }
+
+    /** Called before the dispatch that follows {@link AsyncContext#dispatch()}. */
+    void asyncDispatched() {
+        asyncStarted = false;
+        dispatcherType = DispatcherType.ASYNC;
+    }
+
+    /** Called once the call is over, to notify the listeners of the async context, if any. */
+    void asyncCompleted() {
+        asyncStarted = false;
+        if (asyncContext != null) asyncContext.fireComplete();
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return asyncStarted;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        throw new IllegalStateException("Batch requests need startAsync(request, response)");
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+        if (asyncContext == null) asyncContext = new BatchAsyncContext(this, response);
+        asyncContext.restart(response);
+        asyncStarted = true;
+        return asyncContext;
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        if (asyncContext == null) throw new IllegalStateException("Async processing has not been started");
+        return asyncContext;
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return dispatcherType;
+    }
+
+    /* -------- Batch request, as read on the container thread -------- */
+
+    @Override
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    @Override
+    public String getScheme() {
+        return scheme;
+    }
+
+    @Override
+    public String getServerName() {
+        return serverName;
+    }
+
+    @Override
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    @Override
+    public boolean isSecure() {
+        return secure;
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return remoteHost;
+    }
+
+    @Override
+    public int getRemotePort() {
+        return remotePort;
+    }
+
+    @Override
+    public String getLocalAddr() {
+        return localAddr;
+    }
+
+    @Override
+    public String getLocalName() {
+        return localName;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    @Override
+    public Principal getUserPrincipal() {
+        return userPrincipal;
+    }
+
+    @Override
+    public String getRemoteUser() {
+        return remoteUser;
+    }
+
+    @Override
+    public String getAuthType() {
+        return authType;
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return (cookies != null) ? cookies.clone() : null;
+    }
+
+    @Override
+    public Locale getLocale() {
+        return locales.get(0);
+    }
+
+    @Override
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(locales);
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return requestedSessionId;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        return requestedSessionIdValid;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return requestedSessionIdFromCookie;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return requestedSessionIdFromUrl;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    /**
+     * The session the batch request had when the call was created. A session is created through the batch request
+     * only when a call asks for one, one call at a time since the calls share that request.
+     */
+    @Override
+    public HttpSession getSession(boolean create) {
+        HttpSession current = session;
+        if (current != null || !create) return current;
+        synchronized (batch) {
+            current = batch.getSession(true);
+        }
+        session = current;
+        return current;
+    }
+
+    /* -------- Request line -------- */
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestUri;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        return new StringBuffer(requestUrl);
+    }
+
+    @Override
+    public String getServletPath() {
+        return servletPath;
+    }
+
+    @Override
+    public String getPathInfo() {
+        return pathInfo;
+    }
+
+    @Override
+    public HttpServletMapping getHttpServletMapping() {
+        return mapping;
+    }
+
+    @Override
+    public String getPathTranslated() {
+        return null;
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return (values != null) ? values[0] : null;
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = parameters.get(name);
+        return (values != null) ? values.clone() : null;
+    }
+
+    /* -------- Headers and body -------- */
+
+    @Override
+    public String getHeader(String name) {
+        return headers.getFirst(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        return Collections.enumeration(headers.getOrEmpty(name));
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = headers.getFirst(name);
+        return (value != null) ? Integer.parseInt(value) : -1;
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        return headers.getFirstDate(name);
+    }
+
+    @Override
+    public String getContentType() {
+        return headers.getFirst(HttpHeaders.CONTENT_TYPE);
+    }
+
+    @Override
+    public int getContentLength() {
+        return (body.length > 0) ? body.length : -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return getContentLength();
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        MediaType type = headers.getContentType();
+        Charset charset = (type != null) ? type.getCharset() : null;
+        return (charset != null) ? charset.name() : null;
+    }
+
+    @Override
+    public void setCharacterEncoding(String encoding) {
+        // the body is JSON, whose encoding the content type already states
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        if (input == null) input = inputStream(new ByteArrayInputStream(body));
+        return input;
+    }
+
+    private static ServletInputStream inputStream(ByteArrayInputStream in) {
+        return new ServletInputStream() {
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+
+            @Override
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener listener) {
+                throw new UnsupportedOperationException("Batch requests are read synchronously");
+            }
+        };
+    }
+
+    @Override
+    public BufferedReader getReader() {
+        String encoding = getCharacterEncoding();
+        Charset charset = (encoding != null) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), charset));
+    }
+
+    /* -------- Attributes -------- */
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) attributes.remove(name); else attributes.put(name, value);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    private record Mapping(String getMatchValue, String getPattern, MappingMatch getMappingMatch,
+                           String getServletName) implements HttpServletMapping {
+    }
+
+    /* As the container does: the locales of the Accept-Language header, else the server's */
+    private static List<Locale> locales(HttpHeaders headers) {
+        try {
+            List<Locale> locales = headers.getAcceptLanguageAsLocales();
+            if (!locales.isEmpty()) return locales;
+        } catch (IllegalArgumentException malformed) {
+            // Ignored, as the container ignores a malformed Accept-Language
+        }
+        return List.of(Locale.getDefault());
+    }
+
+    private static Map<String, String[]> parameters(String query) {
+        if (query == null) return Map.of();
+        MultiValueMap<String, String> raw = UriComponentsBuilder.newInstance().query(query).build().getQueryParams();
+        MultiValueMap<String, String> decoded = new LinkedMultiValueMap<>();
+        raw.forEach((name, values) -> values.forEach(value -> decoded.add(decode(name),
+                (value != null) ? decode(value) : "")));
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        decoded.forEach((name, values) -> parameters.put(name, values.toArray(String[]::new)));
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        return UriUtils.decode(value.replace('+', ' '), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,299 @@
+package com.logicsoft.molina.batch;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Buffers the status, headers and body one call of an MVC batch writes, leaving the batch response untouched.
+ * Cookies set by a call are dropped.
+ */
+final class BatchServletResponse extends HttpServletResponseWrapper {
+
+    private final HttpHeaders headers = new HttpHeaders();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+    private volatile int status = SC_OK;
+    private volatile boolean committed;
+    private String characterEncoding;
+    private Locale locale = Locale.getDefault();
+    private ServletOutputStream output;
+    private PrintWriter writer;
+
+    BatchServletResponse(HttpServletResponse batch) {
+        super(batch);
+    }
+
+    /** The bytes written so far, flushing the writer if one is open. */
+    synchronized byte[] getContentAsByteArray() {
+        if (writer != null) writer.flush();
+        return body.toByteArray();
+    }
+
+    MediaType getMediaType() {
+        String type = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        return (type != null) ? MediaType.parseMediaType(type) : null;
+    }
+
+    /* -------- Status -------- */
+
+    @Override
+    public void setStatus(int status) {
+        if (!committed) this.status = status;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void sendError(int status, String message) {
+        sendError(status);
+    }
+
+    @Override
+    public void sendError(int status) {
+        requireNotCommitted();
+        resetBuffer();
+        this.status = status;
+        this.committed = true;
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+        requireNotCommitted();
+        resetBuffer();
+        headers.set(HttpHeaders.LOCATION, location);
+        this.status = SC_FOUND;
+        this.committed = true;
+    }
+
+    /* -------- Headers -------- */
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        // the batch response is shared by all its calls; a call cannot set cookies on it
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (committed) return;
+        if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+            setContentType(value);
+        } else if (value == null) {
+            headers.remove(name);
+        } else {
+            headers.set(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (committed || value == null) return;
+        if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+            setContentType(value);
+        } else {
+            headers.add(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        addHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        if (!committed) headers.setDate(name, date);
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        if (committed) return;
+        HttpHeaders formatted = new HttpHeaders();
+        formatted.setDate(name, date);
+        headers.addAll(name, formatted.get(name));
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return headers.getFirst(name);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        return List.copyOf(headers.getOrEmpty(name));
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return List.copyOf(headers.keySet());
+    }
+
+    @Override
+    public void setTrailerFields(Supplier<Map<String, String>> supplier) {
+        // trailers have no place in an envelope
+    }
+
+    /* -------- Content -------- */
+
+    @Override
+    public void setContentType(String type) {
+        if (committed) return;
+        if (type == null) {
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            return;
+        }
+        Charset charset = MediaType.parseMediaType(type).getCharset();
+        if (charset != null && writer == null) characterEncoding = charset.name();
+        headers.set(HttpHeaders.CONTENT_TYPE, type);
+    }
+
+    @Override
+    public String getContentType() {
+        return headers.getFirst(HttpHeaders.CONTENT_TYPE);
+    }
+
+    @Override
+    public void setCharacterEncoding(String encoding) {
+        if (committed || writer != null) return;
+        characterEncoding = encoding;
+        MediaType type = getMediaType();
+        if (type != null && encoding != null) {
+            headers.setContentType(new MediaType(type, Charset.forName(encoding)));
+        }
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return (characterEncoding != null) ? characterEncoding : StandardCharsets.ISO_8859_1.name();
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        if (!committed) headers.setContentLength(length);
+    }
+
+    @Override
+    public void setLocale(Locale locale) {
+        if (!committed && locale != null) this.locale = locale;
+    }
+
+    @Override
+    public Locale getLocale() {
+        return locale;
+    }
+
+    @Override
+    public synchronized ServletOutputStream getOutputStream() {
+        if (writer != null) throw new IllegalStateException("getWriter() has already been called");
+        if (output == null) output = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                body.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                committed = true;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                throw new UnsupportedOperationException("Batch responses are written synchronously");
+            }
+        };
+        return output;
+    }
+
+    @Override
+    public synchronized PrintWriter getWriter() {
+        if (output != null) throw new IllegalStateException("getOutputStream() has already been called");
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(body, Charset.forName(getCharacterEncoding())));
+        }
+        return writer;
+    }
+
+    /* -------- Buffer -------- */
+
+    @Override
+    public void setBufferSize(int size) {
+        // buffered in memory as a whole
+    }
+
+    @Override
+    public int getBufferSize() {
+        return body.size();
+    }
+
+    @Override
+    public synchronized void flushBuffer() {
+        if (writer != null) writer.flush();
+        committed = true;
+    }
+
+    @Override
+    public synchronized void resetBuffer() {
+        requireNotCommitted();
+        if (writer != null) writer.flush();
+        body.reset();
+    }
+
+    @Override
+    public synchronized void reset() {
+        resetBuffer();
+        headers.clear();
+        status = SC_OK;
+        characterEncoding = null;
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    private void requireNotCommitted() {
+        if (committed) throw new IllegalStateException("The response has already been committed");
+    }
+}
@@ -0,0 +1,149 @@
+package com.logicsoft.molina.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.api.RawJson;
+import com.logicsoft.molina.core.EnvelopeWriter;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * What the MVC and WebFlux batch endpoints share: checking a batch, building the headers and body of its calls,
+ * and turning each outcome into the envelope placed in the batch's {@code data} array.
+ */
+final class BatchSupport {
+
+    /**
+     * Request attribute (MVC) or exchange attribute (WebFlux) marking a call dispatched by a batch; a batch endpoint
+     * reached by such a call rejects it, whatever path led there.
+     */
+    static final String CALL_ATTRIBUTE = BatchSupport.class.getName() + ".CALL";
+
+    /* Headers that describe the batch request itself rather than the caller */
+    private static final Set<String> NOT_INHERITED = Set.of("content-length", "content-type", "content-encoding",
+            "transfer-encoding", "accept", "accept-encoding", "expect", "connection", "keep-alive", "upgrade", "te",
+            "trailer", "range", "if-range", "if-match", "if-none-match", "if-modified-since", "if-unmodified-since");
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final ObjectMapper mapper;
+    private final EnvelopeWriter writer;
+    private final ExceptionClassifier classifier;
+    private final int maxRequests;
+
+    BatchSupport(ObjectMapper mapper, TimestampSource timestamps, ExceptionClassifier classifier, int maxRequests) {
+        this.mapper = mapper;
+        this.writer = new EnvelopeWriter(mapper, timestamps);
+        this.classifier = classifier;
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * Rejects the whole batch before any call runs: {@code 400} when it is itself a call of a batch
+     * ({@code nested}) or a path is not a local path, {@code 413} when it holds too many calls.
+     */
+    void check(List<BatchRequest> requests, boolean nested) {
+        if (nested) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch call cannot run a batch");
+        }
+        if (requests.size() > maxRequests) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "A batch holds at most " + maxRequests + " requests");
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            String target = requests.get(i).path();
+            if (target == null || !target.startsWith("/") || target.startsWith("//")) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Request " + i + ": path must start with a single '/'");
+            }
+        }
+    }
+
+    /**
+     * Headers of a call: those of the batch request that describe the caller (authorization, cookies, language,
+     * ...), overridden by the call's own. The envelope is always negotiated as uncompressed JSON, so that it can
+     * be copied into the batch response as is.
+     */
+    HttpHeaders headers(HttpHeaders inherited, BatchRequest request, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        inherited.forEach((name, values) -> {
+            if (!NOT_INHERITED.contains(name.toLowerCase(Locale.ROOT))) headers.addAll(name, values);
+        });
+        request.headers().forEach(headers::set);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        headers.remove(HttpHeaders.ACCEPT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        if (body.length > 0) {
+            if (headers.getContentType() == null) headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentLength(body.length);
+        }
+        return headers;
+    }
+
+    byte[] body(BatchRequest request) {
+        if (request.body() == null || request.body().isNull()) return NO_BODY;
+        try {
+            return mapper.writeValueAsBytes(request.body());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The envelope of a completed call: its JSON body verbatim, or, when the handler wrote no JSON (an empty
+     * {@code 204}, a redirect, a plain-text endpoint), an envelope carrying its status.
+     */
+    RawJson envelope(int status, MediaType contentType, byte[] body) {
+        if (body.length > 0 && contentType != null && (contentType.isCompatibleWith(MediaType.APPLICATION_JSON)
+                || contentType.getSubtype().endsWith("+json"))) {
+            return RawJson.of(body);
+        }
+        HttpStatus known = HttpStatus.resolve(status);
+        String message = (known != null && status >= 300) ? known.getReasonPhrase() : null;
+        return encode(out -> writer.writeMessage(out, status, status < 400, message));
+    }
+
+    /**
+     * The envelope of a call that failed outside the exception advices, classified like they would.
+     */
+    RawJson failure(Throwable ex) {
+        ExceptionClassifier.Classification error = classifier.classify(ex);
+        return encode(out -> writer.writeError(out, error.status(), error.errors(), error.message()));
+    }
+
+    static String pathOf(String target) {
+        int query = target.indexOf('?');
+        return (query < 0) ? target : target.substring(0, query);
+    }
+
+    static String queryOf(String target) {
+        int query = target.indexOf('?');
+        return (query < 0 || query == target.length() - 1) ? null : target.substring(query + 1);
+    }
+
+    private static RawJson encode(Encoding encoding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try {
+            encoding.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return RawJson.of(out.toByteArray());
+    }
+
+    @FunctionalInterface
+    private interface Encoding {
+        void writeTo(ByteArrayOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,152 @@
+package com.logicsoft.molina.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.api.RawJson;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The MVC batch endpoint. Each call is dispatched to the {@link DispatcherServlet} on a worker thread, at most
+ * {@code concurrency} at a time, and goes through the same servlet filters, interceptors and exception advices as a
+ * request of its own. The envelopes are written into {@code data} in the order of the calls, each as soon as it and
+ * those before it are done.
+ * <p>
+ * When writing the batch response fails (the client went away), the calls not started yet are skipped; those
+ * already running complete.
+ */
+@RestController
+public class MvcBatchController {
+
+    private final ObjectProvider<DispatcherServlet> dispatcher;
+    private final BatchFilters filters;
+    private final Executor executor;
+    private final BatchSupport support;
+    private final int concurrency;
+
+    /**
+     * @param beans       where the servlet filters of the application are found
+     * @param maxRequests most calls a batch may hold
+     * @param concurrency most calls of one batch running at the same time
+     */
+    public MvcBatchController(ObjectProvider<DispatcherServlet> dispatcher, ListableBeanFactory beans,
+                              Executor executor, ObjectMapper mapper, TimestampSource timestamps,
+                              ExceptionClassifier classifier, int maxRequests, int concurrency) {
+        this.dispatcher = dispatcher;
+        this.filters = new BatchFilters(beans);
+        this.executor = executor;
+        this.support = new BatchSupport(mapper, timestamps, classifier, maxRequests);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @PostMapping(path = "${molina.response-handler.batch.path:/batch}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseHandler
+    public Iterator<RawJson> batch(@RequestBody List<BatchRequest> requests, HttpServletRequest request,
+                                   HttpServletResponse response) {
+        support.check(requests, request.getAttribute(BatchSupport.CALL_ATTRIBUTE) != null);
+        // Built on the container thread: the calls must not read the batch request concurrently
+        HttpHeaders inherited = new ServletServerHttpRequest(request).getHeaders();
+        // The batch request reached the DispatcherServlet through a path prefix when it has a path info
+        String servletPrefix = (request.getPathInfo() != null) ? request.getServletPath() : null;
+        List<BatchServletRequest> calls = new ArrayList<>(requests.size());
+        List<CompletableFuture<RawJson>> results = new ArrayList<>(requests.size());
+        for (BatchRequest call : requests) {
+            byte[] body = support.body(call);
+            calls.add(new BatchServletRequest(request, servletPrefix, call.method(), call.path(),
+                    support.headers(inherited, call, body), body));
+            results.add(new CompletableFuture<>());
+        }
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < calls.size(); i = next.getAndIncrement()) {
+                results.get(i).complete(dispatch(calls.get(i), new BatchServletResponse(response)));
+            }
+        };
+        for (int workers = Math.min(concurrency, calls.size()); workers > 0; workers--) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException ex) {
+                worker.run();
+            }
+        }
+        return new Results(results, () -> {
+            next.set(calls.size());
+            results.forEach(result -> result.cancel(false));
+        });
+    }
+
+    private RawJson dispatch(BatchServletRequest request, BatchServletResponse response) {
+        if (!request.reachesServlet()) {
+            return support.failure(new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "No endpoint at " + request.getPathWithinApplication()));
+        }
+        try {
+            DispatcherServlet servlet = dispatcher.getObject();
+            filters.doFilter(request, response, servlet);
+            for (BatchAsyncContext async = request.pendingAsync(); async != null; async = request.pendingAsync()) {
+                if (!async.awaitDispatch()) break;
+                request.asyncDispatched();
+                filters.doFilter(request, response, servlet);
+            }
+            return support.envelope(response.getStatus(), response.getMediaType(), response.getContentAsByteArray());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return support.failure(ex);
+        } catch (Exception ex) {
+            return support.failure(ex);
+        } finally {
+            request.asyncCompleted();
+        }
+    }
+
+    /**
+     * The envelopes of the calls, each once it is done. Closed by the advice once the response is written, or could
+     * not be: no call starts after that.
+     */
+    private static final class Results implements Iterator<RawJson>, AutoCloseable {
+
+        private final Iterator<CompletableFuture<RawJson>> results;
+        private final Runnable onClose;
+
+        Results(List<CompletableFuture<RawJson>> results, Runnable onClose) {
+            this.results = results.iterator();
+            this.onClose = onClose;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return results.hasNext();
+        }
+
+        @Override
+        public RawJson next() {
+            return results.next().join();
+        }
+
+        @Override
+        public void close() {
+            onClose.run();
+        }
+    }
+}
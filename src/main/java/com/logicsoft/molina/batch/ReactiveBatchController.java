@@ -0,0 +1,106 @@
+package com.logicsoft.molina.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.FluxMode;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.api.RawJson;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * The WebFlux batch endpoint. Each call is handed to the application's {@link HttpHandler}, at most
+ * {@code concurrency} at a time, so it goes through the same web filters, handler adapters and exception advices
+ * as a request of its own. The envelopes are streamed into {@code data} in the order of the calls, each as soon as
+ * it and those before it are done.
+ * <p>
+ * The calls carry a marker in their Reactor context, which {@link BatchCallWebFilter} copies to their exchange so
+ * that a call reaching the batch endpoint again is rejected.
+ */
+@RestController
+public class ReactiveBatchController {
+
+    private final ObjectProvider<HttpHandler> httpHandler;
+    private final BatchSupport support;
+    private final int concurrency;
+
+    /**
+     * @param maxRequests most calls a batch may hold
+     * @param concurrency most calls of one batch running at the same time
+     */
+    public ReactiveBatchController(ObjectProvider<HttpHandler> httpHandler, ObjectMapper mapper,
+                                   TimestampSource timestamps, ExceptionClassifier classifier, int maxRequests,
+                                   int concurrency) {
+        this.httpHandler = httpHandler;
+        this.support = new BatchSupport(mapper, timestamps, classifier, maxRequests);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @PostMapping(path = "${molina.response-handler.batch.path:/batch}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseHandler(flux = FluxMode.STREAM)
+    public Flux<RawJson> batch(@RequestBody List<BatchRequest> requests, ServerWebExchange exchange) {
+        support.check(requests, exchange.getAttribute(BatchSupport.CALL_ATTRIBUTE) != null);
+        HttpHandler handler = httpHandler.getObject();
+        DataBufferFactory buffers = exchange.getResponse().bufferFactory();
+        return Flux.fromIterable(requests)
+                .flatMapSequential(call -> dispatch(handler, exchange.getRequest(), call, buffers), concurrency);
+    }
+
+    private Mono<RawJson> dispatch(HttpHandler handler, ServerHttpRequest batch, BatchRequest call,
+                                   DataBufferFactory buffers) {
+        return Mono.defer(() -> {
+                    byte[] body = support.body(call);
+                    BatchServerHttpResponse response = new BatchServerHttpResponse(buffers);
+                    return handler.handle(request(batch, call, body, buffers), response)
+                            .then(Mono.fromSupplier(() -> support.envelope(response.status(),
+                                    response.getHeaders().getContentType(), response.getContentAsByteArray())));
+                })
+                .contextWrite(Context.of(BatchSupport.CALL_ATTRIBUTE, Boolean.TRUE))
+                .onErrorResume(ex -> Mono.just(support.failure(ex)));
+    }
+
+    private ServerHttpRequest request(ServerHttpRequest batch, BatchRequest call, byte[] body,
+                                      DataBufferFactory buffers) {
+        String path = batch.getPath().contextPath().value() + BatchSupport.pathOf(call.path());
+        URI uri = UriComponentsBuilder.fromUri(batch.getURI())
+                .replacePath(path)
+                .replaceQuery(BatchSupport.queryOf(call.path()))
+                .build(true)
+                .toUri();
+        ServerHttpRequest mutated = batch.mutate()
+                .method(HttpMethod.valueOf(call.method()))
+                .uri(uri)
+                .contextPath(batch.getPath().contextPath().value())
+                .headers(headers -> {
+                    headers.clear();
+                    headers.addAll(support.headers(batch.getHeaders(), call, body));
+                })
+                .build();
+        return new ServerHttpRequestDecorator(mutated) {
+            @Override
+            @NonNull
+            public Flux<DataBuffer> getBody() {
+                return (body.length > 0) ? Flux.defer(() -> Flux.just(buffers.wrap(body))) : Flux.empty();
+            }
+        };
+    }
+}
@@ -0,0 +1,223 @@
+package com.logicsoft.molina.cache;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.logicsoft.molina.core.ETags;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An encoded JSON envelope without its {@code timestamp}. Serving it writes <code>{"timestamp":"..",</code>
+ * followed by the stored bytes, so every response carries the time it was sent.
+ * <p>
+ * The gzip copy is built the same way: a fresh gzip header and an uncompressed deflate block holding the
+ * timestamp prefix, then the stored bytes compressed once, then a CRC32 combined from the prefix CRC and the
+ * precomputed one of the stored bytes. A hit never runs the compressor.
+ */
+public final class CachedEnvelope {
+
+    private static final byte[] OPEN_TIMESTAMP = "{\"timestamp\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE_TIMESTAMP = "\",".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_OVERHEAD = GZIP_HEADER.length + 5 + 8;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final int status;
+    /* Envelope bytes after the opening brace: "status":..,"result":..,"data":..} */
+    private final byte[] tail;
+    private final byte[] deflatedTail;
+    private final int tailCrc;
+    /* Column i is the CRC of (1 << i) extended by tail.length zero bytes, see crc(byte[]) */
+    private final int[] crcShift;
+    private final String etag;
+
+    private CachedEnvelope(int status, byte[] tail, byte[] deflatedTail, int tailCrc, int[] crcShift, String etag) {
+        this.status = status;
+        this.etag = etag;
+        this.tail = tail;
+        this.deflatedTail = deflatedTail;
+        this.tailCrc = tailCrc;
+        this.crcShift = crcShift;
+    }
+
+    /**
+     * @param envelope an envelope written without timestamp, i.e. starting with <code>{"status":</code>
+     * @param gzip     whether to also keep the compressed form
+     * @param etag     entity tag of the identity form, or {@code null}
+     */
+    public static CachedEnvelope of(int status, byte[] envelope, boolean gzip, String etag) {
+        if (envelope.length < 2 || envelope[0] != '{') {
+            throw new IllegalArgumentException("Not a JSON envelope");
+        }
+        byte[] tail = new byte[envelope.length - 1];
+        System.arraycopy(envelope, 1, tail, 0, tail.length);
+        if (!gzip) return new CachedEnvelope(status, tail, null, 0, null, etag);
+
+        CRC32 crc = new CRC32();
+        crc.update(tail);
+        return new CachedEnvelope(status, tail, deflate(tail), (int) crc.getValue(), crcShift(tail.length),
+                etag);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isGzipped() {
+        return deflatedTail != null;
+    }
+
+    /**
+     * Entity tag of the form selected by {@code gzip}, or {@code null} when the handler does not send one.
+     */
+    public String getETag(boolean gzip) {
+        return (etag != null && gzip) ? ETags.gzip(etag) : etag;
+    }
+
+    /**
+     * Approximate memory held by this entry, used to bound the cache by bytes.
+     */
+    public int weight() {
+        return ENTRY_OVERHEAD + tail.length + (deflatedTail != null ? deflatedTail.length : 0);
+    }
+
+    /**
+     * Sets {@code Content-Type}, {@code Content-Length} and, for the gzip form, {@code Content-Encoding}.
+     */
+    public void writeHeaders(HttpHeaders headers, SerializableString timestamp, boolean gzip) {
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(length(timestamp, gzip));
+        if (gzip) headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+
+    public long length(SerializableString timestamp, boolean gzip) {
+        int head = OPEN_TIMESTAMP.length + timestamp.asUnquotedUTF8().length + CLOSE_TIMESTAMP.length;
+        return gzip ? GZIP_OVERHEAD + head + deflatedTail.length : head + tail.length;
+    }
+
+    /**
+     * Writes the envelope with {@code timestamp}; {@code gzip} requires {@link #isGzipped()}.
+     */
+    public void writeTo(OutputStream out, SerializableString timestamp, boolean gzip) throws IOException {
+        byte[] head = head(timestamp);
+        if (!gzip) {
+            out.write(head);
+            out.write(tail);
+            return;
+        }
+        out.write(GZIP_HEADER);
+        // Stored (uncompressed), non-final deflate block: BFINAL=0, BTYPE=00, LEN, NLEN
+        out.write(0);
+        writeShort(out, head.length);
+        writeShort(out, ~head.length);
+        out.write(head);
+        out.write(deflatedTail);
+        writeInt(out, crc(head));
+        writeInt(out, head.length + tail.length);
+    }
+
+    private static byte[] head(SerializableString timestamp) {
+        byte[] text = timestamp.asUnquotedUTF8();
+        byte[] head = new byte[OPEN_TIMESTAMP.length + text.length + CLOSE_TIMESTAMP.length];
+        System.arraycopy(OPEN_TIMESTAMP, 0, head, 0, OPEN_TIMESTAMP.length);
+        System.arraycopy(text, 0, head, OPEN_TIMESTAMP.length, text.length);
+        System.arraycopy(CLOSE_TIMESTAMP, 0, head, OPEN_TIMESTAMP.length + text.length, CLOSE_TIMESTAMP.length);
+        return head;
+    }
+
+    /* -------- gzip -------- */
+
+    private static byte[] deflate(byte[] data) {
+        // Compressed once per entry, so spend the extra CPU on the better ratio
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * CRC32 of {@code head} followed by the tail: crc(head ++ tail) = shift(crc(head)) ^ crc(tail), where
+     * shift is the linear map of appending tail.length zero bytes (zlib's crc32_combine).
+     */
+    private int crc(byte[] head) {
+        CRC32 crc = new CRC32();
+        crc.update(head);
+        int headCrc = (int) crc.getValue();
+        int shifted = 0;
+        for (int i = 0; headCrc != 0; i++, headCrc >>>= 1) {
+            if ((headCrc & 1) != 0) shifted ^= crcShift[i];
+        }
+        return shifted ^ tailCrc;
+    }
+
+    /**
+     * Matrix (as 32 columns) of the zero-byte extension by {@code length} bytes over GF(2).
+     */
+    private static int[] crcShift(long length) {
+        int[] result = new int[32];
+        for (int i = 0; i < 32; i++) result[i] = 1 << i;
+
+        int[] even = new int[32];
+        int[] odd = new int[32];
+        odd[0] = 0xedb88320;
+        int row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd);   // two zero bits
+        square(odd, even);   // four zero bits
+        while (length != 0) {
+            square(even, odd);
+            if ((length & 1) != 0) apply(even, result);
+            length >>= 1;
+            if (length == 0) break;
+            square(odd, even);
+            if ((length & 1) != 0) apply(odd, result);
+            length >>= 1;
+        }
+        return result;
+    }
+
+    private static void apply(int[] mat, int[] columns) {
+        for (int i = 0; i < columns.length; i++) columns[i] = times(mat, columns[i]);
+    }
+
+    private static int times(int[] mat, int vec) {
+        int sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) sum ^= mat[i];
+        }
+        return sum;
+    }
+
+    private static void square(int[] square, int[] mat) {
+        for (int n = 0; n < 32; n++) square[n] = times(mat, mat[n]);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value);
+        writeShort(out, value >>> 16);
+    }
+}
@@ -0,0 +1,151 @@
+package com.logicsoft.molina.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.logicsoft.molina.annotations.Cached;
+import com.logicsoft.molina.core.ETags;
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * In-process store of encoded envelopes for handlers declaring {@link Cached}. Each handler gets its own
+ * Caffeine cache (W-TinyLFU eviction) bounded by the total bytes of its entries and expiring entries
+ * {@link Cached#ttlMillis()} after they were written.
+ */
+public class EnvelopeCache {
+
+    /** Request / exchange attribute holding the {@link EnvelopeCacheKey} of a miss that should be stored. */
+    public static final String KEY_ATTRIBUTE = "com.logicsoft.molina.cache.EnvelopeCache.KEY";
+
+    private final ConcurrentMap<Method, Cache<EnvelopeCacheKey, CachedEnvelope>> caches = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, Cache<EnvelopeCacheKey, CachedEnvelope>>> listeners =
+            new CopyOnWriteArrayList<>();
+
+    public EnvelopeCache(HandlerDescriptorRegistry descriptors) {
+        descriptors.addListener(this::register);
+    }
+
+    /**
+     * Builds the key of a request to {@code handler}; {@code header} returns the first value of a request
+     * header, or {@code null}, and {@code fields} is the value of the fields parameter, or {@code null}.
+     */
+    public static EnvelopeCacheKey key(HandlerDescriptor handler, String path, String query,
+                                       Function<String, String> header, String fields) {
+        Cached spec = handler.getCache();
+        String[] names = spec.headers();
+        List<String> values = List.of();
+        if (names.length > 0) {
+            String[] v = new String[names.length];
+            for (int i = 0; i < names.length; i++) v[i] = header.apply(names[i]);
+            values = Arrays.asList(v);
+        }
+        // Different fields are different envelopes, even where the rest of the query does not matter
+        return spec.query() ? new EnvelopeCacheKey(path, query, values, null)
+                : new EnvelopeCacheKey(path, null, values, fields);
+    }
+
+    /**
+     * {@code true} when an {@code Accept-Encoding} header value allows gzip.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) continue;
+            for (int i = 1; i < parts.length; i++) {
+                if (parts[i].trim().matches("[qQ]=0(\\.0{0,3})?")) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public CachedEnvelope get(HandlerDescriptor handler, EnvelopeCacheKey key) {
+        Cache<EnvelopeCacheKey, CachedEnvelope> cache = cacheOf(handler);
+        return (cache != null) ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * Stores the envelope (written without timestamp) for {@code key} and returns the entry to serve.
+     *
+     * @param etag tag derived from a version key, or {@code null}; when {@code null} and the handler sends
+     *             ETags, the tag of a {@code 200} envelope is hashed from its bytes
+     */
+    public CachedEnvelope put(HandlerDescriptor handler, EnvelopeCacheKey key, int status, byte[] envelope,
+                              String etag) {
+        Cache<EnvelopeCacheKey, CachedEnvelope> cache = cacheOf(handler);
+        if (etag == null && handler.isEtag() && status == 200) etag = ETags.of(envelope, 1, envelope.length - 1);
+        CachedEnvelope entry = CachedEnvelope.of(status, envelope, handler.getCache().gzip(), etag);
+        if (cache != null) cache.put(key, entry);
+        return entry;
+    }
+
+    public void invalidateAll() {
+        caches.values().forEach(Cache::invalidateAll);
+    }
+
+    /**
+     * Statistics of every handler cache, keyed by {@code Controller.method}.
+     */
+    public Map<String, EnvelopeCacheStats> getStats() {
+        Map<String, EnvelopeCacheStats> result = new LinkedHashMap<>();
+        caches.forEach((method, cache) -> {
+            CacheStats stats = cache.stats();
+            long weighted = cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+            result.put(nameOf(method), new EnvelopeCacheStats(stats.hitCount(), stats.missCount(),
+                    stats.evictionCount(), cache.estimatedSize(), weighted));
+        });
+        return result;
+    }
+
+    /**
+     * Calls {@code listener} with the name and Caffeine cache of every handler cache, existing and future
+     * (e.g. to bind cache metrics).
+     */
+    public void addListener(BiConsumer<String, Cache<EnvelopeCacheKey, CachedEnvelope>> listener) {
+        listeners.add(listener);
+        caches.forEach((method, cache) -> listener.accept(nameOf(method), cache));
+    }
+
+    private Cache<EnvelopeCacheKey, CachedEnvelope> cacheOf(HandlerDescriptor handler) {
+        Cache<EnvelopeCacheKey, CachedEnvelope> cache = caches.get(handler.getMethod());
+        return (cache != null || handler.getCache() == null) ? cache : register(handler);
+    }
+
+    private Cache<EnvelopeCacheKey, CachedEnvelope> register(HandlerDescriptor handler) {
+        Cached spec = handler.getCache();
+        if (spec == null) return null;
+        boolean[] created = {false};
+        Cache<EnvelopeCacheKey, CachedEnvelope> cache = caches.computeIfAbsent(handler.getMethod(), m -> {
+            created[0] = true;
+            return Caffeine.newBuilder()
+                    .maximumWeight(spec.maxBytes())
+                    .weigher((EnvelopeCacheKey key, CachedEnvelope entry) -> entry.weight())
+                    .expireAfterWrite(Duration.ofMillis(spec.ttlMillis()))
+                    .recordStats()
+                    .build();
+        });
+        if (created[0]) {
+            String name = nameOf(handler.getMethod());
+            listeners.forEach(l -> l.accept(name, cache));
+        }
+        return cache;
+    }
+
+    private static String nameOf(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+}
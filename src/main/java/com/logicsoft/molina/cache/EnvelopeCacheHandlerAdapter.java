@@ -0,0 +1,143 @@
+package com.logicsoft.molina.cache;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.logicsoft.molina.core.EnvelopeFormat;
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.core.TimestampSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerAdapter;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * WebFlux counterpart of {@link EnvelopeCacheInterceptor}: picked by the dispatcher ahead of the
+ * {@link RequestMappingHandlerAdapter} for {@link com.logicsoft.molina.annotations.Cached} handlers, it answers
+ * hits without invoking the controller and delegates misses, leaving the key in an exchange attribute for
+ * {@code ApiResponseResultHandler} to store the envelope.
+ */
+public class EnvelopeCacheHandlerAdapter implements HandlerAdapter, Ordered {
+
+    private final EnvelopeCache cache;
+    private final HandlerDescriptorRegistry descriptors;
+    private final RequestedContentTypeResolver resolver;
+    private final TimestampSource timestamps;
+    private final ObjectProvider<RequestMappingHandlerAdapter> delegate;
+    private final ObjectProvider<? extends HandlerAdapter> misses;
+    private final String fieldsParameter;
+
+    public EnvelopeCacheHandlerAdapter(EnvelopeCache cache, HandlerDescriptorRegistry descriptors,
+                                       RequestedContentTypeResolver resolver, TimestampSource timestamps,
+                                       ObjectProvider<RequestMappingHandlerAdapter> delegate) {
+        this(cache, descriptors, resolver, timestamps, delegate, null, "fields");
+    }
+
+    /**
+     * @param misses          adapter given the requests this one does not answer when it supports their handler
+     *                        (the concurrency limit), or {@code null}; the others go to {@code delegate}
+     * @param fieldsParameter query parameter naming the properties of {@code data} to write, or {@code null}
+     *                        / blank when it is ignored
+     */
+    public EnvelopeCacheHandlerAdapter(EnvelopeCache cache, HandlerDescriptorRegistry descriptors,
+                                       RequestedContentTypeResolver resolver, TimestampSource timestamps,
+                                       ObjectProvider<RequestMappingHandlerAdapter> delegate,
+                                       ObjectProvider<? extends HandlerAdapter> misses, String fieldsParameter) {
+        this.cache = cache;
+        this.descriptors = descriptors;
+        this.resolver = resolver;
+        this.timestamps = timestamps;
+        this.delegate = delegate;
+        this.misses = misses;
+        this.fieldsParameter = (fieldsParameter != null && !fieldsParameter.isBlank()) ? fieldsParameter : null;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public boolean supports(@NonNull Object handler) {
+        if (!(handler instanceof HandlerMethod hm)) return false;
+        HandlerDescriptor descriptor = descriptors.find(hm.getMethod());
+        return descriptor != null && descriptor.getCache() != null;
+    }
+
+    @Override
+    @NonNull
+    public Mono<HandlerResult> handle(@NonNull ServerWebExchange exchange, @NonNull Object handler) {
+        ServerHttpRequest request = exchange.getRequest();
+        HandlerDescriptor descriptor = descriptors.find(((HandlerMethod) handler).getMethod());
+        if (request.getMethod() == HttpMethod.GET
+                && EnvelopeFormat.negotiate(resolver.resolveMediaTypes(exchange)) == EnvelopeFormat.JSON) {
+            EnvelopeCacheKey key = EnvelopeCache.key(descriptor, request.getURI().getRawPath(),
+                    request.getURI().getRawQuery(), request.getHeaders()::getFirst,
+                    (fieldsParameter != null) ? request.getQueryParams().getFirst(fieldsParameter) : null);
+            CachedEnvelope hit = cache.get(descriptor, key);
+            if (hit != null) {
+                ServerHttpResponse response = exchange.getResponse();
+                if (notModified(exchange, hit)) return response.setComplete().then(Mono.empty());
+                response.setStatusCode(HttpStatusCode.valueOf(hit.getStatus()));
+                return response.writeWith(Mono.fromSupplier(() -> encode(exchange, hit, timestamps)))
+                        .then(Mono.empty());
+            }
+            exchange.getAttributes().put(EnvelopeCache.KEY_ATTRIBUTE, key);
+        }
+        HandlerAdapter next = (misses != null) ? misses.getIfAvailable() : null;
+        if (next != null && next.supports(handler)) return next.handle(exchange, handler);
+        return delegate.getObject().handle(exchange, handler);
+    }
+
+    /**
+     * Sets the {@code ETag} of the form about to be served and returns {@code true} when the request's
+     * {@code If-None-Match} already matches it; the response is then a bodiless {@code 304}.
+     */
+    public static boolean notModified(ServerWebExchange exchange, CachedEnvelope entry) {
+        boolean gzip = entry.isGzipped()
+                && EnvelopeCache.acceptsGzip(exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        String etag = entry.getETag(gzip);
+        if (etag == null) return false;
+        boolean notModified = exchange.checkNotModified(etag);
+        if (notModified && entry.isGzipped()) {
+            exchange.getResponse().getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return notModified;
+    }
+
+    /**
+     * Encodes {@code entry} with a fresh timestamp into a buffer of the response's factory and sets the
+     * content headers, using the gzip form when the entry has one and the client accepts it.
+     */
+    public static DataBuffer encode(ServerWebExchange exchange, CachedEnvelope entry, TimestampSource timestamps) {
+        ServerHttpResponse response = exchange.getResponse();
+        boolean gzip = entry.isGzipped()
+                && EnvelopeCache.acceptsGzip(exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        SerializableString timestamp = timestamps.encodedNow();
+        if (entry.isGzipped()) response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        entry.writeHeaders(response.getHeaders(), timestamp, gzip);
+        DataBuffer buffer = response.bufferFactory().allocateBuffer((int) entry.length(timestamp, gzip));
+        try (OutputStream out = buffer.asOutputStream()) {
+            entry.writeTo(out, timestamp, gzip);
+            return buffer;
+        } catch (IOException e) {
+            DataBufferUtils.release(buffer);
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+    }
+}
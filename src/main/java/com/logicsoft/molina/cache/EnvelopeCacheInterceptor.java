@@ -0,0 +1,122 @@
+package com.logicsoft.molina.cache;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.logicsoft.molina.core.EnvelopeFormat;
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.core.TimestampSource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+/**
+ * Serves {@link com.logicsoft.molina.annotations.Cached} handlers from the {@link EnvelopeCache} before the
+ * controller runs. On a miss the key is left in a request attribute and {@code ApiResponseMvcAdvice} stores
+ * the envelope it writes. Only {@code GET} requests negotiated to JSON are cached, using the application's
+ * {@link ContentNegotiationManager} so a hit is served in the format the converters would have picked.
+ */
+public class EnvelopeCacheInterceptor implements HandlerInterceptor {
+
+    private final EnvelopeCache cache;
+    private final HandlerDescriptorRegistry descriptors;
+    private final TimestampSource timestamps;
+    private final String fieldsParameter;
+    private final ContentNegotiationManager negotiation;
+
+    public EnvelopeCacheInterceptor(EnvelopeCache cache, HandlerDescriptorRegistry descriptors,
+                                    TimestampSource timestamps) {
+        this(cache, descriptors, timestamps, "fields");
+    }
+
+    /**
+     * @param fieldsParameter query parameter naming the properties of {@code data} to write, or {@code null}
+     *                        / blank when it is ignored
+     */
+    public EnvelopeCacheInterceptor(EnvelopeCache cache, HandlerDescriptorRegistry descriptors,
+                                    TimestampSource timestamps, String fieldsParameter) {
+        this(cache, descriptors, timestamps, fieldsParameter, new ContentNegotiationManager());
+    }
+
+    /**
+     * @param negotiation the application's content negotiation, which decides whether a request is answered in
+     *                    JSON and can therefore be served from the cache
+     */
+    public EnvelopeCacheInterceptor(EnvelopeCache cache, HandlerDescriptorRegistry descriptors,
+                                    TimestampSource timestamps, String fieldsParameter,
+                                    ContentNegotiationManager negotiation) {
+        this.cache = cache;
+        this.descriptors = descriptors;
+        this.timestamps = timestamps;
+        this.fieldsParameter = (fieldsParameter != null && !fieldsParameter.isBlank()) ? fieldsParameter : null;
+        this.negotiation = negotiation;
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                             @NonNull Object handler) throws IOException {
+        if (!(handler instanceof HandlerMethod hm) || !"GET".equals(request.getMethod())) return true;
+        HandlerDescriptor descriptor = descriptors.find(hm.getMethod());
+        if (descriptor == null || descriptor.getCache() == null || !acceptsJson(request)) return true;
+
+        EnvelopeCacheKey key = EnvelopeCache.key(descriptor, request.getRequestURI(), request.getQueryString(),
+                request::getHeader, (fieldsParameter != null) ? request.getParameter(fieldsParameter) : null);
+        CachedEnvelope hit = cache.get(descriptor, key);
+        if (hit == null) {
+            request.setAttribute(EnvelopeCache.KEY_ATTRIBUTE, key);
+            return true;
+        }
+        boolean gzip = EnvelopeCache.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (notModified(request, response, hit, gzip)) return false;
+        ServletServerHttpResponse out = new ServletServerHttpResponse(response);
+        out.setStatusCode(HttpStatusCode.valueOf(hit.getStatus()));
+        write(out, hit, gzip, timestamps);
+        return false;
+    }
+
+    /**
+     * Writes {@code entry} with a fresh timestamp, gzip-encoded when the entry has that form and the client
+     * accepts it.
+     */
+    public static void write(ServerHttpResponse response, CachedEnvelope entry,
+                             boolean acceptsGzip, TimestampSource timestamps) throws IOException {
+        boolean gzip = acceptsGzip && entry.isGzipped();
+        SerializableString timestamp = timestamps.encodedNow();
+        if (entry.isGzipped()) response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        entry.writeHeaders(response.getHeaders(), timestamp, gzip);
+        entry.writeTo(response.getBody(), timestamp, gzip);
+        response.flush();
+    }
+
+    /**
+     * Sets the {@code ETag} of the form about to be served and returns {@code true} when the request's
+     * {@code If-None-Match} already matches it, in which case the response is a bodiless {@code 304}.
+     */
+    public static boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                                      CachedEnvelope entry, boolean acceptsGzip) {
+        String etag = entry.getETag(acceptsGzip && entry.isGzipped());
+        if (etag == null) return false;
+        boolean notModified = new ServletWebRequest(request, response).checkNotModified(etag);
+        if (notModified && entry.isGzipped()) response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return notModified;
+    }
+
+    private boolean acceptsJson(HttpServletRequest request) {
+        try {
+            return EnvelopeFormat.negotiate(negotiation.resolveMediaTypes(new ServletWebRequest(request)))
+                    == EnvelopeFormat.JSON;
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            return false;
+        }
+    }
+}
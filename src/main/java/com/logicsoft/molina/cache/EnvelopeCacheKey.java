@@ -0,0 +1,11 @@
+package com.logicsoft.molina.cache;
+
+import java.util.List;
+
+/**
+ * Key of a cached envelope within one handler: the raw request path, the raw query string (or {@code null}
+ * when the handler ignores it), the values of the configured headers, in declaration order, and the requested
+ * fields when the query is ignored (or {@code null}).
+ */
+public record EnvelopeCacheKey(String path, String query, List<String> headers, String fields) {
+}
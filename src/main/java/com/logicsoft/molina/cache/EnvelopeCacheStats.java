@@ -0,0 +1,14 @@
+package com.logicsoft.molina.cache;
+
+/**
+ * Point-in-time statistics of the response cache of one handler.
+ *
+ * @param weightedBytes encoded bytes currently held, including the gzip copies
+ */
+public record EnvelopeCacheStats(long hits, long misses, long evictions, long entries, long weightedBytes) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return (requests == 0) ? 1.0 : (double) hits / requests;
+    }
+}
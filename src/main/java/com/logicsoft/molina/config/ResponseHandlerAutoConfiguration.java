@@ -1,31 +1,341 @@
 package com.logicsoft.molina.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.logicsoft.molina.annotations.Bounded;
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.batch.BatchCallWebFilter;
+import com.logicsoft.molina.batch.MvcBatchController;
+import com.logicsoft.molina.batch.ReactiveBatchController;
+import com.logicsoft.molina.cache.EnvelopeCache;
+import com.logicsoft.molina.cache.EnvelopeCacheHandlerAdapter;
+import com.logicsoft.molina.cache.EnvelopeCacheInterceptor;
 import com.logicsoft.molina.core.ApiResponseMvcAdvice;
 import com.logicsoft.molina.core.ApiResponseResultHandler;
+import com.logicsoft.molina.core.CachedTimestampSource;
+import com.logicsoft.molina.core.DeadlineInterceptor;
+import com.logicsoft.molina.core.EnvelopeFormat;
+import com.logicsoft.molina.core.EnvelopeFormatEncoder;
+import com.logicsoft.molina.core.EnvelopeFormatHttpMessageConverter;
+import com.logicsoft.molina.core.ErrorTemplates;
+import com.logicsoft.molina.core.FluxBounds;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.core.OffloadingHandlerAdapter;
+import com.logicsoft.molina.core.ResponseTimingInterceptor;
+import com.logicsoft.molina.core.ResponseTimingWebFilter;
+import com.logicsoft.molina.core.TimestampSource;
 import com.logicsoft.molina.exception.ApiResponseConstraintViolationAdvice;
 import com.logicsoft.molina.exception.ApiResponseGenericExceptionAdvice;
 import com.logicsoft.molina.exception.ApiResponseReactiveExceptionAdvice;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import com.logicsoft.molina.limit.AdaptiveConcurrencyLimiter;
+import com.logicsoft.molina.limit.ConcurrencyLimitHandlerAdapter;
+import com.logicsoft.molina.limit.ConcurrencyLimitInterceptor;
+import com.logicsoft.molina.limit.ConcurrencyLimitWebFilter;
+import com.logicsoft.molina.limit.ConcurrencyLimits;
+import com.logicsoft.molina.metrics.MicrometerResponseHandlerMetrics;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.validation.Validator;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.*;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.Ordered;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.HttpHandler;
 import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.reactive.HandlerResultHandler;
 import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerAdapter;
 import org.springframework.web.reactive.result.method.annotation.ResponseBodyResultHandler;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
 
-@AutoConfiguration
+import java.util.Arrays;
+import java.util.List;
+
+@AutoConfiguration(afterName = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration"
+})
 @ConditionalOnProperty(prefix = "molina.response-handler", name = "enabled", havingValue = "true", matchIfMissing = true)
+@ImportRuntimeHints(ResponseHandlerRuntimeHints.class)
 public class ResponseHandlerAutoConfiguration {
 
+    @Bean
+    @ConditionalOnMissingBean
+    public HandlerDescriptorRegistry handlerDescriptorRegistry() {
+        return new HandlerDescriptorRegistry();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TimestampSource responseHandlerTimestampSource(
+            @Value("${molina.response-handler.timestamp.precision:millis}") String precision) {
+        return new CachedTimestampSource(CachedTimestampSource.Precision.valueOf(precision.trim().toUpperCase()));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ExceptionClassifier responseHandlerExceptionClassifier(
+            @Value("${molina.response-handler.errors.expose-server-errors:false}") boolean exposeServerErrors) {
+        return ExceptionClassifier.defaults().exposeServerErrors(exposeServerErrors);
+    }
+
+    /* An array, which @Value splits without the conversion service Boot registers */
+    @Bean
+    @ConditionalOnMissingBean
+    public ErrorTemplates responseHandlerErrorTemplates(
+            @Value("${molina.response-handler.errors.templates:404,405,415,429,500,503}") int[] statuses) {
+        return ErrorTemplates.of(Arrays.stream(statuses).boxed().toList());
+    }
+
+    /* ===================== Metrics (Micrometer) ===================== */
+
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "molina.response-handler.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class MetricsConfig {
+
+        @Bean
+        @ConditionalOnMissingBean(ResponseHandlerMetrics.class)
+        public MicrometerResponseHandlerMetrics responseHandlerMetrics(MeterRegistry registry,
+                                                                       HandlerDescriptorRegistry descriptors) {
+            return new MicrometerResponseHandlerMetrics(registry, descriptors);
+        }
+    }
+
+    /* ===================== Response cache (Caffeine) ===================== */
+
+    @Configuration
+    @ConditionalOnClass(name = "com.github.benmanes.caffeine.cache.Caffeine")
+    @ConditionalOnProperty(prefix = "molina.response-handler.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class CacheConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public EnvelopeCache envelopeCache(HandlerDescriptorRegistry descriptors) {
+            return new EnvelopeCache(descriptors);
+        }
+
+        @Configuration
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+        @ConditionalOnClass(WebMvcConfigurer.class)
+        static class MvcCacheConfig {
+
+            @Bean
+            public WebMvcConfigurer envelopeCacheInterceptorConfigurer(EnvelopeCache cache,
+                    HandlerDescriptorRegistry descriptors,
+                    TimestampSource timestamps,
+                    ObjectProvider<ContentNegotiationManager> negotiation,
+                    @Value("${molina.response-handler.fields.parameter:fields}") String fieldsParameter) {
+                return new WebMvcConfigurer() {
+                    @Override
+                    public void addInterceptors(InterceptorRegistry registry) {
+                        // Resolved here, once MVC has built it from the configurers, this one included
+                        registry.addInterceptor(new EnvelopeCacheInterceptor(cache, descriptors, timestamps,
+                                fieldsParameter, negotiation.getIfUnique(ContentNegotiationManager::new)));
+                    }
+                };
+            }
+        }
+
+        @Configuration
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+        @ConditionalOnClass(RequestMappingHandlerAdapter.class)
+        static class WebFluxCacheConfig {
+
+            @Bean
+            @ConditionalOnMissingBean
+            public EnvelopeCacheHandlerAdapter envelopeCacheHandlerAdapter(EnvelopeCache cache,
+                    HandlerDescriptorRegistry descriptors,
+                    RequestedContentTypeResolver resolver,
+                    TimestampSource timestamps,
+                    ObjectProvider<RequestMappingHandlerAdapter> delegate,
+                    ObjectProvider<ConcurrencyLimitHandlerAdapter> limiter,
+                    @Value("${molina.response-handler.fields.parameter:fields}") String fieldsParameter) {
+                return new EnvelopeCacheHandlerAdapter(cache, descriptors, resolver, timestamps, delegate, limiter,
+                        fieldsParameter);
+            }
+        }
+
+        @Configuration
+        @ConditionalOnClass(MeterRegistry.class)
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnProperty(prefix = "molina.response-handler.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+        static class CacheMetricsConfig {
+
+            /** Standard Caffeine cache meters ({@code cache.gets}, {@code cache.evictions}, ...), one cache per handler. */
+            @Bean
+            public MeterBinder envelopeCacheMetrics(EnvelopeCache cache) {
+                return registry -> cache.addListener((name, handlerCache) ->
+                        CaffeineCacheMetrics.monitor(registry, handlerCache, name, "cache.manager", "molina"));
+            }
+        }
+    }
+
+    /* ===================== Concurrency limits ===================== */
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "molina.response-handler.limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class LimitConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public ConcurrencyLimits concurrencyLimits(HandlerDescriptorRegistry descriptors) {
+            return new ConcurrencyLimits(descriptors);
+        }
+
+        @Configuration
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+        @ConditionalOnClass(WebMvcConfigurer.class)
+        static class MvcLimitConfig {
+
+            /** Ordered last so that the response cache answers hits before a permit is taken. */
+            @Bean
+            public WebMvcConfigurer concurrencyLimitInterceptorConfigurer(ConcurrencyLimits limits,
+                    HandlerDescriptorRegistry descriptors,
+                    TimestampSource timestamps,
+                    ObjectProvider<ResponseHandlerMetrics> metrics) {
+                return new WebMvcConfigurer() {
+                    @Override
+                    public void addInterceptors(InterceptorRegistry registry) {
+                        registry.addInterceptor(new ConcurrencyLimitInterceptor(limits, descriptors, timestamps,
+                                metricsOrNoop(metrics))).order(Ordered.LOWEST_PRECEDENCE);
+                    }
+                };
+            }
+        }
+
+        @Configuration
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+        @ConditionalOnClass(RequestMappingHandlerAdapter.class)
+        static class WebFluxLimitConfig {
+
+            @Bean
+            @ConditionalOnMissingBean
+            public ConcurrencyLimitHandlerAdapter concurrencyLimitHandlerAdapter(ConcurrencyLimits limits,
+                    HandlerDescriptorRegistry descriptors,
+                    TimestampSource timestamps,
+                    ObjectProvider<ResponseHandlerMetrics> metrics,
+                    ObjectProvider<RequestMappingHandlerAdapter> delegate) {
+                return new ConcurrencyLimitHandlerAdapter(limits, descriptors, timestamps, metricsOrNoop(metrics),
+                        delegate);
+            }
+
+            @Bean
+            public ConcurrencyLimitWebFilter concurrencyLimitWebFilter() {
+                return new ConcurrencyLimitWebFilter();
+            }
+        }
+
+        @Configuration
+        @ConditionalOnClass(MeterRegistry.class)
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnProperty(prefix = "molina.response-handler.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+        static class LimitMetricsConfig {
+
+            /** Current limit and in-flight requests of every limited handler. */
+            @Bean
+            public MeterBinder concurrencyLimitMetrics(ConcurrencyLimits limits) {
+                return registry -> limits.addListener((name, limiter) -> {
+                    Gauge.builder("molina.envelope.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                            .description("Current concurrency limit")
+                            .tag("handler", name)
+                            .register(registry);
+                    Gauge.builder("molina.envelope.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                            .description("Requests holding a concurrency permit")
+                            .tag("handler", name)
+                            .register(registry);
+                });
+            }
+        }
+    }
+
+    /* ===================== Batch endpoint ===================== */
+
+    @Configuration
+    @ConditionalOnProperty(prefix = "molina.response-handler.batch", name = "enabled", havingValue = "true")
+    static class BatchConfig {
+
+        @Configuration
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+        @ConditionalOnClass(DispatcherServlet.class)
+        static class MvcBatchConfig {
+
+            /** Calls run on the {@code molinaHandlerExecutor} bean when one is defined, else on virtual threads. */
+            @Bean
+            @ConditionalOnMissingBean
+            public MvcBatchController mvcBatchController(ObjectProvider<DispatcherServlet> dispatcher,
+                    ListableBeanFactory beans,
+                    @Qualifier(OffloadingHandlerAdapter.EXECUTOR_BEAN_NAME) ObjectProvider<AsyncTaskExecutor> executor,
+                    ObjectProvider<ObjectMapper> mapperProvider,
+                    TimestampSource timestamps,
+                    ExceptionClassifier classifier,
+                    @Value("${molina.response-handler.batch.max-requests:20}") int maxRequests,
+                    @Value("${molina.response-handler.batch.concurrency:8}") int concurrency) {
+                return new MvcBatchController(dispatcher, beans,
+                        executor.getIfAvailable(ResponseHandlerAutoConfiguration::batchExecutor),
+                        mapperProvider.getIfAvailable(ObjectMapper::new), timestamps, classifier, maxRequests,
+                        concurrency);
+            }
+        }
+
+        @Configuration
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+        @ConditionalOnClass(HttpHandler.class)
+        static class WebFluxBatchConfig {
+
+            @Bean
+            @ConditionalOnMissingBean
+            public ReactiveBatchController reactiveBatchController(ObjectProvider<HttpHandler> httpHandler,
+                    ObjectProvider<ObjectMapper> mapperProvider,
+                    TimestampSource timestamps,
+                    ExceptionClassifier classifier,
+                    @Value("${molina.response-handler.batch.max-requests:20}") int maxRequests,
+                    @Value("${molina.response-handler.batch.concurrency:8}") int concurrency) {
+                return new ReactiveBatchController(httpHandler, mapperProvider.getIfAvailable(ObjectMapper::new),
+                        timestamps, classifier, maxRequests, concurrency);
+            }
+
+            @Bean
+            @ConditionalOnMissingBean
+            public BatchCallWebFilter batchCallWebFilter() {
+                return new BatchCallWebFilter();
+            }
+        }
+    }
+
+    private static ObjectMapper envelopeMapper(ObjectProvider<ObjectMapper> mapperProvider) {
+        return mapperProvider.getIfAvailable(ObjectMapper::new).copy()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private static ResponseHandlerMetrics metricsOrNoop(ObjectProvider<ResponseHandlerMetrics> metrics) {
+        return metrics.getIfAvailable(() -> ResponseHandlerMetrics.NOOP);
+    }
+
     /* ===================== MVC (SERVLET) ===================== */
 
     @Configuration
@@ -39,14 +349,89 @@ public class ResponseHandlerAutoConfiguration {
                 ObjectProvider<ObjectMapper> mapperProvider,
                 org.springframework.context.ApplicationContext ctx,
                 @Value("${molina.response-handler.validation.warn-when-inactive:true}")
-                boolean warnWhenInactive) {
-            return new ApiResponseMvcAdvice(mapperProvider, ctx, warnWhenInactive);
+                boolean warnWhenInactive,
+                HandlerDescriptorRegistry descriptors,
+                @Value("${molina.response-handler.mvc.direct-write:false}")
+                boolean directWrite,
+                TimestampSource timestamps,
+                ObjectProvider<ResponseHandlerMetrics> metrics,
+                ObjectProvider<EnvelopeCache> cache,
+                ExceptionClassifier classifier,
+                @Value("${molina.response-handler.fields.parameter:fields}") String fieldsParameter,
+                @Value("${molina.response-handler.server-timing.enabled:false}") boolean serverTiming) {
+            return new ApiResponseMvcAdvice(mapperProvider, ctx, warnWhenInactive, descriptors, directWrite, timestamps,
+                    metricsOrNoop(metrics), cache.getIfAvailable(), classifier, fieldsParameter, serverTiming);
+        }
+
+        /**
+         * Stamps the start of handler methods for the {@code Server-Timing} header and the Flight Recorder event;
+         * first, so that the phase covers the other interceptors.
+         */
+        @Bean
+        public WebMvcConfigurer apiResponseTimingConfigurer(
+                @Value("${molina.response-handler.server-timing.enabled:false}") boolean serverTiming) {
+            return new WebMvcConfigurer() {
+                @Override
+                public void addInterceptors(InterceptorRegistry registry) {
+                    registry.addInterceptor(new ResponseTimingInterceptor(serverTiming))
+                            .order(Ordered.HIGHEST_PRECEDENCE);
+                }
+            };
+        }
+
+        /**
+         * Applies {@code @ResponseHandler(timeoutMillis)} and the request deadline header to async requests.
+         */
+        @Bean
+        public WebMvcConfigurer apiResponseDeadlineConfigurer(HandlerDescriptorRegistry descriptors,
+                ObjectProvider<ResponseHandlerMetrics> metrics,
+                @Value("${molina.response-handler.deadline.header:}") String deadlineHeader,
+                @Value("${molina.response-handler.errors.stack-traces:true}") boolean stackTraces) {
+            DeadlineInterceptor interceptor =
+                    new DeadlineInterceptor(descriptors, metricsOrNoop(metrics), deadlineHeader, stackTraces);
+            return new WebMvcConfigurer() {
+                @Override
+                public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                    configurer.registerCallableInterceptors(interceptor);
+                    configurer.registerDeferredResultInterceptors(interceptor);
+                }
+            };
+        }
+
+        @Bean
+        public SmartInitializingSingleton apiResponseMvcDescriptorPreloader(
+                HandlerDescriptorRegistry descriptors,
+                ObjectProvider<org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping> mappings) {
+            return () -> mappings.orderedStream().forEach(m -> descriptors.registerAll(m.getHandlerMethods().values()));
+        }
+
+        /**
+         * Adds converters for the binary envelope formats on the classpath that no registered converter
+         * handles yet, so content negotiation can select them.
+         */
+        @Bean
+        public WebMvcConfigurer apiResponseEnvelopeFormatConverters(ObjectProvider<ObjectMapper> mapperProvider) {
+            return new WebMvcConfigurer() {
+                @Override
+                public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                    for (EnvelopeFormat format : EnvelopeFormat.values()) {
+                        if (!format.isAvailable() || !format.isBinary()) continue;
+                        boolean covered = converters.stream().anyMatch(c ->
+                                c.canWrite(ApiResponse.class, format.getMediaTypes().get(0)));
+                        if (!covered) {
+                            converters.add(new EnvelopeFormatHttpMessageConverter(format, envelopeMapper(mapperProvider)));
+                        }
+                    }
+                }
+            };
         }
 
         @Bean
         @ConditionalOnMissingBean
-        public ApiResponseGenericExceptionAdvice apiResponseGenericExceptionAdvice() {
-            return new ApiResponseGenericExceptionAdvice();
+        public ApiResponseGenericExceptionAdvice apiResponseGenericExceptionAdvice(TimestampSource timestamps,
+                ObjectProvider<ResponseHandlerMetrics> metrics, ExceptionClassifier classifier,
+                ErrorTemplates templates) {
+            return new ApiResponseGenericExceptionAdvice(timestamps, metricsOrNoop(metrics), classifier, templates);
         }
     }
 
@@ -58,11 +443,72 @@ public class ResponseHandlerAutoConfiguration {
 
         @Bean
         @ConditionalOnMissingBean
-        public ApiResponseConstraintViolationAdvice apiResponseConstraintViolationAdvice() {
-            return new ApiResponseConstraintViolationAdvice();
+        public ApiResponseConstraintViolationAdvice apiResponseConstraintViolationAdvice(TimestampSource timestamps,
+                ObjectProvider<ResponseHandlerMetrics> metrics, ExceptionClassifier classifier) {
+            return new ApiResponseConstraintViolationAdvice(timestamps, metricsOrNoop(metrics), classifier);
         }
     }
 
+    /**
+     * Runs blocking {@code @ResponseHandler} methods on virtual threads, or on the {@code molinaHandlerExecutor}
+     * bean when one is defined, releasing the container thread while they run.
+     */
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnClass(WebMvcRegistrations.class)
+    @ConditionalOnProperty(prefix = "molina.response-handler.mvc", name = "virtual-threads", havingValue = "true")
+    static class MvcOffloadConfig {
+
+        @Bean
+        @ConditionalOnMissingBean(WebMvcRegistrations.class)
+        public WebMvcRegistrations apiResponseOffloadingRegistrations(HandlerDescriptorRegistry descriptors,
+                @Qualifier(OffloadingHandlerAdapter.EXECUTOR_BEAN_NAME) ObjectProvider<AsyncTaskExecutor> executor) {
+            AsyncTaskExecutor tasks = executor.getIfAvailable(ResponseHandlerAutoConfiguration::virtualThreadExecutor);
+            return new WebMvcRegistrations() {
+                @Override
+                public org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter
+                        getRequestMappingHandlerAdapter() {
+                    return new OffloadingHandlerAdapter(descriptors, tasks);
+                }
+            };
+        }
+
+        /**
+         * A {@code WebMvcRegistrations} of the application replaces the one above, and with it the offloading
+         * adapter: startup fails rather than leaving the property without effect, unless the handler adapter MVC
+         * ended up with is an {@link OffloadingHandlerAdapter}.
+         */
+        @Bean
+        public SmartInitializingSingleton apiResponseOffloadingCheck(ObjectProvider<
+                org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter> adapters) {
+            return () -> {
+                if (adapters.stream().noneMatch(OffloadingHandlerAdapter.class::isInstance)) {
+                    throw new IllegalStateException("molina.response-handler.mvc.virtual-threads is set, but the "
+                            + "application's WebMvcRegistrations bean replaces the handler adapter that offloads "
+                            + "@ResponseHandler methods; return an OffloadingHandlerAdapter from its "
+                            + "getRequestMappingHandlerAdapter(), or unset the property");
+                }
+            };
+        }
+    }
+
+    private static AsyncTaskExecutor virtualThreadExecutor() {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("molina.response-handler.mvc.virtual-threads requires Java 21, or an "
+                    + "AsyncTaskExecutor bean named '" + OffloadingHandlerAdapter.EXECUTOR_BEAN_NAME + "'");
+        }
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("molina-handler-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    /* Virtual threads on Java 21+; a call waiting on I/O then holds no platform thread */
+    private static AsyncTaskExecutor batchExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("molina-batch-");
+        executor.setVirtualThreads(Runtime.version().feature() >= 21);
+        return executor;
+    }
+
     /* ===================== WebFlux (REACTIVE) ===================== */
 
     @Configuration
@@ -79,14 +525,70 @@ public class ResponseHandlerAutoConfiguration {
         @Bean
         @ConditionalOnMissingBean(ApiResponseResultHandler.class)
         public ApiResponseResultHandler apiResponseResultHandler(ServerCodecConfigurer codecs,
-                                                                 RequestedContentTypeResolver resolver) {
-            return new ApiResponseResultHandler(codecs, resolver);
+                RequestedContentTypeResolver resolver,
+                ObjectProvider<ObjectMapper> mapperProvider,
+                HandlerDescriptorRegistry descriptors,
+                TimestampSource timestamps,
+                ObjectProvider<ResponseHandlerMetrics> metrics,
+                ObjectProvider<EnvelopeCache> cache,
+                ExceptionClassifier classifier,
+                ErrorTemplates errorTemplates,
+                @Value("${molina.response-handler.deadline.header:}") String deadlineHeader,
+                @Value("${molina.response-handler.flux.max-elements:0}") long maxElements,
+                @Value("${molina.response-handler.flux.max-bytes:0}") long maxBytes,
+                @Value("${molina.response-handler.flux.overflow:reject}") String overflow,
+                @Value("${molina.response-handler.fields.parameter:fields}") String fieldsParameter,
+                @Value("${molina.response-handler.server-timing.enabled:false}") boolean serverTiming,
+                @Value("${molina.response-handler.errors.stack-traces:true}") boolean stackTraces) {
+            FluxBounds bounds = new FluxBounds(maxElements, maxBytes,
+                    Bounded.Overflow.valueOf(overflow.trim().toUpperCase()), "");
+            return new ApiResponseResultHandler(codecs, resolver, mapperProvider.getIfAvailable(ObjectMapper::new),
+                    descriptors, timestamps, metricsOrNoop(metrics), cache.getIfAvailable(), classifier,
+                    deadlineHeader, bounds, fieldsParameter, errorTemplates, serverTiming, stackTraces);
+        }
+
+        /** Stamps the start of exchanges for the {@code Server-Timing} header and the Flight Recorder event. */
+        @Bean
+        public ResponseTimingWebFilter responseTimingWebFilter(
+                @Value("${molina.response-handler.server-timing.enabled:false}") boolean serverTiming) {
+            return new ResponseTimingWebFilter(serverTiming);
+        }
+
+        @Bean
+        public SmartInitializingSingleton apiResponseReactiveDescriptorPreloader(
+                HandlerDescriptorRegistry descriptors,
+                ObjectProvider<org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping> mappings) {
+            return () -> mappings.orderedStream().forEach(m -> descriptors.registerAll(m.getHandlerMethods().values()));
+        }
+
+        /**
+         * Registers encoders for the binary envelope formats on the classpath that the default codecs do not
+         * cover (CBOR, MessagePack), so error envelopes and the fallback path can be negotiated to them too.
+         */
+        @Bean
+        public WebFluxConfigurer apiResponseEnvelopeFormatCodecs(ObjectProvider<ObjectMapper> mapperProvider) {
+            return new WebFluxConfigurer() {
+                @Override
+                public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+                    ResolvableType type = ResolvableType.forClass(ApiResponse.class);
+                    for (EnvelopeFormat format : EnvelopeFormat.values()) {
+                        if (!format.isAvailable() || !format.isBinary()) continue;
+                        MediaType mediaType = format.getMediaTypes().get(0);
+                        boolean covered = configurer.getWriters().stream().anyMatch(w -> w.canWrite(type, mediaType));
+                        if (!covered) {
+                            configurer.customCodecs().register(new EnvelopeFormatEncoder(format, envelopeMapper(mapperProvider)));
+                        }
+                    }
+                }
+            };
         }
 
         @Bean
         @ConditionalOnMissingBean(ApiResponseReactiveExceptionAdvice.class)
-        public ApiResponseReactiveExceptionAdvice apiResponseReactiveExceptionAdvice() {
-            return new ApiResponseReactiveExceptionAdvice();
+        public ApiResponseReactiveExceptionAdvice apiResponseReactiveExceptionAdvice(TimestampSource timestamps,
+                ObjectProvider<ResponseHandlerMetrics> metrics, ExceptionClassifier classifier,
+                ErrorTemplates templates) {
+            return new ApiResponseReactiveExceptionAdvice(timestamps, metricsOrNoop(metrics), classifier, templates);
         }
     }
 }
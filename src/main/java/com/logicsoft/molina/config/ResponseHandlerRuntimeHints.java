@@ -0,0 +1,49 @@
+package com.logicsoft.molina.config;
+
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.batch.BatchRequest;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.ExecutableMode;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * Reflection the library itself needs in a native image: Jackson binding of the envelope and of batch calls,
+ * the serializers named by {@code @JsonSerialize}, the return type the WebFlux fallback path hands to the generic
+ * codecs, and the factories of the binary formats on the classpath. The data types of {@code @ResponseHandler}
+ * methods are registered by Spring's own controller hints.
+ */
+class ResponseHandlerRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<String> SERIALIZERS = List.of(
+            "com.logicsoft.molina.api.RawJson$Serializer",
+            "com.logicsoft.molina.core.Projected$Serializer");
+
+    /* Generic return type of ApiResponseResultHandler.Dummy#m, read once when the handler is created */
+    private static final String FALLBACK_RETURN_TYPE = "com.logicsoft.molina.core.ApiResponseResultHandler$Dummy";
+
+    private static final List<String> BINARY_FACTORIES = List.of(
+            "com.fasterxml.jackson.dataformat.smile.SmileFactory",
+            "com.fasterxml.jackson.dataformat.cbor.CBORFactory",
+            "org.msgpack.jackson.dataformat.MessagePackFactory");
+
+    private final BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, @Nullable ClassLoader classLoader) {
+        bindings.registerReflectionHints(hints.reflection(), ApiResponse.class, BatchRequest.class);
+        for (String serializer : SERIALIZERS) {
+            hints.reflection().registerType(TypeReference.of(serializer), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+        hints.reflection().registerType(TypeReference.of(FALLBACK_RETURN_TYPE),
+                type -> type.withMethod("m", List.of(), ExecutableMode.INTROSPECT));
+        for (String factory : BINARY_FACTORIES) {
+            hints.reflection().registerTypeIfPresent(classLoader, factory, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+    }
+}
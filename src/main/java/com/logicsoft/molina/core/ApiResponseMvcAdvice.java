@@ -2,8 +2,15 @@ package com.logicsoft.molina.core;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import com.logicsoft.molina.annotations.ResponseHandler;
 import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.api.RawJson;
+import com.logicsoft.molina.api.Versioned;
+import com.logicsoft.molina.cache.CachedEnvelope;
+import com.logicsoft.molina.cache.EnvelopeCache;
+import com.logicsoft.molina.cache.EnvelopeCacheInterceptor;
+import com.logicsoft.molina.cache.EnvelopeCacheKey;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
 import jakarta.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,15 +30,22 @@ import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.validation.beanvalidation.MethodValidationPostProcessor;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
 import reactor.util.annotation.NonNull;
 
-import java.time.Instant;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @RestControllerAdvice
@@ -40,6 +54,16 @@ public class ApiResponseMvcAdvice implements ResponseBodyAdvice<Object> {
     private static final Logger log = LoggerFactory.getLogger(ApiResponseMvcAdvice.class);
 
     private final ObjectMapper mapper;
+    private final EnvelopeWriter writer;
+    private final Map<EnvelopeFormat, EnvelopeWriter> writers;
+    private final HandlerDescriptorRegistry descriptors;
+    private final boolean directWrite;
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+    private final EnvelopeCache cache;
+    private final ExceptionClassifier classifier;
+    private final String fieldsParameter;
+    private final boolean serverTiming;
 
     // Diagnóstico no intrusivo de validación
     private final boolean validationActive;
@@ -50,6 +74,38 @@ public class ApiResponseMvcAdvice implements ResponseBodyAdvice<Object> {
                                 ApplicationContext ctx,
                                 @Value("${molina.response-handler.validation.warn-when-inactive:true}")
                                 boolean warnWhenInactive) {
+        this(mapperProvider, ctx, warnWhenInactive, new HandlerDescriptorRegistry(), false, TimestampSource.system(),
+                ResponseHandlerMetrics.NOOP, null, ExceptionClassifier.defaults(), "fields", false);
+    }
+
+    /**
+     * @param directWrite when {@code true}, JSON envelopes are streamed straight to the servlet output
+     *                    stream instead of being handed to the selected message converter
+     * @param cache       store for {@code @ResponseHandler(cache = ...)} handlers, or {@code null} to disable it
+     * @param classifier  maps the exceptions of streamed bodies to the error trailer
+     * @param fieldsParameter query parameter naming the properties of {@code data} to write, or {@code null}
+     *                        / blank to ignore it
+     * @param serverTiming whether responses carry a {@code Server-Timing} header with their phase timings
+     */
+    public ApiResponseMvcAdvice(ObjectProvider<ObjectMapper> mapperProvider,
+                                ApplicationContext ctx,
+                                boolean warnWhenInactive,
+                                HandlerDescriptorRegistry descriptors,
+                                boolean directWrite,
+                                TimestampSource timestamps,
+                                ResponseHandlerMetrics metrics,
+                                EnvelopeCache cache,
+                                ExceptionClassifier classifier,
+                                String fieldsParameter,
+                                boolean serverTiming) {
+        this.descriptors = descriptors;
+        this.directWrite = directWrite;
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.classifier = classifier;
+        this.fieldsParameter = (fieldsParameter != null && !fieldsParameter.isBlank()) ? fieldsParameter : null;
+        this.serverTiming = serverTiming;
         this.mapper = Optional.of(mapperProvider.getIfAvailable(ObjectMapper::new))
                 .map(m -> m.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS))
                 .orElseGet(() -> {
@@ -57,6 +113,12 @@ public class ApiResponseMvcAdvice implements ResponseBodyAdvice<Object> {
                     objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
                     return objectMapper;
                 });
+        this.writers = EnvelopeFormat.writers(this.mapper, timestamps);
+        this.writer = writers.get(EnvelopeFormat.JSON);
+        // Serializers of the handlers' data are built at startup, as their descriptors are
+        descriptors.addListener(d -> {
+            if (d.getDataType().resolve() != null) writer.prepare(d.getDataType().getType());
+        });
 
         boolean hasValidator = ctx.getBeanProvider(Validator.class).getIfAvailable() != null;
         boolean hasMethodValidation = ctx.getBeanProvider(MethodValidationPostProcessor.class).getIfAvailable() != null;
@@ -67,11 +129,11 @@ public class ApiResponseMvcAdvice implements ResponseBodyAdvice<Object> {
     @Override
     public boolean supports(@NonNull MethodParameter returnType,
                             @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
-        return findResponseHandler(returnType) != null;
+        return descriptors.find(returnType) != null;
     }
 
     @Override
-    public Object beforeBodyWrite(Object body,
+    public Object beforeBodyWrite(Object returnValue,
                                   @NonNull MethodParameter returnType,
                                   @NonNull MediaType selectedContentType,
                                   @NonNull Class<? extends HttpMessageConverter<?>> selectedConverterType,
@@ -85,35 +147,142 @@ public class ApiResponseMvcAdvice implements ResponseBodyAdvice<Object> {
                     + "MethodValidationPostProcessor si desea validación.");
         }
 
-        if (body instanceof ProblemDetail || body instanceof ResponseEntity<?>) {
-            return body;
+        if (returnValue instanceof ProblemDetail || returnValue instanceof ResponseEntity<?>) {
+            return returnValue;
         }
+        // Smile / CBOR / MessagePack when the negotiated type asks for it, JSON otherwise
+        EnvelopeFormat format = EnvelopeFormat.of(selectedContentType);
+        EnvelopeWriter envelopes = (format != null && format.isBinary()) ? writers.get(format) : writer;
+        MediaType contentType = envelopes.isBinary()
+                ? format.responseType(selectedContentType) : MediaType.APPLICATION_JSON;
+        HandlerDescriptor descriptor = descriptors.find(returnType);
+        int status = (descriptor != null) ? descriptor.getStatus() : HttpStatus.OK.value();
+        FieldProjection fields = (descriptor != null) ? descriptor.fields(requestedFields(request)) : null;
+
+        // A version key decides the 304 before the data is loaded or serialized
+        final Object body;
+        String versionTag = null;
+        if (returnValue instanceof Versioned<?> versioned) {
+            if (status == HttpStatus.OK.value()) {
+                versionTag = ETags.ofVersion((format != null) ? format : EnvelopeFormat.JSON, versioned.getVersion(),
+                        fields);
+                if (notModified(request, response, versionTag)) return null;
+            }
+            body = versioned.getData();
+        } else {
+            body = returnValue;
+        }
+
         if (body instanceof ApiResponse<?> alreadyWrapped) {
-            int status = normalizeStatus(alreadyWrapped.getStatus());
+            setStatusIfNotExplicit(response, normalizeStatus(alreadyWrapped.getStatus()));
+            setContentTypeIfAbsent(response, contentType);
+            ResponseTiming timing = start(descriptor, request);
+            timing.data(alreadyWrapped.getData());
+            if (canWriteDirect(alreadyWrapped.getData(), envelopes, selectedContentType, selectedConverterType, response)) {
+                timing.setHeader(response.getHeaders());
+                timing.encoding();
+                CountingOutputStream counted = new CountingOutputStream(response);
+                Object result = writeDirect(counted, out -> envelopes.write(out, alreadyWrapped));
+                timing.encoded();
+                commit(timing, response, counted.count);
+                return result;
+            }
+            timing.encoding();
+            Object result = maybeToJson(selectedConverterType, alreadyWrapped);
+            long bytes = (result instanceof String json) ? utf8Length(json) : -1;
+            if (bytes >= 0) timing.encoded();
+            timing.setHeader(response.getHeaders());
+            commit(timing, response, bytes);
+            return result;
+        }
+
+        long start = System.nanoTime();
+        boolean ok = (descriptor == null) || descriptor.isResult();
+
+        if (isSequence(body, descriptor) && canStream(envelopes, selectedContentType, response)) {
             setStatusIfNotExplicit(response, status);
-            setJsonContentTypeIfAbsent(response);
-            return maybeToJson(selectedConverterType, alreadyWrapped);
+            setContentTypeIfAbsent(response, contentType);
+            CountingOutputStream counted = new CountingOutputStream(response);
+            Iterator<?> elements = (fields != null) ? fields.applyEach(iteratorOf(body)) : iteratorOf(body);
+            try {
+                writeDirect(counted, out -> envelopes.writeStream(out, status, ok, elements, this::streamFailure));
+            } finally {
+                closeQuietly(body);
+            }
+            if (descriptor != null) metrics.recordEnvelope(descriptor, System.nanoTime() - start, counted.count);
+            return null;
+        }
+
+        ResponseTiming timing = start(descriptor, request);
+        timing.data(body);
+        Object data = (fields != null) ? fields.apply(body) : body;
+        // Only JSON is cached: a hit is served as JSON whatever converter this request would have used
+        EnvelopeCacheKey cacheKey = (descriptor != null && !envelopes.isBinary()
+                && canWriteJson(selectedContentType, selectedConverterType, response)) ? cacheKey(request) : null;
+        if (cacheKey != null && HttpStatusCode.valueOf(status).is2xxSuccessful()) {
+            setStatusIfNotExplicit(response, status);
+            return writeCached(descriptor, cacheKey, status, ok, data, versionTag, request, response, start, timing);
+        }
+
+        if (versionTag == null && descriptor != null && descriptor.isEtag() && status == HttpStatus.OK.value()
+                && !envelopes.isBinary() && request instanceof ServletServerHttpRequest
+                && canWriteJson(selectedContentType, selectedConverterType, response)) {
+            return writeTagged(descriptor, ok, data, request, response, start, timing);
+        }
+
+        if (canWriteDirect(data, envelopes, selectedContentType, selectedConverterType, response)) {
+            setStatusIfNotExplicit(response, status);
+            setContentTypeIfAbsent(response, contentType);
+            // The write flushes the response head: the header can only carry the phases before it
+            timing.setHeader(response.getHeaders());
+            timing.encoding();
+            CountingOutputStream counted = new CountingOutputStream(response);
+            Object result = writeDirect(counted, out -> envelopes.write(out, status, ok, data));
+            timing.encoded();
+            if (descriptor != null) metrics.recordEnvelope(descriptor, System.nanoTime() - start, counted.count);
+            commit(timing, response, counted.count);
+            return result;
         }
 
-        ResponseHandler ann = findResponseHandler(returnType);
-        int status = (ann != null) ? ann.status() : HttpStatus.OK.value();
-        boolean ok = (ann == null) || ann.result();
         ApiResponse<Object> envelope = new ApiResponse<>();
-        envelope.setTimestamp(Instant.now());
+        envelope.setTimestamp(timestamps.now());
         envelope.setStatus(status);
         envelope.setResult(ok);
-        envelope.setData(body);
+        envelope.setData(data);
 
         setStatusIfNotExplicit(response, status);
-        setJsonContentTypeIfAbsent(response);
-        return maybeToJson(selectedConverterType, envelope);
+        setContentTypeIfAbsent(response, contentType);
+        timing.encoding();
+        Object result = maybeToJson(selectedConverterType, envelope);
+        // Converter path: size is only known when the advice produced the JSON string
+        long bytes = (result instanceof String json) ? utf8Length(json) : -1;
+        if (bytes >= 0) timing.encoded();
+        if (descriptor != null) metrics.recordEnvelope(descriptor, System.nanoTime() - start, bytes);
+        timing.setHeader(response.getHeaders());
+        commit(timing, response, bytes);
+        return result;
     }
 
     /* ==================== helpers ==================== */
 
-    private ResponseHandler findResponseHandler(MethodParameter mp) {
-        ResponseHandler ann = mp.getMethodAnnotation(ResponseHandler.class);
-        return (ann != null) ? ann : mp.getDeclaringClass().getAnnotation(ResponseHandler.class);
+    private String requestedFields(ServerHttpRequest request) {
+        if (fieldsParameter == null || !(request instanceof ServletServerHttpRequest servletRequest)) return null;
+        return servletRequest.getServletRequest().getParameter(fieldsParameter);
+    }
+
+    /* Timing of a response whose handler has just returned; streamed sequences are not timed */
+    private ResponseTiming start(HandlerDescriptor descriptor, ServerHttpRequest request) {
+        if (descriptor == null) return ResponseTiming.OFF;
+        Object handlerStart = (request instanceof ServletServerHttpRequest servletRequest)
+                ? servletRequest.getServletRequest().getAttribute(ResponseTiming.START_ATTRIBUTE) : null;
+        return ResponseTiming.start(descriptor, serverTiming, handlerStart);
+    }
+
+    /* Emits the timing event with the status the response ended up with */
+    private static void commit(ResponseTiming timing, ServerHttpResponse response, long bytes) {
+        int status = (response instanceof ServletServerHttpResponse servletResponse)
+                ? servletResponse.getServletResponse().getStatus() : HttpStatus.OK.value();
+        timing.commit(status, bytes);
     }
 
     private int normalizeStatus(int status) {
@@ -131,11 +300,247 @@ public class ApiResponseMvcAdvice implements ResponseBodyAdvice<Object> {
         }
     }
 
-    private void setJsonContentTypeIfAbsent(ServerHttpResponse response) {
+    private void setContentTypeIfAbsent(ServerHttpResponse response, MediaType contentType) {
         HttpHeaders headers = response.getHeaders();
         if (!headers.containsKey(HttpHeaders.CONTENT_TYPE)) {
-            headers.setContentType(MediaType.APPLICATION_JSON);
+            headers.setContentType(contentType);
+        }
+    }
+
+    /**
+     * Binary envelopes and pre-serialized {@link RawJson} data always take the direct path: the former so the
+     * envelope writer (not the converter) decides the encoding, the latter so it is copied as bytes instead
+     * of going through a {@code String} in the converter.
+     */
+    private boolean canWriteDirect(Object data,
+                                   EnvelopeWriter envelopes,
+                                   MediaType selectedContentType,
+                                   Class<? extends HttpMessageConverter<?>> converterType,
+                                   ServerHttpResponse response) {
+        if (!(response instanceof ServletServerHttpResponse)) return false;
+        if (envelopes.isBinary()) return true;
+        return (directWrite || data instanceof RawJson) && canWriteJson(selectedContentType, converterType, response);
+    }
+
+    private static boolean canWriteJson(MediaType selectedContentType,
+                                        Class<? extends HttpMessageConverter<?>> converterType,
+                                        ServerHttpResponse response) {
+        return response instanceof ServletServerHttpResponse
+                && (StringHttpMessageConverter.class.isAssignableFrom(converterType)
+                || selectedContentType.isCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    private boolean canStream(EnvelopeWriter envelopes, MediaType selectedContentType, ServerHttpResponse response) {
+        return response instanceof ServletServerHttpResponse
+                && (envelopes.isBinary() || selectedContentType.isCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    /* -------- ETag -------- */
+
+    /**
+     * Buffers the envelope while hashing it, then answers {@code If-None-Match} from the tag: a match gets a
+     * bodiless {@code 304}, anything else the buffered envelope.
+     */
+    private Object writeTagged(HandlerDescriptor descriptor, boolean ok, Object body,
+                               ServerHttpRequest request, ServerHttpResponse response, long start,
+                               ResponseTiming timing) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(descriptor.getBufferSizes().predict());
+        String etag;
+        timing.encoding();
+        try {
+            etag = writer.writeTagged(buffer, HttpStatus.OK.value(), ok, body);
+        } catch (IOException e) {
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+        timing.encoded();
+        descriptor.getBufferSizes().record(buffer.size());
+        metrics.recordEnvelope(descriptor, System.nanoTime() - start, buffer.size());
+        timing.setHeader(response.getHeaders());
+        if (notModified(request, response, etag)) {
+            commit(timing, response, 0);
+            return null;
+        }
+        setContentTypeIfAbsent(response, MediaType.APPLICATION_JSON);
+        response.getHeaders().setContentLength(buffer.size());
+        writeDirect(response, buffer::writeTo);
+        commit(timing, response, buffer.size());
+        return null;
+    }
+
+    /**
+     * Sets the {@code ETag} header and returns {@code true} when {@code If-None-Match} matches it; Spring then
+     * has set the status to {@code 304} and nothing else should be written.
+     */
+    private static boolean notModified(ServerHttpRequest request, ServerHttpResponse response, String etag) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)
+                || !(response instanceof ServletServerHttpResponse servletResponse)) {
+            return false;
+        }
+        return new ServletWebRequest(servletRequest.getServletRequest(), servletResponse.getServletResponse())
+                .checkNotModified(etag);
+    }
+
+    /* -------- response cache -------- */
+
+    /**
+     * Key left by {@link EnvelopeCacheInterceptor} when the request missed the cache, or {@code null}.
+     */
+    private EnvelopeCacheKey cacheKey(ServerHttpRequest request) {
+        if (cache == null || !(request instanceof ServletServerHttpRequest servletRequest)) return null;
+        return (servletRequest.getServletRequest().getAttribute(EnvelopeCache.KEY_ATTRIBUTE) instanceof EnvelopeCacheKey key)
+                ? key : null;
+    }
+
+    /**
+     * Encodes the envelope once without timestamp, stores it and serves the stored entry, so the first
+     * response is built from the same bytes as the hits that follow.
+     */
+    private Object writeCached(HandlerDescriptor descriptor, EnvelopeCacheKey key, int status, boolean ok,
+                               Object body, String versionTag, ServerHttpRequest request,
+                               ServerHttpResponse response, long start, ResponseTiming timing) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(descriptor.getBufferSizes().predict());
+        timing.encoding();
+        writeDirect(buffer, out -> writer.writeWithoutTimestamp(out, status, ok, body));
+        timing.encoded();
+        descriptor.getBufferSizes().record(buffer.size());
+        CachedEnvelope entry = cache.put(descriptor, key, status, buffer.toByteArray(), versionTag);
+        metrics.recordEnvelope(descriptor, System.nanoTime() - start, buffer.size());
+        timing.setHeader(response.getHeaders());
+        boolean gzip = EnvelopeCache.acceptsGzip(request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+        if (request instanceof ServletServerHttpRequest servletRequest
+                && response instanceof ServletServerHttpResponse servletResponse
+                && EnvelopeCacheInterceptor.notModified(servletRequest.getServletRequest(),
+                servletResponse.getServletResponse(), entry, gzip)) {
+            commit(timing, response, 0);
+            return null;
+        }
+        try {
+            EnvelopeCacheInterceptor.write(response, entry, gzip, timestamps);
+            commit(timing, response, buffer.size());
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+    }
+
+    /* -------- Stream / Iterator / Iterable -------- */
+
+    private static boolean isSequence(Object body, HandlerDescriptor descriptor) {
+        return body instanceof Stream<?> || body instanceof Iterator<?>
+                || (body instanceof Iterable<?> && descriptor != null
+                && descriptor.getKind() == HandlerDescriptor.Kind.SEQUENCE);
+    }
+
+    private static Iterator<?> iteratorOf(Object body) {
+        if (body instanceof Stream<?> stream) return stream.iterator();
+        if (body instanceof Iterator<?> iterator) return iterator;
+        return ((Iterable<?>) body).iterator();
+    }
+
+    private static void closeQuietly(Object source) {
+        if (source instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.debug("[Molina] Error closing streamed response source", e);
+            }
+        }
+    }
+
+    /**
+     * Error trailer for a source that fails after the envelope prefix was written: the status line is gone,
+     * so the failure is reported in {@code errors} and {@code message} of the same envelope.
+     */
+    private ApiResponse<?> streamFailure(Exception ex) {
+        log.warn("[Molina] Stream failed after the envelope prefix was written: {}", ex.toString());
+        ExceptionClassifier.Classification c = classifier.classify(ex);
+        metrics.recordError(c.status(), ex);
+        ApiResponse<Object> failure = new ApiResponse<>();
+        failure.setMessage(c.message());
+        failure.setErrors(c.errors());
+        return failure;
+    }
+
+    /**
+     * Streams the envelope to the servlet output stream and returns {@code null}, which tells Spring MVC
+     * there is nothing left for the message converter to write.
+     */
+    private Object writeDirect(ServerHttpResponse response, BodyWriter body) {
+        try {
+            return writeDirect(response.getBody(), body);
+        } catch (IOException e) {
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+    }
+
+    private Object writeDirect(OutputStream out, BodyWriter body) {
+        try {
+            body.writeTo(out);
+            out.flush();
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Counts bytes on their way to the response body; the body stream is only opened on first write.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private final ServerHttpResponse response;
+        private OutputStream delegate;
+        private long count;
+
+        CountingOutputStream(ServerHttpResponse response) {
+            this.response = response;
+        }
+
+        private OutputStream delegate() throws IOException {
+            if (delegate == null) delegate = response.getBody();
+            return delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate().write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate().write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate().flush();
+        }
+    }
+
+    /* Size of {@code json} once the converter writes it as UTF-8, counted without encoding it */
+    private static long utf8Length(String json) {
+        long bytes = 0;
+        for (int i = 0, n = json.length(); i < n; i++) {
+            char c = json.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(json.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
         }
+        return bytes;
     }
 
     private Object maybeToJson(Class<? extends HttpMessageConverter<?>> converterType, Object value) {
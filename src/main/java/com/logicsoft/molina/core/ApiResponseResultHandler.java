@@ -1,41 +1,149 @@
 package com.logicsoft.molina.core;
 
-import com.logicsoft.molina.annotations.ResponseHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.logicsoft.molina.api.ApiResponse;
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.ConstraintViolationException;
+import com.logicsoft.molina.api.Versioned;
+import com.logicsoft.molina.cache.CachedEnvelope;
+import com.logicsoft.molina.cache.EnvelopeCache;
+import com.logicsoft.molina.cache.EnvelopeCacheHandlerAdapter;
+import com.logicsoft.molina.cache.EnvelopeCacheKey;
+import com.logicsoft.molina.exception.DeadlineExceededException;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import com.logicsoft.molina.exception.ResultTooLargeException;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.MethodParameter;
 import org.springframework.core.Ordered;
-import org.springframework.core.ResolvableType;
+import org.springframework.core.ReactiveAdapter;
+import org.springframework.core.ReactiveAdapterRegistry;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.reactive.HandlerResult;
 import org.springframework.web.reactive.HandlerResultHandler;
 import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
 import org.springframework.web.reactive.result.method.annotation.ResponseBodyResultHandler;
-import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.annotation.NonNull;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
-import java.time.Instant;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ApiResponseResultHandler implements HandlerResultHandler, Ordered {
 
     private static final Logger log = LoggerFactory.getLogger(ApiResponseResultHandler.class);
 
+    private static final MethodParameter API_RESPONSE_RETURN_TYPE = methodParameterForApiResponse();
+
+    private static final ReactiveAdapterRegistry ADAPTERS = ReactiveAdapterRegistry.getSharedInstance();
+
+    static final String STREAM_COMPLETED = "Stream completed";
+
     private final ResponseBodyResultHandler delegate;
+    private final RequestedContentTypeResolver resolver;
+    private final EnvelopeWriter writer;
+    private final EnvelopeWriter eventWriter;
+    private final Map<EnvelopeFormat, EnvelopeWriter> writers;
+    private final HandlerDescriptorRegistry descriptors;
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+    /* Store for @ResponseHandler(cache = ...) handlers; null when Caffeine is absent or caching is disabled */
+    private final EnvelopeCache cache;
+    private final ExceptionClassifier classifier;
+    private final BufferSizePredictor sharedSizes = new BufferSizePredictor();
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    /* Request header carrying a client deadline in milliseconds, or null */
+    private final String deadlineHeader;
+    /* Global bounds of collected Flux results, refined per handler by @Bounded */
+    private final FluxBounds bounds;
+    /* Query parameter naming the properties of data to write, or null */
+    private final String fieldsParameter;
+    private final ErrorTemplates errorTemplates;
+    /* Whether envelopes carry a Server-Timing header */
+    private final boolean serverTiming;
+    /* Whether the exceptions raised here (expired deadlines, oversized results) capture a stack trace */
+    private final boolean stackTraces;
 
     public ApiResponseResultHandler(ServerCodecConfigurer codecs,
                                     RequestedContentTypeResolver resolver) {
+        this(codecs, resolver, new ObjectMapper().findAndRegisterModules(), new HandlerDescriptorRegistry(),
+                TimestampSource.system(), ResponseHandlerMetrics.NOOP, null, ExceptionClassifier.defaults(), null,
+                FluxBounds.UNBOUNDED, "fields", ErrorTemplates.defaults(), false);
+    }
+
+    public ApiResponseResultHandler(ServerCodecConfigurer codecs,
+                                    RequestedContentTypeResolver resolver,
+                                    ObjectMapper mapper,
+                                    HandlerDescriptorRegistry descriptors,
+                                    TimestampSource timestamps,
+                                    ResponseHandlerMetrics metrics,
+                                    EnvelopeCache cache,
+                                    ExceptionClassifier classifier,
+                                    String deadlineHeader,
+                                    FluxBounds bounds,
+                                    String fieldsParameter,
+                                    ErrorTemplates errorTemplates,
+                                    boolean serverTiming) {
+        this(codecs, resolver, mapper, descriptors, timestamps, metrics, cache, classifier, deadlineHeader, bounds,
+                fieldsParameter, errorTemplates, serverTiming, true);
+    }
+
+    public ApiResponseResultHandler(ServerCodecConfigurer codecs,
+                                    RequestedContentTypeResolver resolver,
+                                    ObjectMapper mapper,
+                                    HandlerDescriptorRegistry descriptors,
+                                    TimestampSource timestamps,
+                                    ResponseHandlerMetrics metrics,
+                                    EnvelopeCache cache,
+                                    ExceptionClassifier classifier,
+                                    String deadlineHeader,
+                                    FluxBounds bounds,
+                                    String fieldsParameter,
+                                    ErrorTemplates errorTemplates,
+                                    boolean serverTiming,
+                                    boolean stackTraces) {
+        this.bounds = bounds;
+        this.stackTraces = stackTraces;
+        this.errorTemplates = errorTemplates;
+        this.serverTiming = serverTiming;
+        this.fieldsParameter = (fieldsParameter != null && !fieldsParameter.isBlank()) ? fieldsParameter : null;
+        this.descriptors = descriptors;
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.classifier = classifier;
+        this.deadlineHeader = (deadlineHeader != null && !deadlineHeader.isBlank()) ? deadlineHeader : null;
+        this.resolver = resolver;
         this.delegate = new ResponseBodyResultHandler(codecs.getWriters(), resolver);
         this.delegate.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        this.writers = EnvelopeFormat.writers(mapper.copy().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS),
+                timestamps);
+        this.writer = writers.get(EnvelopeFormat.JSON);
+        // Serializers of the handlers' data are built at startup, as their descriptors are
+        descriptors.addListener(d -> {
+            if (d.getDataType().resolve() != null) writer.prepare(d.getDataType().getType());
+        });
+        // One envelope per line / event: pretty printing would break the framing
+        this.eventWriter = new EnvelopeWriter(mapper.copy().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS,
+                SerializationFeature.INDENT_OUTPUT), timestamps);
     }
 
     @Override
@@ -45,62 +153,366 @@ public class ApiResponseResultHandler implements HandlerResultHandler, Ordered {
 
     @Override
     public boolean supports(@NonNull HandlerResult result) {
-        MethodParameter mp = result.getReturnTypeSource();
-        ResponseHandler ann = mp.getMethodAnnotation(ResponseHandler.class);
-        if (ann == null) ann = mp.getDeclaringClass().getAnnotation(ResponseHandler.class);
-        if (ann == null) return false;
-
-        ResolvableType rt = result.getReturnType();
-        Class<?> raw = rt.toClass();
-        if (isPublisher(raw)) {
-            Class<?> inner = rt.getGeneric(0).toClass();
-            if (isPublisher(inner)) {
-                log.error("⚠️ Invalid reactive return type: {}. Avoid Mono<Flux<T>> or Flux<Mono<T>>.", rt);
-            }
-        }
-        return true;
+        return descriptors.find(result.getReturnTypeSource()) != null;
     }
 
     @Override
     @NonNull
     public Mono<Void> handleResult(@NonNull ServerWebExchange exchange, HandlerResult result) {
-        MethodParameter mp = result.getReturnTypeSource();
-        ResponseHandler ann = mp.getMethodAnnotation(ResponseHandler.class);
-        if (ann == null) ann = mp.getDeclaringClass().getAnnotation(ResponseHandler.class);
-        final int okStatus = (ann != null ? ann.status() : 200);
-        final boolean ok = (ann == null || ann.result());
+        HandlerDescriptor descriptor = descriptors.find(result.getReturnTypeSource());
+        final int okStatus = (descriptor != null ? descriptor.getStatus() : 200);
+        final boolean ok = (descriptor == null || descriptor.isResult());
+        final List<MediaType> requested = resolver.resolveMediaTypes(exchange);
+        final EnvelopeFormat format = EnvelopeFormat.negotiate(requested);
+        final boolean json = (format == EnvelopeFormat.JSON);
         Object originalBody = result.getReturnValue();
-        if (originalBody == null) {
-            ApiResponse<Object> env = okEnvelope(okStatus, ok, null);
-            exchange.getResponse().setStatusCode(HttpStatus.valueOf(env.getStatus()));
-            return write(exchange, result, env);
-        }
-        if (originalBody instanceof Mono<?> mono) {
-            return mono
-                    .map(data -> okEnvelope(okStatus, ok, data))
+        final long budget = (descriptor != null) ? descriptor.budgetMillis(
+                (deadlineHeader != null) ? exchange.getRequest().getHeaders().getFirst(deadlineHeader) : null) : 0;
+        final FieldProjection fields;
+        try {
+            fields = (descriptor != null) ? descriptor.fields(
+                    (fieldsParameter != null) ? exchange.getRequest().getQueryParams().getFirst(fieldsParameter) : null)
+                    : null;
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(ex);
+        }
+
+        if (originalBody instanceof Flux<?> flux && descriptor != null) {
+            EventFormat events = (descriptor.getWriter() == HandlerDescriptor.Writer.EVENTS)
+                    ? EventFormat.of(descriptor.getFluxMode())
+                    : EventFormat.negotiate(requested);
+            if (events != null) {
+                return writeEvents(exchange, descriptor, withDeadline(project(flux, fields), descriptor, budget),
+                        events, okStatus, ok);
+            }
+        }
+        if (originalBody instanceof Flux<?> flux && json
+                && descriptor != null && descriptor.getWriter() == HandlerDescriptor.Writer.STREAM) {
+            return writeStream(exchange, descriptor, withDeadline(project(flux, fields), descriptor, budget), okStatus,
+                    ok);
+        }
+        final boolean coalesce = json && descriptor != null && descriptor.getCoalesce() != null
+                && descriptor.getWriter() == HandlerDescriptor.Writer.ENVELOPE
+                && (exchange.getRequest().getMethod() == HttpMethod.GET
+                || exchange.getRequest().getMethod() == HttpMethod.HEAD);
+        Mono<?> source = (originalBody instanceof Mono<?> mono) ? mono
+                : (originalBody instanceof Flux<?> flux) ? collect(flux, descriptor)
+                : adapt(originalBody, descriptor);
+        // A coalesced request bounds its wait on the shared work, not the work itself
+        if (source != null && !coalesce) source = withDeadline(source, descriptor, budget);
+
+        if (format == null) {
+            // No envelope format acceptable: fall back to the generic codecs with a reflective envelope
+            if (source == null) return write(exchange, result, envelope(okStatus, ok, originalBody, fields));
+            return source
+                    .<ApiResponse<?>>map(data -> envelope(okStatus, ok, data, fields))
                     .onErrorResume(ex -> Mono.just(errorEnvelope(ex)))
-                    .flatMap(env -> {
-                        exchange.getResponse().setStatusCode(HttpStatus.valueOf(env.getStatus()));
-                        return write(exchange, result, env);
-                    });
+                    .flatMap(env -> write(exchange, result, env));
         }
-        if (originalBody instanceof Flux<?> flux) {
+        // Binary formats collect STREAM handlers: their fragments cannot be encoded separately
+        EnvelopeWriter envelopes = writers.get(format);
+        MediaType contentType = EnvelopeFormat.contentType(requested);
+        EnvelopeCacheKey cacheKey = (json && cache != null && descriptor != null
+                && descriptor.getWriter() == HandlerDescriptor.Writer.ENVELOPE
+                && HttpStatus.valueOf(okStatus).is2xxSuccessful()
+                && exchange.getAttribute(EnvelopeCache.KEY_ATTRIBUTE) instanceof EnvelopeCacheKey key) ? key : null;
+        if (coalesce) {
+            return writeCoalesced(exchange, descriptor, source, cacheKey, fields, contentType, budget, okStatus, ok);
+        }
+        ResponseTiming timing = (descriptor != null) ? ResponseTiming.start(descriptor, serverTiming,
+                exchange.getAttribute(ResponseTiming.START_ATTRIBUTE)) : ResponseTiming.OFF;
+        if (source == null) {
+            return send(exchange, contentType, timed(exchange, timing,
+                    encode(exchange, format, envelopes, descriptor, cacheKey, fields, okStatus, ok, originalBody,
+                            timing)));
+        }
+        return source
+                .map(data -> {
+                    timing.ready();
+                    return timed(exchange, timing, encode(exchange, format, envelopes, descriptor, cacheKey, fields,
+                            okStatus, ok, data, timing));
+                })
+                .onErrorResume(ex -> Mono.fromSupplier(() -> encodeError(exchange, envelopes, ex)))
+                .flatMap(buffer -> send(exchange, contentType, buffer))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /* -------- bounded collection -------- */
+
+    /**
+     * Collects {@code flux} into a list, or, when the handler's bounds are set, into at most that many
+     * elements (estimated bytes): the element that crosses a bound cancels the {@code Flux}. The result is
+     * then a {@link Truncated} list or a {@link ResultTooLargeException}.
+     */
+    private Mono<?> collect(Flux<?> flux, HandlerDescriptor descriptor) {
+        FluxBounds effective = bounds.with((descriptor != null) ? descriptor.getBounds() : null);
+        if (!effective.isBounded()) return flux.collectList();
+        return Mono.defer(() -> {
+            BoundedCollector collector = new BoundedCollector(effective, writer, stackTraces);
+            return flux.takeUntil(collector::exceeds).collectList().map(collector::finish);
+        });
+    }
+
+    /** Applies {@code fields}, when set, to each element of {@code flux}. */
+    private static Flux<?> project(Flux<?> flux, FieldProjection fields) {
+        return (fields != null) ? flux.map(fields::apply) : flux;
+    }
+
+    /* -------- deadlines -------- */
+
+    /**
+     * Fails {@code mono} with a {@link DeadlineExceededException} and cancels it once {@code budget}
+     * milliseconds have passed since subscription; unchanged when {@code budget} is 0.
+     */
+    private <T> Mono<T> withDeadline(Mono<T> mono, HandlerDescriptor descriptor, long budget) {
+        if (budget == 0) return mono;
+        return mono.timeout(Duration.ofMillis(budget), Mono.error(() -> expired(descriptor, budget)));
+    }
+
+    /**
+     * Same for a whole {@code Flux}: one timer for the stream rather than one per element; the elements emitted
+     * before it fires are still written.
+     */
+    private <T> Flux<T> withDeadline(Flux<T> flux, HandlerDescriptor descriptor, long budget) {
+        if (budget == 0) return flux;
+        return Flux.defer(() -> {
+            AtomicBoolean expired = new AtomicBoolean();
             return flux
-                    .collectList()
-                    .map(list -> okEnvelope(okStatus, ok, list))
-                    .onErrorResume(ex -> Mono.just(errorEnvelope(ex)))
-                    .flatMap(env -> {
-                        exchange.getResponse().setStatusCode(HttpStatus.valueOf(env.getStatus()));
-                        return write(exchange, result, env);
-                    });
+                    .takeUntilOther(Mono.delay(Duration.ofMillis(budget)).doOnNext(tick -> expired.set(true)))
+                    .concatWith(Mono.defer(() -> expired.get()
+                            ? Mono.error(expired(descriptor, budget)) : Mono.empty()));
+        });
+    }
+
+    private DeadlineExceededException expired(HandlerDescriptor descriptor, long budget) {
+        metrics.recordTimeout(descriptor);
+        return new DeadlineExceededException(budget, stackTraces);
+    }
+
+    /**
+     * Other async types the handler may return ({@code CompletableFuture}, RxJava...), through the same
+     * adapters WebFlux uses; {@code null} for a plain value.
+     */
+    private Mono<?> adapt(Object body, HandlerDescriptor descriptor) {
+        ReactiveAdapter adapter = (body != null) ? ADAPTERS.getAdapter(body.getClass()) : null;
+        if (adapter == null) return null;
+        Publisher<?> publisher = adapter.toPublisher(body);
+        return adapter.isMultiValue() ? collect(Flux.from(publisher), descriptor) : Mono.from(publisher);
+    }
+
+    /* -------- direct JSON writer -------- */
+
+    /**
+     * Encodes the envelope of {@code data}, projected on {@code fields} when set, going through the response
+     * cache when {@code cacheKey} is set and tagging it when the handler sends ETags. A {@link Versioned} value
+     * whose tag matches {@code If-None-Match} is neither loaded nor serialized: the result is an empty buffer and
+     * the exchange is marked not modified.
+     */
+    private DataBuffer encode(ServerWebExchange exchange, EnvelopeFormat format, EnvelopeWriter envelopes,
+                              HandlerDescriptor descriptor, EnvelopeCacheKey cacheKey, FieldProjection fields,
+                              int status, boolean ok, Object data, ResponseTiming timing) {
+        String versionTag = null;
+        if (data instanceof Versioned<?> versioned) {
+            if (status == HttpStatus.OK.value()) {
+                versionTag = ETags.ofVersion(format, versioned.getVersion(), fields);
+                if (exchange.checkNotModified(versionTag)) {
+                    return exchange.getResponse().bufferFactory().allocateBuffer(0);
+                }
+            }
+            data = versioned.getData();
         }
-        ApiResponse<Object> env = okEnvelope(okStatus, ok, originalBody);
-        exchange.getResponse().setStatusCode(HttpStatus.valueOf(env.getStatus()));
-        return write(exchange, result, env);
+        timing.data(data);
+        if (fields != null) data = fields.apply(data);
+        timing.encoding();
+        DataBuffer buffer;
+        if (cacheKey != null) {
+            buffer = encodeCached(exchange, descriptor, cacheKey, status, ok, data, versionTag);
+        } else if (versionTag == null && descriptor != null && descriptor.isEtag() && status == HttpStatus.OK.value()
+                && !envelopes.isBinary() && !(data instanceof ApiResponse<?>)) {
+            buffer = encodeTagged(exchange, descriptor, ok, data);
+        } else {
+            buffer = encode(exchange, envelopes, descriptor, status, ok, data);
+        }
+        timing.encoded();
+        return buffer;
+    }
+
+    private DataBuffer encode(ServerWebExchange exchange, EnvelopeWriter writer, HandlerDescriptor descriptor,
+                              int status, boolean ok, Object data) {
+        if (data instanceof ApiResponse<?> wrapped) {
+            exchange.getResponse().setStatusCode(HttpStatus.valueOf(normalizeStatus(wrapped.getStatus())));
+            return encode(exchange, descriptor, out -> writer.write(out, wrapped));
+        }
+        exchange.getResponse().setStatusCode(HttpStatus.valueOf(status));
+        return encode(exchange, descriptor, out -> writer.write(out, status, ok, data));
+    }
+
+    /**
+     * Hashes the envelope while it is written; the buffer is dropped by {@link #send} when the tag matches
+     * {@code If-None-Match}.
+     */
+    private DataBuffer encodeTagged(ServerWebExchange exchange, HandlerDescriptor descriptor, boolean ok, Object data) {
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        String[] etag = new String[1];
+        DataBuffer buffer = encode(exchange, descriptor,
+                out -> etag[0] = writer.writeTagged(out, HttpStatus.OK.value(), ok, data));
+        exchange.checkNotModified(etag[0]);
+        return buffer;
+    }
+
+    /**
+     * Encodes the envelope once without timestamp, stores it and serves the stored entry, so the first
+     * response is built from the same bytes as the hits answered by {@link EnvelopeCacheHandlerAdapter}.
+     */
+    private DataBuffer encodeCached(ServerWebExchange exchange, HandlerDescriptor descriptor, EnvelopeCacheKey key,
+                                    int status, boolean ok, Object data, String versionTag) {
+        if (data instanceof ApiResponse<?>) return encode(exchange, writer, descriptor, status, ok, data);
+        CachedEnvelope entry = cache.put(descriptor, key, status, encodeUntimed(descriptor, status, ok, data),
+                versionTag);
+        return serve(exchange, entry);
+    }
+
+    private byte[] encodeUntimed(HandlerDescriptor descriptor, int status, boolean ok, Object data) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(descriptor.getBufferSizes().predict());
+        try {
+            writer.writeWithoutTimestamp(buffer, status, ok, data);
+        } catch (IOException e) {
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+        descriptor.getBufferSizes().record(buffer.size());
+        metrics.recordEnvelope(descriptor, System.nanoTime() - start, buffer.size());
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes {@code entry} with a fresh timestamp, or an empty buffer when it matches {@code If-None-Match}.
+     */
+    private DataBuffer serve(ServerWebExchange exchange, CachedEnvelope entry) {
+        if (EnvelopeCacheHandlerAdapter.notModified(exchange, entry)) {
+            return exchange.getResponse().bufferFactory().allocateBuffer(0);
+        }
+        exchange.getResponse().setStatusCode(HttpStatus.valueOf(entry.getStatus()));
+        return EnvelopeCacheHandlerAdapter.encode(exchange, entry, timestamps);
     }
 
-    private Mono<Void> write(ServerWebExchange exchange, HandlerResult original, Object newBody) {
-        HandlerResult newResult = new HandlerResult(original.getHandler(), newBody, methodParameterForApiResponse());
+    /* -------- coalescing -------- */
+
+    /**
+     * Joins the pending request with the same key, or starts one with {@code source}. The shared work ends
+     * with the envelope encoded once without timestamp (and stored, when {@code cacheKey} is set); every
+     * waiting exchange then writes it into its own buffer with its own timestamp and conditional headers.
+     */
+    private Mono<Void> writeCoalesced(ServerWebExchange exchange, HandlerDescriptor descriptor, Mono<?> source,
+                                      EnvelopeCacheKey cacheKey, FieldProjection fields, MediaType contentType,
+                                      long budget, int status, boolean ok) {
+        RequestCoalescer.Key key = RequestCoalescer.key(descriptor, exchange.getRequest(), fields);
+        Mono<Shared> pending = coalescer.join(key,
+                () -> source.map(data -> share(descriptor, cacheKey, fields, status, ok, data)),
+                () -> metrics.recordCoalesced(descriptor));
+        return withDeadline(pending, descriptor, budget)
+                .map(shared -> (shared.entry() != null) ? serve(exchange, shared.entry())
+                        : encode(exchange, writer, descriptor, status, ok, shared.data()))
+                .onErrorResume(ex -> Mono.fromSupplier(() -> encodeError(exchange, writer, ex)))
+                .flatMap(buffer -> send(exchange, contentType, buffer))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private Shared share(HandlerDescriptor descriptor, EnvelopeCacheKey cacheKey, FieldProjection fields,
+                         int status, boolean ok, Object data) {
+        String versionTag = null;
+        if (data instanceof Versioned<?> versioned) {
+            if (status == HttpStatus.OK.value()) {
+                versionTag = ETags.ofVersion(EnvelopeFormat.JSON, versioned.getVersion(), fields);
+            }
+            data = versioned.getData();
+        }
+        if (fields != null) data = fields.apply(data);
+        // Wrapped envelopes carry their own timestamp: each exchange encodes it
+        if (data instanceof ApiResponse<?>) return new Shared(null, data);
+        byte[] envelope = encodeUntimed(descriptor, status, ok, data);
+        if (cacheKey != null) return new Shared(cache.put(descriptor, cacheKey, status, envelope, versionTag), null);
+        if (versionTag == null && descriptor.isEtag() && status == HttpStatus.OK.value()) {
+            versionTag = ETags.of(envelope, 1, envelope.length - 1);
+        }
+        return new Shared(CachedEnvelope.of(status, envelope, false, versionTag), null);
+    }
+
+    /** Result of coalesced work: an encoded envelope, or the {@code ApiResponse} the handler returned. */
+    private record Shared(CachedEnvelope entry, Object data) {
+    }
+
+    private DataBuffer encodeError(ServerWebExchange exchange, EnvelopeWriter writer, Throwable ex) {
+        ExceptionClassifier.Classification c = classify(ex);
+        exchange.getResponse().setStatusCode(HttpStatus.valueOf(c.status()));
+        ErrorTemplates.Template template = writer.isBinary() ? null : errorTemplates.find(c);
+        if (template != null) return encode(exchange, null, out -> template.writeTo(out, timestamps.encodedNow(), c));
+        return encode(exchange, null, out -> writer.writeError(out, c.status(), c.errors(), c.message()));
+    }
+
+    /**
+     * Serializes straight into a buffer from the server's (pooled) factory, sized from what this endpoint
+     * produced recently.
+     */
+    private DataBuffer encode(ServerWebExchange exchange, HandlerDescriptor descriptor, BodyWriter body) {
+        return encode(exchange, descriptor, (descriptor != null ? descriptor.getBufferSizes() : sharedSizes), body);
+    }
+
+    private DataBuffer encode(ServerWebExchange exchange, HandlerDescriptor descriptor,
+                              BufferSizePredictor sizes, BodyWriter body) {
+        long start = System.nanoTime();
+        DataBuffer buffer = exchange.getResponse().bufferFactory().allocateBuffer(sizes.predict());
+        boolean release = true;
+        try {
+            try (OutputStream out = buffer.asOutputStream()) {
+                body.writeTo(out);
+            }
+            int size = buffer.readableByteCount();
+            sizes.record(size);
+            if (descriptor != null) metrics.recordEnvelope(descriptor, System.nanoTime() - start, size);
+            release = false;
+            return buffer;
+        } catch (IOException e) {
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        } finally {
+            if (release) DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * Sets the {@code Server-Timing} header of an encoded envelope and emits its timing event.
+     */
+    private static DataBuffer timed(ServerWebExchange exchange, ResponseTiming timing, DataBuffer buffer) {
+        ServerHttpResponse response = exchange.getResponse();
+        timing.setHeader(response.getHeaders());
+        HttpStatusCode status = response.getStatusCode();
+        timing.commit((status != null) ? status.value() : HttpStatus.OK.value(),
+                exchange.isNotModified() ? 0 : buffer.readableByteCount());
+        return buffer;
+    }
+
+    private Mono<Void> send(ServerWebExchange exchange, MediaType contentType, DataBuffer buffer) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (exchange.isNotModified()) {
+            // 304 from If-None-Match: headers only
+            DataBufferUtils.release(buffer);
+            return response.setComplete();
+        }
+        response.getHeaders().setContentType(contentType);
+        response.getHeaders().setContentLength(buffer.readableByteCount());
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /* -------- generic codecs fallback -------- */
+
+    private Mono<Void> write(ServerWebExchange exchange, HandlerResult original, ApiResponse<?> env) {
+        exchange.getResponse().setStatusCode(HttpStatus.valueOf(env.getStatus()));
+        HandlerResult newResult = new HandlerResult(original.getHandler(), env, API_RESPONSE_RETURN_TYPE);
         return this.delegate.handleResult(exchange, newResult);
     }
 
@@ -119,65 +531,143 @@ public class ApiResponseResultHandler implements HandlerResultHandler, Ordered {
         }
     }
 
+    /* -------- streaming -------- */
+
+    /**
+     * Writes {@code {"timestamp":..,"status":..,"result":..,"data":[} immediately and then one JSON
+     * element per {@code onNext}, honouring the backpressure of the underlying connection. If the
+     * Flux fails after the prefix was written the array is closed and the envelope ends with the
+     * {@code errors}/{@code message} fields of {@link #errorEnvelope(Throwable)}.
+     */
+    private Mono<Void> writeStream(ServerWebExchange exchange, HandlerDescriptor descriptor,
+                                   Flux<?> flux, int status, boolean ok) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.valueOf(status));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        BufferSizePredictor elementSizes = new BufferSizePredictor();
+        Flux<DataBuffer> body = Flux.defer(() -> {
+            AtomicBoolean first = new AtomicBoolean(true);
+            return Flux.concat(
+                            Mono.fromCallable(() -> encode(exchange, null, sharedSizes,
+                                    out -> writer.writeStreamPrefix(out, status, ok))),
+                            flux.map(element -> encode(exchange, null, elementSizes,
+                                    out -> writer.writeStreamElement(out, element, first.getAndSet(false)))),
+                            Mono.fromCallable(() -> encode(exchange, null, sharedSizes, writer::writeStreamSuffix)))
+                    .onErrorResume(ex -> Mono.fromCallable(() -> encodeStreamTrailer(exchange, ex)));
+        });
+        return response.writeWith(recordedOnce(descriptor, body));
+    }
+
+    /**
+     * Writes one envelope per element (or per batch) framed as {@code format}, flushing after each one so
+     * clients see results as they are produced. Demand from the connection is passed through to the Flux.
+     * The stream always ends with a terminal envelope: a {@code message} on completion, or the
+     * {@code errors}/{@code message} of {@link #errorEnvelope(Throwable)} on failure.
+     */
+    private Mono<Void> writeEvents(ServerWebExchange exchange, HandlerDescriptor descriptor,
+                                   Flux<?> flux, EventFormat format, int status, boolean ok) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.valueOf(status));
+        response.getHeaders().setContentType(format.getMediaType());
+        BufferSizePredictor eventSizes = new BufferSizePredictor();
+        Flux<DataBuffer> events = batches(flux, descriptor)
+                .map(data -> encodeEvent(exchange, eventSizes, format.getDataPrefix(), format,
+                        out -> eventWriter.write(out, status, ok, data)))
+                .concatWith(Mono.fromCallable(() -> encodeEvent(exchange, sharedSizes,
+                        format.getCompletePrefix(), format,
+                        out -> eventWriter.writeMessage(out, status, ok, STREAM_COMPLETED))))
+                .onErrorResume(ex -> Mono.fromCallable(() -> encodeEventError(exchange, format, ex)));
+        return response.writeAndFlushWith(recordedOnce(descriptor, events).map(Mono::just))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * Records a streamed response as one envelope of {@code descriptor}, as MVC does: its buffers summed, timed
+     * from subscription until the last one. Cancelled responses are not recorded.
+     */
+    private Flux<DataBuffer> recordedOnce(HandlerDescriptor descriptor, Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong bytes = new AtomicLong();
+            return body
+                    .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                    .doOnComplete(() -> metrics.recordEnvelope(descriptor, System.nanoTime() - start, bytes.get()));
+        });
+    }
+
+    private static Flux<?> batches(Flux<?> flux, HandlerDescriptor descriptor) {
+        int size = descriptor.getBatchSize();
+        if (size <= 1) return flux;
+        long timeout = descriptor.getBatchTimeoutMillis();
+        return (timeout > 0) ? flux.bufferTimeout(size, Duration.ofMillis(timeout), true) : flux.buffer(size);
+    }
+
+    private DataBuffer encodeEvent(ServerWebExchange exchange, BufferSizePredictor sizes, byte[] prefix,
+                                   EventFormat format, BodyWriter body) {
+        return encode(exchange, null, sizes, out -> {
+            out.write(prefix);
+            body.writeTo(out);
+            out.write(format.getDelimiter());
+        });
+    }
+
+    private DataBuffer encodeEventError(ServerWebExchange exchange, EventFormat format, Throwable ex) {
+        log.warn("Flux failed while streaming {} events: {}", format, ex.toString());
+        ExceptionClassifier.Classification c = classify(ex);
+        ErrorTemplates.Template template = errorTemplates.find(c);
+        return encodeEvent(exchange, sharedSizes, format.getErrorPrefix(), format, (template != null)
+                ? out -> template.writeTo(out, timestamps.encodedNow(), c)
+                : out -> eventWriter.writeError(out, c.status(), c.errors(), c.message()));
+    }
+
+    private DataBuffer encodeStreamTrailer(ServerWebExchange exchange, Throwable ex) {
+        log.warn("Flux failed after the envelope prefix was written: {}", ex.toString());
+        ExceptionClassifier.Classification c = classify(ex);
+        return encode(exchange, null, out -> writer.writeStreamTrailer(out, c.errors(), c.message()));
+    }
+
     /* -------- envelopes -------- */
 
-    private static ApiResponse<Object> okEnvelope(int status, boolean result, Object data) {
+    private ApiResponse<?> envelope(int status, boolean result, Object data, FieldProjection fields) {
+        if (data instanceof Versioned<?> versioned) data = versioned.getData();
+        if (fields != null) data = fields.apply(data);
+        if (data instanceof Truncated truncated) {
+            // The generic codecs only know the ApiResponse fields: no next cursor
+            ApiResponse<Object> r = okEnvelope(status, result, truncated.data());
+            r.setMessage(Truncated.MESSAGE);
+            return r;
+        }
+        return (data instanceof ApiResponse<?> wrapped) ? wrapped : okEnvelope(status, result, data);
+    }
+
+    private ApiResponse<Object> okEnvelope(int status, boolean result, Object data) {
         ApiResponse<Object> r = new ApiResponse<>();
-        r.setTimestamp(Instant.now());
+        r.setTimestamp(timestamps.now());
         r.setStatus(status);
         r.setResult(result);
         r.setData(data);
         return r;
     }
 
-    private static ApiResponse<Object> errorEnvelope(Throwable ex) {
-        int status = statusFromException(ex);
-        String message = (status == 400 ? "Validation error" :
-                (ex instanceof ResponseStatusException ? "Request failed" : "Unexpected error"));
-        Map<String, String> errors = errorsFromException(ex);
+    private ApiResponse<Object> errorEnvelope(Throwable ex) {
+        ExceptionClassifier.Classification c = classify(ex);
         ApiResponse<Object> r = new ApiResponse<>();
-        r.setTimestamp(Instant.now());
-        r.setStatus(status);
+        r.setTimestamp(timestamps.now());
+        r.setStatus(c.status());
         r.setResult(false);
-        r.setMessage(message);
-        if (errors != null && !errors.isEmpty()) r.setErrors(errors);
+        r.setMessage(c.message());
+        r.setErrors(c.errors());
         r.setData(null);
         return r;
     }
 
-    /* -------- mapping -------- */
-    private static int statusFromException(Throwable ex) {
-        if (ex instanceof ResponseStatusException rse) return rse.getStatusCode().value();
-        if (ex instanceof ConstraintViolationException) return HttpStatus.BAD_REQUEST.value();
-        return HttpStatus.INTERNAL_SERVER_ERROR.value();
-    }
-
-    private static Map<String, String> errorsFromException(Throwable ex) {
-        if (ex instanceof ResponseStatusException rse) {
-            Map<String, String> map = new HashMap<>();
-            if (rse.getReason() != null) map.put("_reason", rse.getReason());
-            return map;
-        }
-        if (ex instanceof ConstraintViolationException cve) {
-            Map<String, String> map = new HashMap<>();
-            for (ConstraintViolation<?> v : cve.getConstraintViolations()) {
-                String field = lastSegment(String.valueOf(v.getPropertyPath()));
-                map.put(field != null && !field.isBlank() ? field : "_violation",
-                        v.getMessage() != null ? v.getMessage() : "invalid");
-            }
-            return map;
-        }
-        return null;
-    }
-
-    private static String lastSegment(String path) {
-        if (path == null) return null;
-        int dot = path.lastIndexOf('.');
-        String s = (dot >= 0 ? path.substring(dot + 1) : path);
-        return s.replaceAll("\\[.*?]", "");
+    private ExceptionClassifier.Classification classify(Throwable ex) {
+        ExceptionClassifier.Classification c = classifier.classify(ex);
+        metrics.recordError(c.status(), ex);
+        return c;
     }
 
-    private static boolean isPublisher(Class<?> c) {
-        return c != null && (Mono.class.isAssignableFrom(c) || Flux.class.isAssignableFrom(c));
+    private static int normalizeStatus(int status) {
+        return status > 0 ? status : HttpStatus.OK.value();
     }
-}
\ No newline at end of file
+}
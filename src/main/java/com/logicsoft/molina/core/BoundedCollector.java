@@ -0,0 +1,87 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.logicsoft.molina.annotations.Bounded;
+import com.logicsoft.molina.exception.ResultTooLargeException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * State of one bounded collection of a {@code Flux}: counts the elements and estimates their encoded size as
+ * they arrive. The first elements, then one in {@value #SAMPLE_EVERY}, are encoded (and the bytes discarded)
+ * to measure them; the others count for the average measured so far. The estimate is what bounds the heap,
+ * so it errs on the side of encoding a few more elements rather than tracking sizes exactly.
+ */
+final class BoundedCollector {
+
+    private static final int SAMPLE_EVERY = 8;
+
+    private final FluxBounds bounds;
+    private final EnvelopeWriter writer;
+    /* Whether the ResultTooLargeException of a rejection captures a stack trace */
+    private final boolean stackTraces;
+    private long count;
+    private long bytes;
+    private long measuredBytes;
+    private long measured;
+    private String crossed;
+
+    BoundedCollector(FluxBounds bounds, EnvelopeWriter writer, boolean stackTraces) {
+        this.bounds = bounds;
+        this.writer = writer;
+        this.stackTraces = stackTraces;
+    }
+
+    /**
+     * Accounts for {@code element}; {@code true} once a bound is crossed, which ends the collection.
+     */
+    boolean exceeds(Object element) {
+        count++;
+        if (bounds.maxElements() > 0 && count > bounds.maxElements()) {
+            crossed = "More than " + bounds.maxElements() + " elements";
+            return true;
+        }
+        if (bounds.maxBytes() > 0) {
+            // Plus the separating comma
+            bytes += estimate(element) + 1;
+            if (bytes > bounds.maxBytes()) {
+                crossed = "Over " + bounds.maxBytes() + " bytes (estimated)";
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The collected elements when no bound was crossed; otherwise those within the bounds, or the rejection.
+     */
+    Object finish(List<?> elements) {
+        if (crossed == null) return elements;
+        if (bounds.overflow() == Bounded.Overflow.REJECT) throw new ResultTooLargeException(crossed, stackTraces);
+        List<?> kept = elements.subList(0, elements.size() - 1);
+        return new Truncated(kept, next(kept));
+    }
+
+    private long estimate(Object element) {
+        if (measured > 0 && count > SAMPLE_EVERY && count % SAMPLE_EVERY != 0) return measuredBytes / measured;
+        try {
+            long size = writer.encodedSize(element);
+            measuredBytes += size;
+            measured++;
+            return size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String next(List<?> kept) {
+        if (!bounds.cursor().isEmpty() && !kept.isEmpty()) {
+            JsonNode last = writer.getObjectMapper().valueToTree(kept.get(kept.size() - 1));
+            JsonNode value = last.get(bounds.cursor());
+            if (value != null && !value.isNull()) return value.asText();
+        }
+        return String.valueOf(kept.size());
+    }
+}
@@ -0,0 +1,36 @@
+package com.logicsoft.molina.core;
+
+/**
+ * Predicts the initial buffer size for the next envelope of an endpoint from an exponentially weighted
+ * moving average of the sizes it recently produced. Updates are racy by design: a lost sample only
+ * makes the next prediction slightly less accurate.
+ */
+public final class BufferSizePredictor {
+
+    static final int MIN_SIZE = 256;
+    static final int MAX_SIZE = 1024 * 1024;
+
+    private volatile int average;
+
+    public BufferSizePredictor() {
+        this(MIN_SIZE);
+    }
+
+    public BufferSizePredictor(int initial) {
+        this.average = Math.max(MIN_SIZE, Math.min(MAX_SIZE, initial));
+    }
+
+    /**
+     * Returns the average plus 1/8 of headroom, so most responses fit without a resize.
+     */
+    public int predict() {
+        int avg = average;
+        return Math.min(MAX_SIZE, avg + (avg >>> 3));
+    }
+
+    public void record(int size) {
+        int avg = average;
+        int next = avg + ((Math.min(size, MAX_SIZE) - avg) >> 3);
+        average = Math.max(MIN_SIZE, next);
+    }
+}
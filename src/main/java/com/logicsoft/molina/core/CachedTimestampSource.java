@@ -0,0 +1,73 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * {@link TimestampSource} truncated to a fixed precision. The instant and its encoded ISO-8601 bytes are
+ * computed at most once per tick and shared by every envelope written during that tick.
+ */
+public class CachedTimestampSource implements TimestampSource {
+
+    public enum Precision {
+        MILLIS(1L),
+        SECONDS(1000L);
+
+        private final long tickMillis;
+
+        Precision(long tickMillis) {
+            this.tickMillis = tickMillis;
+        }
+    }
+
+    private final Clock clock;
+    private final long tickMillis;
+    private volatile Tick current;
+
+    public CachedTimestampSource(Precision precision) {
+        this(precision, Clock.systemUTC());
+    }
+
+    public CachedTimestampSource(Precision precision, Clock clock) {
+        this.clock = clock;
+        this.tickMillis = precision.tickMillis;
+        this.current = new Tick(Long.MIN_VALUE, Instant.EPOCH);
+    }
+
+    @Override
+    public Instant now() {
+        return tick().instant;
+    }
+
+    @Override
+    public SerializableString encodedNow() {
+        return tick().encoded;
+    }
+
+    private Tick tick() {
+        long tick = clock.millis() / tickMillis;
+        Tick t = current;
+        if (t.tick != tick) {
+            t = new Tick(tick, Instant.ofEpochMilli(tick * tickMillis));
+            current = t;
+        }
+        return t;
+    }
+
+    private static final class Tick {
+        final long tick;
+        final Instant instant;
+        final SerializableString encoded;
+
+        Tick(long tick, Instant instant) {
+            this.tick = tick;
+            this.instant = instant;
+            SerializedString text = new SerializedString(instant.toString());
+            text.asUnquotedUTF8();
+            this.encoded = text;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.exception.DeadlineExceededException;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Applies the time budget of {@code @ResponseHandler} methods to Spring MVC async requests: {@code Callable},
+ * {@code WebAsyncTask} (including offloaded handlers), {@code DeferredResult}, {@code CompletionStage} and
+ * reactive return values. The budget replaces the async request timeout. When it runs out the request completes
+ * with a {@link DeadlineExceededException}, which the exception advice turns into a {@code 504} envelope. Spring
+ * cancels a running {@code Callable} by interrupting its thread, and cancels a reactive subscription.
+ * Synchronous handlers are not covered: nothing can stop them from outside.
+ */
+public class DeadlineInterceptor implements CallableProcessingInterceptor, DeferredResultProcessingInterceptor {
+
+    private static final String BUDGET_ATTRIBUTE = DeadlineInterceptor.class.getName() + ".BUDGET";
+
+    private final HandlerDescriptorRegistry descriptors;
+    private final ResponseHandlerMetrics metrics;
+    private final String deadlineHeader;
+    /* Whether the DeadlineExceededExceptions raised here capture a stack trace */
+    private final boolean stackTraces;
+
+    public DeadlineInterceptor(HandlerDescriptorRegistry descriptors, ResponseHandlerMetrics metrics,
+                               String deadlineHeader) {
+        this(descriptors, metrics, deadlineHeader, true);
+    }
+
+    /**
+     * @param deadlineHeader request header carrying a client deadline in milliseconds, or {@code null}
+     * @param stackTraces    whether the {@link DeadlineExceededException}s raised capture a stack trace
+     */
+    public DeadlineInterceptor(HandlerDescriptorRegistry descriptors, ResponseHandlerMetrics metrics,
+                               String deadlineHeader, boolean stackTraces) {
+        this.descriptors = descriptors;
+        this.metrics = metrics;
+        this.deadlineHeader = (deadlineHeader != null && !deadlineHeader.isBlank()) ? deadlineHeader : null;
+        this.stackTraces = stackTraces;
+    }
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        applyBudget(request);
+    }
+
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, DeferredResult<T> deferredResult) {
+        applyBudget(request);
+    }
+
+    /**
+     * On timeout Spring interrupts the task before asking the interceptors for a result, so the task can finish
+     * first with its interruption as the result: that is the deadline too.
+     */
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        if (!(concurrentResult instanceof InterruptedException) && !Thread.currentThread().isInterrupted()) return;
+        if (request.getAttribute(BUDGET_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Long budget) {
+            throw new DeadlineExceededException(budget, stackTraces);
+        }
+    }
+
+    @Override
+    public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+        DeadlineExceededException expired = expired(request);
+        return (expired != null) ? expired : RESULT_NONE;
+    }
+
+    @Override
+    public <T> boolean handleTimeout(NativeWebRequest request, DeferredResult<T> deferredResult) {
+        DeadlineExceededException expired = expired(request);
+        if (expired == null) return true;
+        deferredResult.setErrorResult(expired);
+        return false;
+    }
+
+    /**
+     * Called before the async request starts, while its timeout can still be changed; the request passed to
+     * the interceptors is the {@link AsyncWebRequest} itself.
+     */
+    private void applyBudget(NativeWebRequest request) {
+        HandlerDescriptor descriptor = descriptor(request);
+        if (descriptor == null || !(request instanceof AsyncWebRequest async)) return;
+        long budget = descriptor.budgetMillis((deadlineHeader != null) ? request.getHeader(deadlineHeader) : null);
+        if (budget == 0) return;
+        async.setTimeout(budget);
+        request.setAttribute(BUDGET_ATTRIBUTE, budget, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /* null when the timeout is not the handler's budget, leaving it to Spring's own handling */
+    private DeadlineExceededException expired(NativeWebRequest request) {
+        if (!(request.getAttribute(BUDGET_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Long budget)) {
+            return null;
+        }
+        HandlerDescriptor descriptor = descriptor(request);
+        if (descriptor != null) metrics.recordTimeout(descriptor);
+        return new DeadlineExceededException(budget, stackTraces);
+    }
+
+    private HandlerDescriptor descriptor(NativeWebRequest request) {
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        return (handler instanceof HandlerMethod hm) ? descriptors.find(hm.getMethod()) : null;
+    }
+}
@@ -0,0 +1,116 @@
+package com.logicsoft.molina.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Strong entity tags of envelopes: the MD5 (as Spring's {@code ShallowEtagHeaderFilter}) of the envelope bytes
+ * after the {@code timestamp}, so two responses with the same status, result and data share a tag.
+ */
+public final class ETags {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private ETags() {
+    }
+
+    /**
+     * Tag of {@code length} bytes of {@code envelope} starting at {@code offset}.
+     */
+    public static String of(byte[] envelope, int offset, int length) {
+        MessageDigest md5 = md5();
+        md5.update(envelope, offset, length);
+        return quote(md5.digest());
+    }
+
+    /**
+     * Tag of a handler-supplied version key. The format is part of it: a JSON and a CBOR response of the same
+     * version are different representations.
+     */
+    public static String ofVersion(EnvelopeFormat format, String version) {
+        return ofVersion(format, version, null);
+    }
+
+    /**
+     * Same, for the {@code fields} projection of that version; {@code null} for the whole data.
+     */
+    public static String ofVersion(EnvelopeFormat format, String version, FieldProjection fields) {
+        MessageDigest md5 = md5();
+        md5.update(format.name().getBytes(StandardCharsets.US_ASCII));
+        md5.update((byte) 0);
+        md5.update(version.getBytes(StandardCharsets.UTF_8));
+        if (fields != null) {
+            md5.update((byte) 0);
+            md5.update(fields.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return quote(md5.digest());
+    }
+
+    /**
+     * Tag of the gzip-encoded form of the representation tagged {@code etag}.
+     */
+    public static String gzip(String etag) {
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + "\"";
+    }
+
+    /**
+     * Returns a stream that passes everything to {@code out} and hashes what follows the first {@code skip}
+     * bytes.
+     */
+    public static Hashing hashing(OutputStream out, int skip) {
+        return new Hashing(out, skip);
+    }
+
+    private static String quote(byte[] digest) {
+        return "\"" + HEX.formatHex(digest) + "\"";
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    /**
+     * Output stream computing the tag of the bytes written through it, in the same pass.
+     */
+    public static final class Hashing extends FilterOutputStream {
+
+        private final MessageDigest md5 = md5();
+        private int skip;
+
+        private Hashing(OutputStream out, int skip) {
+            super(out);
+            this.skip = skip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (skip > 0) skip--; else md5.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            int skipped = Math.min(skip, len);
+            skip -= skipped;
+            if (len > skipped) md5.update(b, off + skipped, len - skipped);
+        }
+
+        /**
+         * The tag of the bytes written past the skipped prefix; call once, after the last write.
+         */
+        public String getETag() {
+            return quote(md5.digest());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.BeanUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodings an envelope can be written in. JSON is always available; the binary formats are offered when
+ * their Jackson data format is on the classpath and the client asks for them in {@code Accept}. Every
+ * format writes the same envelope schema.
+ */
+public enum EnvelopeFormat {
+
+    JSON(null, MediaType.APPLICATION_JSON),
+    SMILE("com.fasterxml.jackson.dataformat.smile.SmileFactory",
+            new MediaType("application", "x-jackson-smile")),
+    CBOR("com.fasterxml.jackson.dataformat.cbor.CBORFactory",
+            MediaType.APPLICATION_CBOR),
+    MESSAGE_PACK("org.msgpack.jackson.dataformat.MessagePackFactory",
+            new MediaType("application", "msgpack"),
+            new MediaType("application", "x-msgpack"),
+            new MediaType("application", "vnd.msgpack"));
+
+    /* Factory class names are resolved reflectively so a missing data format never breaks class loading */
+    private final String factoryClassName;
+    private final List<MediaType> mediaTypes;
+    private final boolean available;
+
+    EnvelopeFormat(String factoryClassName, MediaType... mediaTypes) {
+        this.factoryClassName = factoryClassName;
+        this.mediaTypes = List.of(mediaTypes);
+        this.available = factoryClassName == null
+                || ClassUtils.isPresent(factoryClassName, EnvelopeFormat.class.getClassLoader());
+    }
+
+    public List<MediaType> getMediaTypes() {
+        return mediaTypes;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * Returns {@code mapper} itself for JSON, otherwise a copy with the same configuration and modules that
+     * encodes this format.
+     */
+    public ObjectMapper mapper(ObjectMapper mapper) {
+        if (!isBinary()) return mapper;
+        if (!available) throw new IllegalStateException(this + " is not on the classpath");
+        try {
+            Class<?> factoryClass = ClassUtils.forName(factoryClassName, EnvelopeFormat.class.getClassLoader());
+            return mapper.copyWith((JsonFactory) BeanUtils.instantiateClass(factoryClass));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the available format whose media types include {@code mediaType} exactly (type and subtype),
+     * or {@code null}. Wildcards and {@code +json} types are treated as JSON.
+     */
+    public static EnvelopeFormat of(MediaType mediaType) {
+        if (mediaType == null) return null;
+        for (EnvelopeFormat format : values()) {
+            if (!format.available || !format.isBinary()) continue;
+            for (MediaType candidate : format.mediaTypes) {
+                if (candidate.equalsTypeAndSubtype(mediaType)) return format;
+            }
+        }
+        return mediaType.isCompatibleWith(MediaType.APPLICATION_JSON) ? JSON : null;
+    }
+
+    /**
+     * Picks the first requested media type (in the client's preference order) that maps to a format, or
+     * {@code null} when none does.
+     */
+    public static EnvelopeFormat negotiate(Collection<MediaType> requested) {
+        for (MediaType mediaType : requested) {
+            EnvelopeFormat format = of(mediaType);
+            if (format != null) return format;
+        }
+        return null;
+    }
+
+    /**
+     * Content type for an envelope answering a request that accepts {@code requested}: the binary format
+     * asked for ahead of JSON, JSON otherwise. Used where the content type is fixed before a converter runs.
+     */
+    public static MediaType contentType(Collection<MediaType> requested) {
+        for (MediaType mediaType : requested) {
+            EnvelopeFormat format = of(mediaType);
+            if (format != null) return format.responseType(mediaType);
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * Builds one {@link EnvelopeWriter} per available format on top of {@code mapper}.
+     */
+    public static Map<EnvelopeFormat, EnvelopeWriter> writers(ObjectMapper mapper, TimestampSource timestamps) {
+        Map<EnvelopeFormat, EnvelopeWriter> writers = new EnumMap<>(EnvelopeFormat.class);
+        for (EnvelopeFormat format : values()) {
+            if (format.available) writers.put(format, new EnvelopeWriter(format.mapper(mapper), timestamps));
+        }
+        return writers;
+    }
+
+    /**
+     * Media type to answer with: the requested one when it is concrete, otherwise the format's primary type.
+     */
+    public MediaType responseType(MediaType requested) {
+        if (requested != null && requested.isConcrete()) {
+            for (MediaType candidate : mediaTypes) {
+                if (candidate.equalsTypeAndSubtype(requested)) return candidate;
+            }
+        }
+        return mediaTypes.get(0);
+    }
+}
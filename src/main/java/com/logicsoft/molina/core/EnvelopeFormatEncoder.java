@@ -0,0 +1,26 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.api.ApiResponse;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.codec.json.AbstractJackson2Encoder;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+
+/**
+ * WebFlux encoder for a binary {@link EnvelopeFormat} the default codecs do not cover (e.g. CBOR,
+ * MessagePack), used by the exception advices and the non-envelope fallback. It only encodes envelopes: custom
+ * codecs come ahead of the default ones, so other types would otherwise be negotiated to it for {@code *&#47;*}.
+ */
+public class EnvelopeFormatEncoder extends AbstractJackson2Encoder {
+
+    public EnvelopeFormatEncoder(EnvelopeFormat format, ObjectMapper mapper) {
+        super(format.mapper(mapper), format.getMediaTypes().toArray(MimeType[]::new));
+    }
+
+    @Override
+    public boolean canEncode(@NonNull ResolvableType elementType, @Nullable MimeType mimeType) {
+        return ApiResponse.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+}
@@ -0,0 +1,16 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+
+/**
+ * Spring MVC converter for a binary {@link EnvelopeFormat} the default converters do not cover (e.g.
+ * MessagePack), so requests accepting it are not rejected with 406 before the envelope is written.
+ */
+public class EnvelopeFormatHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public EnvelopeFormatHttpMessageConverter(EnvelopeFormat format, ObjectMapper mapper) {
+        super(format.mapper(mapper), format.getMediaTypes().toArray(MediaType[]::new));
+    }
+}
@@ -0,0 +1,440 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.api.RawJson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Writes {@link ApiResponse} envelopes as JSON without building the envelope object. The fixed parts of
+ * the envelope are emitted from pre-encoded fragments and only {@code data} and {@code errors} go through
+ * Jackson. Field order and {@code NON_NULL} handling match the reflective serialization of
+ * {@link ApiResponse}.
+ */
+public class EnvelopeWriter {
+
+    private static final SerializableString OPEN_TIMESTAMP = new SerializedString("{\"timestamp\":\"");
+    private static final SerializableString CLOSE_TIMESTAMP = new SerializedString("\",");
+    private static final SerializableString OPEN = new SerializedString("{");
+    private static final SerializableString DATA = new SerializedString(",\"data\":");
+    private static final SerializableString OPEN_DATA_ARRAY = new SerializedString(",\"data\":[");
+    private static final SerializableString ERRORS = new SerializedString(",\"errors\":");
+    private static final SerializableString MESSAGE = new SerializedString(",\"message\":");
+    private static final SerializableString NEXT = new SerializedString(",\"next\":");
+    private static final SerializableString COMMA = new SerializedString(",");
+    private static final SerializableString CLOSE_ARRAY = new SerializedString("]");
+    private static final SerializableString CLOSE = new SerializedString("}");
+    private static final SerializableString CLOSE_ARRAY_AND_ENVELOPE = new SerializedString("]}");
+
+    private static final int MIN_CACHED_STATUS = 100;
+    private static final int MAX_CACHED_STATUS = 599;
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter elementWriter;
+    /* Binary formats (Smile, CBOR, MessagePack) cannot take raw fragments and are written field by field */
+    private final boolean binary;
+    private final TimestampSource timestamps;
+
+    /* "status":200,"result":true  —  indexed by (status - 100) * 2 + (result ? 1 : 0) */
+    private final AtomicReferenceArray<SerializableString> statusFragments =
+            new AtomicReferenceArray<>((MAX_CACHED_STATUS - MIN_CACHED_STATUS + 1) * 2);
+
+    public EnvelopeWriter(ObjectMapper mapper) {
+        this(mapper, TimestampSource.system());
+    }
+
+    public EnvelopeWriter(ObjectMapper mapper, TimestampSource timestamps) {
+        this.mapper = mapper;
+        // Elements share one generator; let it fill its buffer instead of flushing the target per element
+        this.elementWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.binary = mapper.getFactory().canHandleBinaryNatively();
+        this.timestamps = timestamps;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    /**
+     * {@code true} when this writer encodes a binary format; those only support whole envelopes, not the
+     * {@code writeStream*} fragments.
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Writes a success envelope; {@code data} is omitted when {@code null}.
+     */
+    public void write(OutputStream out, int status, boolean result, Object data) throws IOException {
+        write(out, timestamps.encodedNow(), status, result, data, null, null);
+    }
+
+    /**
+     * Writes an error envelope ({@code result=false}, no {@code data}).
+     */
+    public void writeError(OutputStream out, int status, Map<String, String> errors, String message) throws IOException {
+        write(out, timestamps.encodedNow(), status, false, null, errors, message);
+    }
+
+    /**
+     * Writes an envelope with only a {@code message} (no {@code data}), e.g. the end of an event stream.
+     */
+    public void writeMessage(OutputStream out, int status, boolean result, String message) throws IOException {
+        write(out, timestamps.encodedNow(), status, result, null, null, message);
+    }
+
+    /**
+     * Writes a success envelope without {@code timestamp}: the form the response cache keeps, which gets a
+     * fresh timestamp spliced in front each time it is served.
+     */
+    public void writeWithoutTimestamp(OutputStream out, int status, boolean result, Object data) throws IOException {
+        requireText();
+        write(out, null, status, result, data, null, null);
+    }
+
+    /**
+     * Writes an error envelope without {@code timestamp}, for responses encoded once and served with a fresh
+     * timestamp spliced in front.
+     */
+    public void writeErrorWithoutTimestamp(OutputStream out, int status, Map<String, String> errors,
+                                           String message) throws IOException {
+        requireText();
+        write(out, null, status, false, null, errors, message);
+    }
+
+    /**
+     * Writes a success envelope like {@link #write(OutputStream, int, boolean, Object)} and returns its
+     * {@link ETags strong ETag}, hashed over everything after the timestamp while the bytes go out.
+     */
+    public String writeTagged(OutputStream out, int status, boolean result, Object data) throws IOException {
+        requireText();
+        SerializableString timestamp = timestamps.encodedNow();
+        int head = OPEN_TIMESTAMP.charLength() + timestamp.asUnquotedUTF8().length + CLOSE_TIMESTAMP.charLength();
+        ETags.Hashing tagged = ETags.hashing(out, head);
+        write(tagged, timestamp, status, result, data, null, null);
+        return tagged.getETag();
+    }
+
+    /**
+     * Writes an envelope the controller already built, keeping its own timestamp (if any).
+     */
+    public void write(OutputStream out, ApiResponse<?> env) throws IOException {
+        Instant timestamp = env.getTimestamp();
+        write(out, (timestamp != null) ? new SerializedString(timestamp.toString()) : null, env.getStatus(), env.isResult(), env.getData(), env.getErrors(), env.getMessage());
+    }
+
+    /* -------- streaming -------- */
+
+    /**
+     * Writes the envelope head up to and including {@code "data":[}.
+     */
+    public void writeStreamPrefix(OutputStream out, int status, boolean result) throws IOException {
+        requireText();
+        try (JsonGenerator gen = generator(out)) {
+            writeHead(gen, timestamps.encodedNow(), status, result);
+            gen.writeRaw(OPEN_DATA_ARRAY);
+        }
+    }
+
+    /**
+     * Writes one element of the {@code data} array, preceded by a comma unless it is the first one.
+     */
+    public void writeStreamElement(OutputStream out, Object element, boolean first) throws IOException {
+        requireText();
+        try (JsonGenerator gen = generator(out)) {
+            if (!first) gen.writeRaw(COMMA);
+            writeValue(gen, out, element);
+        }
+    }
+
+    /**
+     * Closes the {@code data} array and the envelope.
+     */
+    public void writeStreamSuffix(OutputStream out) throws IOException {
+        requireText();
+        try (JsonGenerator gen = generator(out)) {
+            gen.writeRaw(CLOSE_ARRAY_AND_ENVELOPE);
+        }
+    }
+
+    /**
+     * Closes the {@code data} array and ends the envelope with {@code errors} and {@code message}; used when
+     * the source fails after the prefix has already been sent.
+     */
+    public void writeStreamTrailer(OutputStream out, Map<String, String> errors, String message) throws IOException {
+        requireText();
+        try (JsonGenerator gen = generator(out)) {
+            gen.writeRaw(CLOSE_ARRAY);
+            writeTail(gen, errors, message);
+        }
+    }
+
+    /**
+     * Writes a complete envelope whose {@code data} array is pulled from {@code elements} one element at a
+     * time through a single generator, so memory does not grow with the number of elements. If iteration or
+     * the serialization of an element fails, whatever the element left open is closed, then the array, and the
+     * envelope ends with the {@code errors} and {@code message} of the envelope returned by {@code onError}.
+     */
+    public void writeStream(OutputStream out, int status, boolean result, Iterator<?> elements,
+                            Function<Exception, ApiResponse<?>> onError) throws IOException {
+        try (JsonGenerator gen = generator(out)) {
+            writeHead(gen, timestamps.encodedNow(), status, result);
+            if (binary) {
+                gen.writeFieldName("data");
+                gen.writeStartArray();
+            } else {
+                gen.writeRaw(OPEN_DATA_ARRAY);
+            }
+            JsonStreamContext data = gen.getOutputContext();
+            boolean first = true;
+            try {
+                while (elements.hasNext()) {
+                    Object element = elements.next();
+                    boolean separated = !first && !binary;
+                    if (separated) gen.writeRaw(COMMA);
+                    first = false;
+                    if (element instanceof RawJson raw && !binary) {
+                        writeRaw(gen, out, raw);
+                    } else {
+                        writeElement(gen, data, element, separated);
+                    }
+                }
+            } catch (ElementFailure failed) {
+                fail(gen, onError.apply(failed.cause));
+                return;
+            } catch (RuntimeException ex) {
+                fail(gen, onError.apply(ex));
+                return;
+            }
+            if (binary) {
+                gen.writeEndArray();
+                gen.writeEndObject();
+            } else {
+                gen.writeRaw(CLOSE_ARRAY_AND_ENVELOPE);
+            }
+        }
+    }
+
+    /**
+     * Writes one element of a streamed {@code data} array. A failing serializer (a getter that throws, which
+     * Jackson reports as a {@link com.fasterxml.jackson.databind.JsonMappingException}) leaves the element half
+     * written: its open objects and arrays are closed, a field still waiting for its value gets {@code null}, and
+     * an element that wrote nothing after its separator becomes {@code null}, so the trailer follows valid output.
+     */
+    private void writeElement(JsonGenerator gen, JsonStreamContext data, Object element, boolean separated)
+            throws IOException {
+        int written = data.getEntryCount();
+        try {
+            elementWriter.writeValue(gen, element);
+        } catch (IOException | RuntimeException ex) {
+            while (gen.getOutputContext() != data) {
+                if (gen.getOutputContext().inObject()) {
+                    try {
+                        gen.writeNull();
+                    } catch (JsonGenerationException noFieldPending) {
+                        // The object was between fields
+                    }
+                    gen.writeEndObject();
+                } else {
+                    gen.writeEndArray();
+                }
+            }
+            if (separated && data.getEntryCount() == written) gen.writeNull();
+            throw new ElementFailure(ex);
+        }
+    }
+
+    private void fail(JsonGenerator gen, ApiResponse<?> failure) throws IOException {
+        if (binary) gen.writeEndArray(); else gen.writeRaw(CLOSE_ARRAY);
+        writeTail(gen, failure.getErrors(), failure.getMessage());
+    }
+
+    /**
+     * Number of bytes {@code value} takes when encoded as {@code data} or as an element of it. The bytes are
+     * counted, not kept.
+     */
+    public long encodedSize(Object value) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonGenerator gen = generator(out)) {
+            writeValue(gen, out, value);
+        }
+        return out.count;
+    }
+
+    /**
+     * Builds and caches the serializer of {@code type}, or of its elements for collections, maps, arrays and
+     * references, so the first response of a handler does not pay for the bean introspection. Types Jackson
+     * cannot serialize are left for the request path to report.
+     */
+    public void prepare(Type type) {
+        JavaType javaType = mapper.getTypeFactory().constructType(type);
+        while (javaType.isContainerType() || javaType.isReferenceType()) javaType = javaType.getContentType();
+        Class<?> raw = javaType.getRawClass();
+        if (raw == Object.class || raw == Void.class || RawJson.class.isAssignableFrom(raw)) return;
+        try {
+            mapper.getSerializerProviderInstance().findValueSerializer(raw);
+        } catch (JsonMappingException | RuntimeException ignored) {
+            // Reported by the first response that actually writes such a value
+        }
+    }
+
+    /* -------- internals -------- */
+
+    /** Carries the failure of an element out of the loop once the element has been closed. */
+    private static final class ElementFailure extends RuntimeException {
+
+        final Exception cause;
+
+        ElementFailure(Exception cause) {
+            super(null, cause, false, false);
+            this.cause = cause;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private void write(OutputStream out, SerializableString timestamp, int status, boolean result,
+                       Object data, Map<String, String> errors, String message) throws IOException {
+        String next = null;
+        if (data instanceof Truncated truncated) {
+            data = truncated.data();
+            message = Truncated.MESSAGE;
+            next = truncated.next();
+        }
+        try (JsonGenerator gen = generator(out)) {
+            writeHead(gen, timestamp, status, result);
+            if (data != null) {
+                if (binary) gen.writeFieldName("data"); else gen.writeRaw(DATA);
+                writeValue(gen, out, data);
+            }
+            writeTail(gen, errors, message, next);
+        }
+    }
+
+    private void writeValue(JsonGenerator gen, OutputStream out, Object value) throws IOException {
+        if (value instanceof RawJson raw && !binary) {
+            writeRaw(gen, out, raw);
+        } else {
+            mapper.writeValue(gen, value);
+        }
+    }
+
+    /**
+     * Pushes what the generator has buffered to {@code out} and copies the raw bytes right behind it. The
+     * generator does not pass flushes on, so this never flushes the underlying stream.
+     */
+    private static void writeRaw(JsonGenerator gen, OutputStream out, RawJson raw) throws IOException {
+        gen.flush();
+        raw.writeTo(out);
+    }
+
+    private void writeHead(JsonGenerator gen, SerializableString timestamp, int status, boolean result)
+            throws IOException {
+        if (binary) {
+            gen.writeStartObject();
+            if (timestamp != null) gen.writeStringField("timestamp", timestamp.getValue());
+            gen.writeNumberField("status", status);
+            gen.writeBooleanField("result", result);
+            return;
+        }
+        if (timestamp != null) {
+            gen.writeRaw(OPEN_TIMESTAMP);
+            gen.writeRaw(timestamp);
+            gen.writeRaw(CLOSE_TIMESTAMP);
+        } else {
+            gen.writeRaw(OPEN);
+        }
+        gen.writeRaw(statusFragment(status, result));
+    }
+
+    private void writeTail(JsonGenerator gen, Map<String, String> errors, String message) throws IOException {
+        writeTail(gen, errors, message, null);
+    }
+
+    private void writeTail(JsonGenerator gen, Map<String, String> errors, String message, String next)
+            throws IOException {
+        if (binary) {
+            if (errors != null) {
+                gen.writeFieldName("errors");
+                mapper.writeValue(gen, errors);
+            }
+            if (message != null) gen.writeStringField("message", message);
+            if (next != null) gen.writeStringField("next", next);
+            gen.writeEndObject();
+            return;
+        }
+        if (errors != null) {
+            gen.writeRaw(ERRORS);
+            mapper.writeValue(gen, errors);
+        }
+        if (message != null) {
+            gen.writeRaw(MESSAGE);
+            gen.writeString(message);
+        }
+        if (next != null) {
+            gen.writeRaw(NEXT);
+            gen.writeString(next);
+        }
+        gen.writeRaw(CLOSE);
+    }
+
+    private void requireText() {
+        if (binary) throw new IllegalStateException("Envelope fragments can only be written as JSON");
+    }
+
+    private JsonGenerator generator(OutputStream out) throws IOException {
+        JsonGenerator gen = mapper.getFactory().createGenerator(out);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        gen.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        if (!binary) gen.setRootValueSeparator(null);
+        return gen;
+    }
+
+    private SerializableString statusFragment(int status, boolean result) {
+        if (status < MIN_CACHED_STATUS || status > MAX_CACHED_STATUS) {
+            return new SerializedString(statusText(status, result));
+        }
+        int index = (status - MIN_CACHED_STATUS) * 2 + (result ? 1 : 0);
+        SerializableString fragment = statusFragments.get(index);
+        if (fragment == null) {
+            fragment = new SerializedString(statusText(status, result));
+            statusFragments.lazySet(index, fragment);
+        }
+        return fragment;
+    }
+
+    private static String statusText(int status, boolean result) {
+        return "\"status\":" + status + ",\"result\":" + result;
+    }
+}
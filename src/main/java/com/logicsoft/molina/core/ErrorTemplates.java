@@ -0,0 +1,149 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pre-encoded JSON error envelopes for the statuses whose envelope only varies by its timestamp and, at most, the
+ * value of a single {@code errors} entry ({@code _reason}, {@code _error}). Writing one splices the timestamp
+ * and that value between fixed bytes: no {@code ApiResponse}, no map and no serializer lookup, which keeps the
+ * error path cheap when errors spike.
+ * <p>
+ * Templates are built on first use per status, message and {@code errors} key, and match the output of
+ * {@link EnvelopeWriter#writeError} byte for byte.
+ */
+public final class ErrorTemplates {
+
+    /** Statuses templated by default: the fixed-message failures that come in bursts. */
+    public static final List<Integer> DEFAULT_STATUSES = List.of(404, 405, 415, 429, 500, 503);
+
+    /** No templates: every error envelope is serialized. */
+    public static final ErrorTemplates NONE = new ErrorTemplates(List.of());
+
+    /* Bounds the templates: keys come from the classifier's rules, which may name request parameters */
+    private static final int MAX_TEMPLATES = 64;
+
+    private static final byte[] OPEN_TIMESTAMP = "{\"timestamp\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE_TIMESTAMP = "\",".getBytes(StandardCharsets.UTF_8);
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    private final boolean[] statuses = new boolean[600];
+    private final ConcurrentMap<Key, Template> templates = new ConcurrentHashMap<>();
+
+    private ErrorTemplates(Collection<Integer> statuses) {
+        for (int status : statuses) {
+            if (status < 100 || status >= this.statuses.length) {
+                throw new IllegalArgumentException("Invalid error template status " + status);
+            }
+            this.statuses[status] = true;
+        }
+    }
+
+    public static ErrorTemplates of(Collection<Integer> statuses) {
+        return statuses.isEmpty() ? NONE : new ErrorTemplates(statuses);
+    }
+
+    public static ErrorTemplates defaults() {
+        return of(DEFAULT_STATUSES);
+    }
+
+    /**
+     * The template of {@code c}, or {@code null} when its status is not templated or it has more than one
+     * {@code errors} entry.
+     */
+    public Template find(ExceptionClassifier.Classification c) {
+        int status = c.status();
+        if (status < 0 || status >= statuses.length || !statuses[status]) return null;
+        Map<String, String> errors = c.errors();
+        if (errors != null && errors.size() != 1) return null;
+        Key key = new Key(status, c.message(), (errors != null) ? errors.keySet().iterator().next() : null);
+        Template template = templates.get(key);
+        if (template != null) return template;
+        template = new Template(key);
+        if (templates.size() < MAX_TEMPLATES) templates.putIfAbsent(key, template);
+        return template;
+    }
+
+    private record Key(int status, String message, String errorKey) {
+    }
+
+    /**
+     * An error envelope encoded up to the timestamp and the value of its {@code errors} entry.
+     */
+    public static final class Template {
+
+        /* "status":..,"result":false,"errors":{"key":"   —   or the whole tail when there are no errors */
+        private final byte[] head;
+        /* "},"message":".."} */
+        private final byte[] tail;
+        private final boolean hasValue;
+
+        private Template(Key key) {
+            StringBuilder head = new StringBuilder("\"status\":").append(key.status()).append(",\"result\":false");
+            StringBuilder tail = new StringBuilder();
+            if (key.errorKey() != null) {
+                head.append(",\"errors\":{\"").append(quote(key.errorKey())).append("\":\"");
+                tail.append("\"}");
+            }
+            if (key.message() != null) tail.append(",\"message\":\"").append(quote(key.message())).append('"');
+            tail.append('}');
+            this.head = utf8(head);
+            this.tail = utf8(tail);
+            this.hasValue = key.errorKey() != null;
+        }
+
+        /**
+         * Writes the envelope of {@code c} (the classification this template was found for) with
+         * {@code timestamp}.
+         */
+        public void writeTo(OutputStream out, SerializableString timestamp, ExceptionClassifier.Classification c)
+                throws IOException {
+            out.write(OPEN_TIMESTAMP);
+            out.write(timestamp.asUnquotedUTF8());
+            out.write(CLOSE_TIMESTAMP);
+            out.write(head);
+            if (hasValue) out.write(quoteAsUTF8(c.errors().values().iterator().next()));
+            out.write(tail);
+        }
+
+        private static char[] quote(String text) {
+            return JsonStringEncoder.getInstance().quoteAsString(text);
+        }
+
+        private static byte[] quoteAsUTF8(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (Character.isSurrogate(text.charAt(i))) return utf8(new StringBuilder().append(quote(text)));
+            }
+            return JsonStringEncoder.getInstance().quoteAsUTF8(text);
+        }
+
+        /*
+         * Jackson's UTF-8 generator writes each surrogate char as an escape (uppercase hex) rather than encoding the
+         * code point, which getBytes would also turn into '?' when lone. The templates do the same, to keep the
+         * bytes of EnvelopeWriter#writeError.
+         */
+        private static byte[] utf8(CharSequence quoted) {
+            StringBuilder escaped = new StringBuilder(quoted.length());
+            for (int i = 0; i < quoted.length(); i++) {
+                char ch = quoted.charAt(i);
+                if (Character.isSurrogate(ch)) {
+                    escaped.append("\\u").append(HEX.toHexDigits(ch));
+                } else {
+                    escaped.append(ch);
+                }
+            }
+            return escaped.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.annotations.FluxMode;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Framing of the one-envelope-per-event formats. Each envelope is written as
+ * {@code prefix + json + delimiter}; the prefix tells data events apart from the terminal ones.
+ */
+enum EventFormat {
+
+    NDJSON(MediaType.APPLICATION_NDJSON, "", "", "", "\n"),
+    SSE(MediaType.TEXT_EVENT_STREAM, "data:", "event:complete\ndata:", "event:error\ndata:", "\n\n");
+
+    private final MediaType mediaType;
+    private final byte[] dataPrefix;
+    private final byte[] completePrefix;
+    private final byte[] errorPrefix;
+    private final byte[] delimiter;
+
+    EventFormat(MediaType mediaType, String dataPrefix, String completePrefix, String errorPrefix, String delimiter) {
+        this.mediaType = mediaType;
+        this.dataPrefix = dataPrefix.getBytes(StandardCharsets.UTF_8);
+        this.completePrefix = completePrefix.getBytes(StandardCharsets.UTF_8);
+        this.errorPrefix = errorPrefix.getBytes(StandardCharsets.UTF_8);
+        this.delimiter = delimiter.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the format fixed by {@code mode}, or {@code null} for the single-document modes.
+     */
+    static EventFormat of(FluxMode mode) {
+        return switch (mode) {
+            case NDJSON -> NDJSON;
+            case SSE -> SSE;
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns the event format the client asked for, or {@code null} when JSON (or anything else) is
+     * preferred. Wildcards count as JSON.
+     */
+    static EventFormat negotiate(Iterable<MediaType> requested) {
+        for (MediaType mediaType : requested) {
+            if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(mediaType)) return NDJSON;
+            if (MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(mediaType)) return SSE;
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) return null;
+        }
+        return null;
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    byte[] getDataPrefix() {
+        return dataPrefix;
+    }
+
+    byte[] getCompletePrefix() {
+        return completePrefix;
+    }
+
+    byte[] getErrorPrefix() {
+        return errorPrefix;
+    }
+
+    byte[] getDelimiter() {
+        return delimiter;
+    }
+}
@@ -0,0 +1,197 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.api.RawJson;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A sparse fieldset: the properties of {@code data} a client asked for, such as
+ * {@code id,name,address.city,items(sku,qty)}. A dotted path or a parenthesized group selects properties of a
+ * nested object, and applies to every element when the property is a collection or an array; a property named
+ * alone is written whole. Names are the serialized property (or map key) names; unknown names are ignored.
+ * <p>
+ * The projection is applied while {@code data} is serialized, through the bean serializers Jackson already
+ * caches per type: the properties left out are never read. Parsed projections are cached by their text.
+ */
+public final class FieldProjection {
+
+    /* Bounds the cache: field sets come from clients */
+    private static final int MAX_CACHED = 256;
+    private static final ConcurrentMap<String, FieldProjection> PARSED = new ConcurrentHashMap<>();
+
+    /* Selected names; a null value selects the whole property */
+    private final Map<String, FieldProjection> fields;
+    private final String text;
+
+    private FieldProjection(Map<String, FieldProjection> fields) {
+        this.fields = fields;
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, FieldProjection> field : fields.entrySet()) {
+            if (!text.isEmpty()) text.append(',');
+            text.append(field.getKey());
+            if (field.getValue() != null) text.append('(').append(field.getValue()).append(')');
+        }
+        this.text = text.toString();
+    }
+
+    /**
+     * Returns the projection described by {@code spec}, or {@code null} when it is {@code null} or blank.
+     *
+     * @throws IllegalArgumentException when {@code spec} is not a valid field list
+     */
+    public static FieldProjection parse(String spec) {
+        if (spec == null || spec.isBlank()) return null;
+        FieldProjection cached = PARSED.get(spec);
+        if (cached != null) return cached;
+        FieldProjection parsed = new Parser(spec).parse();
+        if (PARSED.size() < MAX_CACHED) PARSED.putIfAbsent(spec, parsed);
+        return parsed;
+    }
+
+    /** Whether the property {@code name} is written. */
+    public boolean includes(String name) {
+        return fields.containsKey(name);
+    }
+
+    /** Projection of the property {@code name}, or {@code null} when it is written whole (or not at all). */
+    public FieldProjection child(String name) {
+        return fields.get(name);
+    }
+
+    /**
+     * {@code data} as written through this projection: {@code null}, {@link RawJson} and {@link ApiResponse} are
+     * returned as they are, the elements of a {@link Truncated} list are projected one by one.
+     */
+    Object apply(Object data) {
+        if (data == null || data instanceof RawJson || data instanceof ApiResponse<?> || data instanceof Projected) {
+            return data;
+        }
+        if (data instanceof Truncated truncated) {
+            return new Truncated(truncated.data().stream().map(this::apply).toList(), truncated.next());
+        }
+        return new Projected(data, this);
+    }
+
+    /** Applies this projection to each element of {@code elements} as it is pulled. */
+    Iterator<?> applyEach(Iterator<?> elements) {
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return elements.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return apply(elements.next());
+            }
+        };
+    }
+
+    /**
+     * Canonical form of the projection, with names sorted and groups merged: {@code b.x,a,b.y} becomes
+     * {@code a,b(x,y)}.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FieldProjection other && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    private static FieldProjection union(FieldProjection a, FieldProjection b) {
+        if (a == null || b == null) return null;
+        Map<String, FieldProjection> fields = new TreeMap<>(a.fields);
+        b.fields.forEach((name, child) -> add(fields, name, child));
+        return new FieldProjection(fields);
+    }
+
+    private static void add(Map<String, FieldProjection> fields, String name, FieldProjection child) {
+        if (fields.containsKey(name)) {
+            fields.put(name, union(fields.get(name), child));
+        } else {
+            fields.put(name, child);
+        }
+    }
+
+    /**
+     * {@code list := item (',' item)*}, {@code item := name ('.' item | '(' list ')')?}; blanks around names
+     * are ignored.
+     */
+    private static final class Parser {
+
+        private final String spec;
+        private int pos;
+
+        Parser(String spec) {
+            this.spec = spec;
+        }
+
+        FieldProjection parse() {
+            Map<String, FieldProjection> fields = list();
+            skipBlanks();
+            if (pos < spec.length()) throw invalid("unexpected '" + spec.charAt(pos) + "'");
+            return new FieldProjection(fields);
+        }
+
+        private Map<String, FieldProjection> list() {
+            Map<String, FieldProjection> fields = new TreeMap<>();
+            do {
+                item(fields);
+            } while (accept(','));
+            return fields;
+        }
+
+        private void item(Map<String, FieldProjection> fields) {
+            String name = name();
+            FieldProjection child = null;
+            if (accept('.')) {
+                Map<String, FieldProjection> nested = new TreeMap<>();
+                item(nested);
+                child = new FieldProjection(nested);
+            } else if (accept('(')) {
+                child = new FieldProjection(list());
+                if (!accept(')')) throw invalid("missing ')'");
+            }
+            add(fields, name, child);
+        }
+
+        private String name() {
+            skipBlanks();
+            int start = pos;
+            while (pos < spec.length() && ",.()".indexOf(spec.charAt(pos)) < 0) pos++;
+            String name = spec.substring(start, pos).trim();
+            if (name.isEmpty()) throw invalid("field name expected at " + start);
+            return name;
+        }
+
+        private boolean accept(char c) {
+            skipBlanks();
+            if (pos < spec.length() && spec.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipBlanks() {
+            while (pos < spec.length() && Character.isWhitespace(spec.charAt(pos))) pos++;
+        }
+
+        private IllegalArgumentException invalid(String reason) {
+            return new IllegalArgumentException("Invalid field list '" + spec + "': " + reason);
+        }
+    }
+}
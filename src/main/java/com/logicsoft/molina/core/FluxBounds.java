@@ -0,0 +1,40 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.annotations.Bounded;
+
+/**
+ * Effective bounds of a collected {@code Flux}: the global settings, overridden by the {@link Bounded}
+ * attributes a handler sets.
+ *
+ * @param maxElements maximum number of elements, 0 for no bound
+ * @param maxBytes    maximum estimated size of the encoded elements, 0 for no bound
+ * @param overflow    {@link Bounded.Overflow#TRUNCATE} or {@link Bounded.Overflow#REJECT}
+ * @param cursor      element property giving the {@code next} cursor of a truncated envelope, or empty
+ */
+public record FluxBounds(long maxElements, long maxBytes, Bounded.Overflow overflow, String cursor) {
+
+    public static final FluxBounds UNBOUNDED = new FluxBounds(0, 0, Bounded.Overflow.REJECT, "");
+
+    public FluxBounds {
+        maxElements = Math.max(0, maxElements);
+        maxBytes = Math.max(0, maxBytes);
+        if (overflow == null || overflow == Bounded.Overflow.DEFAULT) overflow = Bounded.Overflow.REJECT;
+        if (cursor == null) cursor = "";
+    }
+
+    public boolean isBounded() {
+        return maxElements > 0 || maxBytes > 0;
+    }
+
+    /**
+     * These bounds with the attributes {@code handler} sets; {@code this} when it is {@code null}.
+     */
+    public FluxBounds with(Bounded handler) {
+        if (handler == null) return this;
+        return new FluxBounds(
+                (handler.maxElements() >= 0) ? handler.maxElements() : maxElements,
+                (handler.maxBytes() >= 0) ? handler.maxBytes() : maxBytes,
+                (handler.overflow() != Bounded.Overflow.DEFAULT) ? handler.overflow() : overflow,
+                handler.cursor().isEmpty() ? cursor : handler.cursor());
+    }
+}
@@ -0,0 +1,287 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.annotations.Bounded;
+import com.logicsoft.molina.annotations.Cached;
+import com.logicsoft.molina.annotations.Coalesced;
+import com.logicsoft.molina.annotations.FluxMode;
+import com.logicsoft.molina.annotations.Limited;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.api.Versioned;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * Immutable, precomputed view of a {@link ResponseHandler} handler method. Built once per method by
+ * {@link HandlerDescriptorRegistry} so the request path never touches annotations or generics.
+ */
+public final class HandlerDescriptor {
+
+    private static final boolean reactorPresent =
+            ClassUtils.isPresent("reactor.core.publisher.Mono", HandlerDescriptor.class.getClassLoader());
+
+    /**
+     * Shape of the declared return type. {@code SEQUENCE} is a {@code Stream}, {@code Iterator} or a plain
+     * {@code Iterable} (not a collection) that MVC writes element by element.
+     */
+    public enum Kind { PLAIN, MONO, FLUX, WRAPPED, SEQUENCE }
+
+    /** How the envelope is written for this handler. */
+    public enum Writer { ENVELOPE, STREAM, EVENTS }
+
+    private final Method method;
+    private final int status;
+    private final boolean result;
+    private final FluxMode fluxMode;
+    private final int batchSize;
+    private final long batchTimeoutMillis;
+    private final Cached cache;
+    private final Bounded bounds;
+    private final Coalesced coalesce;
+    private final Limited limit;
+    private final boolean etag;
+    private final long timeoutMillis;
+    private final FieldProjection fields;
+    private final Kind kind;
+    private final ResolvableType dataType;
+    private final boolean async;
+    private final Writer writer;
+    private final boolean invalidReactiveType;
+    private final BufferSizePredictor bufferSizes = new BufferSizePredictor();
+
+    private HandlerDescriptor(Method method, ResponseHandler ann) {
+        this.method = method;
+        this.status = ann.status();
+        this.result = ann.result();
+        this.fluxMode = ann.flux();
+        this.batchSize = Math.max(1, ann.batchSize());
+        this.batchTimeoutMillis = Math.max(0, ann.batchTimeoutMillis());
+        this.cache = (ann.cache().ttlMillis() > 0) ? ann.cache() : null;
+        Bounded b = ann.bounds();
+        this.bounds = (b.maxElements() >= 0 || b.maxBytes() >= 0 || b.overflow() != Bounded.Overflow.DEFAULT
+                || !b.cursor().isEmpty()) ? b : null;
+        this.coalesce = ann.coalesce().enabled() ? ann.coalesce() : null;
+        this.limit = ann.limit().enabled() ? ann.limit() : null;
+        this.etag = ann.etag();
+        this.timeoutMillis = Math.max(0, ann.timeoutMillis());
+        this.fields = FieldProjection.parse(ann.fields());
+
+        // CompletionStage<T>, Callable<T>, DeferredResult<T>...: the envelope wraps the T they complete with
+        ResolvableType declared = ResolvableType.forMethodReturnType(method);
+        ResolvableType rt = asyncValueType(declared);
+        this.async = (rt != declared);
+        this.kind = kindOf(rt.toClass());
+        this.dataType = dataTypeOf(rt, kind);
+        this.invalidReactiveType = (kind == Kind.MONO || kind == Kind.FLUX) && isPublisher(rt.getGeneric(0).toClass());
+        this.writer = (kind == Kind.SEQUENCE) ? Writer.STREAM : (kind != Kind.FLUX) ? Writer.ENVELOPE : switch (fluxMode) {
+            case STREAM -> Writer.STREAM;
+            case NDJSON, SSE -> Writer.EVENTS;
+            default -> Writer.ENVELOPE;
+        };
+    }
+
+    /**
+     * Returns the descriptor for {@code method}, or {@code null} when neither the method nor its declaring
+     * class carries {@link ResponseHandler}. Annotations are looked up as Spring MVC and WebFlux find handler
+     * annotations: on the interfaces and superclasses of the method as well, and as meta-annotations.
+     */
+    static HandlerDescriptor of(Method method) {
+        ResponseHandler ann = AnnotatedElementUtils.findMergedAnnotation(method, ResponseHandler.class);
+        if (ann == null) {
+            ann = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), ResponseHandler.class);
+        }
+        return (ann != null) ? new HandlerDescriptor(method, ann) : null;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isResult() {
+        return result;
+    }
+
+    public FluxMode getFluxMode() {
+        return fluxMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getBatchTimeoutMillis() {
+        return batchTimeoutMillis;
+    }
+
+    /** Response cache settings, or {@code null} when the handler is not cached. */
+    public Cached getCache() {
+        return cache;
+    }
+
+    /** Bounds of a collected {@code Flux}, or {@code null} when the handler keeps the global ones. */
+    public Bounded getBounds() {
+        return bounds;
+    }
+
+    /** Request coalescing settings, or {@code null} when the handler does not coalesce. */
+    public Coalesced getCoalesce() {
+        return coalesce;
+    }
+
+    /** Concurrency limit settings, or {@code null} when the handler is not limited. */
+    public Limited getLimit() {
+        return limit;
+    }
+
+    /** Whether responses carry an ETag hashed over the envelope. */
+    public boolean isEtag() {
+        return etag;
+    }
+
+    /** Time budget of a response in milliseconds, 0 for none. */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /** Projection applied when the request names no fields, or {@code null} to write {@code data} whole. */
+    public FieldProjection getFields() {
+        return fields;
+    }
+
+    /**
+     * Projection of a request: the one {@code requested} (the value of the fields parameter, or {@code null})
+     * describes, else the handler's default.
+     *
+     * @throws IllegalArgumentException when {@code requested} is not a valid field list
+     */
+    public FieldProjection fields(String requested) {
+        FieldProjection parsed = FieldProjection.parse(requested);
+        return (parsed != null) ? parsed : fields;
+    }
+
+    /**
+     * Budget of a request in milliseconds: the handler's timeout, shortened by {@code requested} (the value of
+     * the request deadline header, in milliseconds, or {@code null}); 0 when there is none. Unparsable or
+     * non-positive header values are ignored.
+     */
+    public long budgetMillis(String requested) {
+        long header = 0;
+        if (requested != null) {
+            try {
+                header = Math.max(0, Long.parseLong(requested.trim()));
+            } catch (NumberFormatException ignored) {
+                // Not a deadline we understand: keep the handler's own
+            }
+        }
+        if (header == 0) return timeoutMillis;
+        return (timeoutMillis == 0) ? header : Math.min(header, timeoutMillis);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Declared type of {@code data}, or of each element for {@code FLUX} and {@code SEQUENCE}, with
+     * {@code Versioned} unwrapped; {@link ResolvableType#NONE} when it cannot be resolved.
+     */
+    public ResolvableType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * {@code true} when the method returns a {@code CompletionStage}, {@code Callable}, {@code DeferredResult}
+     * or {@code WebAsyncTask}; {@link #getKind()} then describes the value it completes with.
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * {@code true} when the method blocks the calling thread to produce its value, i.e. it is neither async
+     * nor reactive. {@code SEQUENCE} methods are excluded: their source may be bound to the calling thread
+     * (an open transaction, a cursor).
+     */
+    public boolean isBlocking() {
+        return !async && (kind == Kind.PLAIN || kind == Kind.WRAPPED);
+    }
+
+    public Writer getWriter() {
+        return writer;
+    }
+
+    /** Recent envelope sizes of this handler, used to size the response buffer. */
+    public BufferSizePredictor getBufferSizes() {
+        return bufferSizes;
+    }
+
+    /** {@code true} for {@code Mono<Flux<T>>}, {@code Flux<Mono<T>>} and similar nestings. */
+    public boolean isInvalidReactiveType() {
+        return invalidReactiveType;
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerDescriptor[" + method.getDeclaringClass().getSimpleName() + "#" + method.getName()
+                + ", status=" + status + ", kind=" + kind + (async ? " (async)" : "") + ", writer=" + writer + "]";
+    }
+
+    private static ResolvableType asyncValueType(ResolvableType type) {
+        Class<?> raw = type.toClass();
+        if (CompletionStage.class.isAssignableFrom(raw)) return type.as(CompletionStage.class).getGeneric(0);
+        if (Callable.class.isAssignableFrom(raw)) return type.as(Callable.class).getGeneric(0);
+        if (DeferredResult.class.isAssignableFrom(raw)) return type.as(DeferredResult.class).getGeneric(0);
+        if (WebAsyncTask.class.isAssignableFrom(raw)) return type.as(WebAsyncTask.class).getGeneric(0);
+        return type;
+    }
+
+    private static ResolvableType dataTypeOf(ResolvableType type, Kind kind) {
+        ResolvableType data = switch (kind) {
+            case MONO, FLUX -> type.getGeneric(0);
+            case WRAPPED -> type.as(ApiResponse.class).getGeneric(0);
+            case SEQUENCE -> Stream.class.isAssignableFrom(type.toClass()) ? type.as(Stream.class).getGeneric(0)
+                    : Iterator.class.isAssignableFrom(type.toClass()) ? type.as(Iterator.class).getGeneric(0)
+                    : type.as(Iterable.class).getGeneric(0);
+            case PLAIN -> type;
+        };
+        return Versioned.class.isAssignableFrom(data.toClass()) ? data.as(Versioned.class).getGeneric(0) : data;
+    }
+
+    private static Kind kindOf(Class<?> raw) {
+        if (ApiResponse.class.isAssignableFrom(raw)) return Kind.WRAPPED;
+        if (Stream.class.isAssignableFrom(raw) || Iterator.class.isAssignableFrom(raw) || raw == Iterable.class) {
+            return Kind.SEQUENCE;
+        }
+        if (reactorPresent && ReactorTypes.isMono(raw)) return Kind.MONO;
+        if (reactorPresent && ReactorTypes.isFlux(raw)) return Kind.FLUX;
+        return Kind.PLAIN;
+    }
+
+    private static boolean isPublisher(Class<?> c) {
+        return reactorPresent && (ReactorTypes.isMono(c) || ReactorTypes.isFlux(c));
+    }
+
+    /* Keeps the Reactor references out of the constant pool of MVC-only applications. */
+    private static final class ReactorTypes {
+        static boolean isMono(Class<?> c) {
+            return c != null && reactor.core.publisher.Mono.class.isAssignableFrom(c);
+        }
+
+        static boolean isFlux(Class<?> c) {
+            return c != null && reactor.core.publisher.Flux.class.isAssignableFrom(c);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.logicsoft.molina.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free lookup of {@link HandlerDescriptor}s by handler method. Populated eagerly from the
+ * request mappings at startup; methods that were not known then (exception handlers, late
+ * registrations) are resolved once on first use and cached, including negative results.
+ */
+public class HandlerDescriptorRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerDescriptorRegistry.class);
+
+    private static final Object NONE = new Object();
+
+    private final ConcurrentMap<Method, Object> descriptors = new ConcurrentHashMap<>(256);
+    private final List<Consumer<HandlerDescriptor>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the descriptor for the method behind {@code returnType}, or {@code null} when the method
+     * is not a {@code @ResponseHandler} method.
+     */
+    public HandlerDescriptor find(MethodParameter returnType) {
+        Method method = returnType.getMethod();
+        return (method != null) ? find(method) : null;
+    }
+
+    public HandlerDescriptor find(Method method) {
+        Object d = descriptors.get(method);
+        if (d == null) d = create(method);
+        return (d != NONE) ? (HandlerDescriptor) d : null;
+    }
+
+    public void registerAll(Collection<HandlerMethod> handlerMethods) {
+        int count = 0;
+        for (HandlerMethod hm : handlerMethods) {
+            if (find(hm.getMethod()) != null) count++;
+        }
+        log.debug("[Molina] {} @ResponseHandler method(s) precomputed", count);
+    }
+
+    /**
+     * Returns the descriptors created so far.
+     */
+    public Collection<HandlerDescriptor> getDescriptors() {
+        List<HandlerDescriptor> result = new ArrayList<>();
+        for (Object d : descriptors.values()) {
+            if (d != NONE) result.add((HandlerDescriptor) d);
+        }
+        return result;
+    }
+
+    /**
+     * Calls {@code listener} for every descriptor already created and for each one created later, so
+     * per-endpoint resources can be set up once, outside the request path.
+     */
+    public void addListener(Consumer<HandlerDescriptor> listener) {
+        listeners.add(listener);
+        getDescriptors().forEach(listener);
+    }
+
+    /**
+     * Builds the descriptor outside the map and publishes it with {@code putIfAbsent}: listeners run only for the
+     * instance that won, and never under the map's locks, since they may be slow or look descriptors up themselves.
+     */
+    private Object create(Method method) {
+        HandlerDescriptor d = HandlerDescriptor.of(method);
+        Object created = (d != null) ? d : NONE;
+        Object existing = descriptors.putIfAbsent(method, created);
+        if (existing != null) return existing;
+        if (d == null) return NONE;
+        if (d.isInvalidReactiveType()) {
+            log.error("⚠️ Invalid reactive return type: {}. Avoid Mono<Flux<T>> or Flux<Mono<T>>.",
+                    method.getGenericReturnType());
+        }
+        for (Consumer<HandlerDescriptor> listener : listeners) {
+            listener.accept(d);
+        }
+        return d;
+    }
+}
@@ -0,0 +1,58 @@
+package com.logicsoft.molina.core;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.lang.NonNull;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+
+/**
+ * {@link RequestMappingHandlerAdapter} that runs blocking {@code @ResponseHandler} methods on an
+ * {@link AsyncTaskExecutor} (virtual threads by default) instead of the servlet container thread.
+ * <p>
+ * Arguments are still resolved and validated on the container thread; only the method body is handed to the
+ * executor, as a {@link WebAsyncTask}. The container thread is released while it runs, and the result comes
+ * back through the async dispatch: the envelope is written by {@link ApiResponseMvcAdvice}, and exceptions reach
+ * the {@code @ExceptionHandler} advices, as on the synchronous path. {@code Callable}/{@code DeferredResult}/
+ * {@code CompletionStage}, reactive and {@code Stream} methods keep their own threading.
+ */
+public class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+
+    /** Name of an {@link AsyncTaskExecutor} bean that replaces the default virtual-thread executor. */
+    public static final String EXECUTOR_BEAN_NAME = "molinaHandlerExecutor";
+
+    private final HandlerDescriptorRegistry descriptors;
+    private final AsyncTaskExecutor executor;
+
+    public OffloadingHandlerAdapter(HandlerDescriptorRegistry descriptors, AsyncTaskExecutor executor) {
+        this.descriptors = descriptors;
+        this.executor = executor;
+    }
+
+    @Override
+    @NonNull
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(@NonNull HandlerMethod handlerMethod) {
+        HandlerDescriptor descriptor = descriptors.find(handlerMethod.getMethod());
+        return (descriptor != null && descriptor.isBlocking())
+                ? new OffloadedHandlerMethod(handlerMethod)
+                : super.createInvocableHandlerMethod(handlerMethod);
+    }
+
+    private final class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+            super(handlerMethod);
+        }
+
+        /**
+         * Called with the resolved arguments; returns the invocation as a task, which Spring MVC starts on
+         * {@link #executor} under the async request timeout. The concurrent result is then handled by a
+         * wrapper of this method, so the task is not offloaded again.
+         */
+        @Override
+        protected Object doInvoke(Object... args) {
+            return new WebAsyncTask<>(null, executor, () -> super.doInvoke(args));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializer;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@code data} to be written through a {@link FieldProjection}. Serialized with any mapper, so it can stand for
+ * {@code data} in the envelope writers, in elements of streamed bodies and in envelopes handed to the converters.
+ */
+@JsonSerialize(using = Projected.Serializer.class)
+record Projected(Object data, FieldProjection fields) {
+
+    /**
+     * Writes the selected properties of beans, maps and {@code JsonNode} objects, projecting each element of
+     * collections and arrays the same way. Other values (scalars, values with their own serializer) are written
+     * whole.
+     */
+    public static final class Serializer extends StdSerializer<Projected> {
+
+        public Serializer() {
+            super(Projected.class);
+        }
+
+        @Override
+        public void serialize(Projected value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            write(value.data(), value.fields(), gen, provider);
+        }
+
+        private void write(Object value, FieldProjection fields, JsonGenerator gen, SerializerProvider provider)
+                throws IOException {
+            if (value == null) {
+                provider.defaultSerializeNull(gen);
+            } else if (fields == null) {
+                provider.defaultSerializeValue(value, gen);
+            } else if (value instanceof JsonNode node) {
+                writeNode(node, fields, gen, provider);
+            } else if (value instanceof Map<?, ?> map) {
+                gen.writeStartObject(map);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    String name = String.valueOf(entry.getKey());
+                    if (!fields.includes(name)) continue;
+                    gen.writeFieldName(name);
+                    write(entry.getValue(), fields.child(name), gen, provider);
+                }
+                gen.writeEndObject();
+            } else if (value instanceof Collection<?> elements) {
+                gen.writeStartArray(elements, elements.size());
+                for (Object element : elements) write(element, fields, gen, provider);
+                gen.writeEndArray();
+            } else if (value instanceof Object[] elements) {
+                gen.writeStartArray(elements, elements.length);
+                for (Object element : elements) write(element, fields, gen, provider);
+                gen.writeEndArray();
+            } else {
+                JsonSerializer<Object> serializer = provider.findValueSerializer(value.getClass(), null);
+                if (serializer instanceof BeanSerializer bean) {
+                    writeBean(value, bean, fields, gen, provider);
+                } else {
+                    serializer.serialize(value, gen, provider);
+                }
+            }
+        }
+
+        /**
+         * Properties written whole go through their own writer, keeping its inclusion rules and serializer;
+         * projected ones are read and written here.
+         */
+        private void writeBean(Object bean, BeanSerializer serializer, FieldProjection fields, JsonGenerator gen,
+                               SerializerProvider provider) throws IOException {
+            gen.writeStartObject(bean);
+            for (Iterator<PropertyWriter> it = serializer.properties(); it.hasNext(); ) {
+                PropertyWriter property = it.next();
+                String name = property.getName();
+                if (!fields.includes(name)) continue;
+                try {
+                    FieldProjection child = fields.child(name);
+                    Object value = (child != null && property instanceof BeanPropertyWriter writer)
+                            ? writer.get(bean) : null;
+                    if (value == null) {
+                        property.serializeAsField(bean, gen, provider);
+                    } else {
+                        gen.writeFieldName(((BeanPropertyWriter) property).getSerializedName());
+                        write(value, child, gen, provider);
+                    }
+                } catch (Exception e) {
+                    wrapAndThrow(provider, e, bean, name);
+                }
+            }
+            gen.writeEndObject();
+        }
+
+        private void writeNode(JsonNode node, FieldProjection fields, JsonGenerator gen, SerializerProvider provider)
+                throws IOException {
+            if (node.isObject()) {
+                gen.writeStartObject(node);
+                for (Map.Entry<String, JsonNode> field : node.properties()) {
+                    if (!fields.includes(field.getKey())) continue;
+                    gen.writeFieldName(field.getKey());
+                    write(field.getValue(), fields.child(field.getKey()), gen, provider);
+                }
+                gen.writeEndObject();
+            } else if (node.isArray()) {
+                gen.writeStartArray(node, node.size());
+                for (JsonNode element : node) write(element, fields, gen, provider);
+                gen.writeEndArray();
+            } else {
+                provider.defaultSerializeValue(node, gen);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.annotations.Coalesced;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight registry of pending {@link Coalesced} requests. The first request of a key subscribes its own
+ * work; identical requests arriving while it is pending get the same {@code Mono}. The shared subscription is
+ * reference-counted: it is cancelled only when every request waiting on it has gone away, and the key is
+ * released as the work signals its result, before delivering it, so a result is never reused after it was delivered.
+ */
+final class RequestCoalescer {
+
+    private final ConcurrentMap<Key, Mono<?>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Key of {@code request} to {@code handler}, built from the {@link Coalesced} settings of the handler and
+     * the projection of the request: requests for different fields do not share an envelope.
+     */
+    static Key key(HandlerDescriptor handler, ServerHttpRequest request, FieldProjection fields) {
+        Coalesced spec = handler.getCoalesce();
+        String[] names = spec.headers();
+        List<String> values = List.of();
+        if (names.length > 0) {
+            String[] v = new String[names.length];
+            for (int i = 0; i < names.length; i++) v[i] = request.getHeaders().getFirst(names[i]);
+            values = Arrays.asList(v);
+        }
+        return new Key(handler.getMethod(), request.getURI().getRawPath(),
+                spec.query() ? request.getURI().getRawQuery() : null, values, fields);
+    }
+
+    /**
+     * Returns the pending {@code Mono} of {@code key}, or registers the one built by {@code work} and returns
+     * it. {@code work} is not called when the key is pending.
+     *
+     * @param joined called when the request joins a pending one instead of starting its own
+     */
+    @SuppressWarnings("unchecked")
+    <T> Mono<T> join(Key key, Supplier<Mono<T>> work, Runnable joined) {
+        Mono<T> existing = (Mono<T>) pending.get(key);
+        if (existing != null) {
+            joined.run();
+            return existing;
+        }
+        Object[] self = new Object[1];
+        Runnable release = () -> pending.remove(key, self[0]);
+        // Released before the value or error reaches the waiting requests: a request arriving once they have it
+        // must run its own work, not subscribe to a terminated one
+        Mono<T> shared = work.get()
+                .doOnEach(signal -> release.run())
+                .doOnCancel(release)
+                .flux()
+                .publish()
+                .refCount(1)
+                .singleOrEmpty();
+        self[0] = shared;
+        existing = (Mono<T>) pending.putIfAbsent(key, shared);
+        if (existing != null) {
+            joined.run();
+            return existing;
+        }
+        return shared;
+    }
+
+    record Key(Method handler, String path, String query, List<String> headers, FieldProjection fields) {
+    }
+}
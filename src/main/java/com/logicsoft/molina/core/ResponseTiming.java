@@ -0,0 +1,181 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.metrics.EnvelopeEvent;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Phase timings of one wrapped response: {@code handler} (the request reaching the handler until it returned),
+ * {@code pipeline} (until its {@code Mono} / {@code Flux} produced the value, WebFlux only), {@code wrap}
+ * (building the envelope) and {@code encode} (serializing it). They are reported in the {@code Server-Timing}
+ * header when it is enabled, and as an {@link EnvelopeEvent} while a Flight Recorder recording has the event
+ * enabled.
+ * <p>
+ * When neither is on, {@link #start} returns {@link #OFF}, whose methods do nothing: the cost of an unobserved
+ * response is one check. Phases that were not measured are left out of the header.
+ */
+public final class ResponseTiming {
+
+    public static final String HEADER = "Server-Timing";
+
+    /** Request (MVC) or exchange (WebFlux) attribute holding the {@link System#nanoTime()} the handler started. */
+    public static final String START_ATTRIBUTE = ResponseTiming.class.getName() + ".START";
+
+    /** Timing of a response nobody observes. */
+    public static final ResponseTiming OFF = new ResponseTiming(null, Long.MIN_VALUE, Long.MIN_VALUE, false, null);
+
+    private static final boolean jfrPresent =
+            ClassUtils.isPresent("jdk.jfr.Event", ResponseTiming.class.getClassLoader());
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final HandlerDescriptor handler;
+    private final long handlerStart;
+    private final long returned;
+    private final boolean header;
+    private final Object event;
+    private long ready = UNSET;
+    private long encodeStart = UNSET;
+    private long encodeEnd = UNSET;
+    private long elements;
+
+    private ResponseTiming(HandlerDescriptor handler, long handlerStart, long returned, boolean header,
+                           Object event) {
+        this.handler = handler;
+        this.handlerStart = handlerStart;
+        this.returned = returned;
+        this.header = header;
+        this.event = event;
+    }
+
+    /**
+     * Whether responses are timed at all: {@code header} is set or a recording has the event enabled. Lets the
+     * handler start be stamped only when someone will read it.
+     */
+    public static boolean isActive(boolean header) {
+        return header || (jfrPresent && Jfr.isEnabled());
+    }
+
+    /**
+     * Starts timing the response of {@code handler}, whose handler method has just returned.
+     *
+     * @param header       whether the {@code Server-Timing} header is written
+     * @param handlerStart value of {@link #START_ATTRIBUTE}, or {@code null} when the handler start is unknown
+     */
+    public static ResponseTiming start(HandlerDescriptor handler, boolean header, Object handlerStart) {
+        Object event = jfrPresent ? Jfr.begin() : null;
+        if (!header && event == null) return OFF;
+        return new ResponseTiming(handler, (handlerStart instanceof Long start) ? start : UNSET, System.nanoTime(),
+                header, event);
+    }
+
+    /** The handler's {@code Mono} / {@code Flux} produced the value; the time since it returned is the pipeline. */
+    public void ready() {
+        if (this != OFF) ready = System.nanoTime();
+    }
+
+    /** Counts the elements of {@code data}: the size of a collection or array, 1 for a value, 0 for none. */
+    public void data(Object data) {
+        if (this == OFF) return;
+        if (data == null) {
+            elements = 0;
+        } else if (data instanceof Collection<?> collection) {
+            elements = collection.size();
+        } else if (data instanceof Truncated truncated) {
+            elements = truncated.data().size();
+        } else if (data.getClass().isArray()) {
+            elements = Array.getLength(data);
+        } else {
+            elements = 1;
+        }
+    }
+
+    /** Serialization starts; wrapping ends. */
+    public void encoding() {
+        if (this != OFF) encodeStart = System.nanoTime();
+    }
+
+    /** Serialization ends. */
+    public void encoded() {
+        if (this != OFF && encodeStart != UNSET) encodeEnd = System.nanoTime();
+    }
+
+    /**
+     * Sets the {@code Server-Timing} header with the phases measured so far, when it is enabled. Call it before
+     * the response is committed.
+     */
+    public void setHeader(HttpHeaders headers) {
+        if (!header) return;
+        long now = System.nanoTime();
+        StringBuilder value = new StringBuilder(96);
+        if (handlerStart != UNSET) phase(value, "handler", returned - handlerStart);
+        if (ready != UNSET) phase(value, "pipeline", ready - returned);
+        phase(value, "wrap", wrapNanos(now));
+        if (encodeEnd != UNSET) phase(value, "encode", encodeEnd - encodeStart);
+        headers.set(HEADER, value.toString());
+    }
+
+    /**
+     * Emits the {@link EnvelopeEvent}, when recorded.
+     *
+     * @param bytes encoded size of the envelope, or {@code -1} when it is not known
+     */
+    public void commit(int status, long bytes) {
+        if (event == null) return;
+        Method method = handler.getMethod();
+        Jfr.commit(event, method.getDeclaringClass().getSimpleName() + "." + method.getName(), status, elements,
+                bytes, (handlerStart != UNSET) ? returned - handlerStart : 0, (ready != UNSET) ? ready - returned : 0,
+                wrapNanos(System.nanoTime()), (encodeEnd != UNSET) ? encodeEnd - encodeStart : 0);
+    }
+
+    /* From the value being available until serialization started, or until now when it has not */
+    private long wrapNanos(long now) {
+        return ((encodeStart != UNSET) ? encodeStart : now) - ((ready != UNSET) ? ready : returned);
+    }
+
+    /* name;dur=12.345, with the duration in milliseconds */
+    private static void phase(StringBuilder value, String name, long nanos) {
+        long micros = Math.max(0, nanos) / 1_000;
+        if (!value.isEmpty()) value.append(", ");
+        value.append(name).append(";dur=").append(micros / 1_000).append('.');
+        long fraction = micros % 1_000;
+        if (fraction < 100) value.append('0');
+        if (fraction < 10) value.append('0');
+        value.append(fraction);
+    }
+
+    /* Keeps the jdk.jfr references out of the constant pool of runtimes without the module. */
+    private static final class Jfr {
+
+        static boolean isEnabled() {
+            return new EnvelopeEvent().isEnabled();
+        }
+
+        static Object begin() {
+            EnvelopeEvent event = new EnvelopeEvent();
+            if (!event.isEnabled()) return null;
+            event.begin();
+            return event;
+        }
+
+        static void commit(Object started, String handler, int status, long elements, long bytes, long handlerTime,
+                           long pipelineTime, long wrapTime, long encodeTime) {
+            EnvelopeEvent event = (EnvelopeEvent) started;
+            event.end();
+            if (!event.shouldCommit()) return;
+            event.handler = handler;
+            event.status = status;
+            event.elements = elements;
+            event.bytes = bytes;
+            event.handlerTime = handlerTime;
+            event.pipelineTime = pipelineTime;
+            event.wrapTime = wrapTime;
+            event.encodeTime = encodeTime;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.logicsoft.molina.core;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Stamps the moment a request reaches its handler method, the start of the {@code handler} phase of
+ * {@link ResponseTiming}. Only while responses are timed; an async dispatch keeps the first stamp.
+ */
+public class ResponseTimingInterceptor implements HandlerInterceptor {
+
+    private final boolean serverTiming;
+
+    /**
+     * @param serverTiming whether the {@code Server-Timing} header is written
+     */
+    public ResponseTimingInterceptor(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                             @NonNull Object handler) {
+        if (handler instanceof HandlerMethod && ResponseTiming.isActive(serverTiming)
+                && request.getAttribute(ResponseTiming.START_ATTRIBUTE) == null) {
+            request.setAttribute(ResponseTiming.START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+}
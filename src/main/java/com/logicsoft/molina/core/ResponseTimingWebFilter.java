@@ -0,0 +1,32 @@
+package com.logicsoft.molina.core;
+
+import org.springframework.lang.NonNull;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stamps the moment an exchange is handed to the dispatcher, the start of the {@code handler} phase of
+ * {@link ResponseTiming}. Only while responses are timed.
+ */
+public class ResponseTimingWebFilter implements WebFilter {
+
+    private final boolean serverTiming;
+
+    /**
+     * @param serverTiming whether the {@code Server-Timing} header is written
+     */
+    public ResponseTimingWebFilter(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        if (ResponseTiming.isActive(serverTiming)) {
+            exchange.getAttributes().put(ResponseTiming.START_ATTRIBUTE, System.nanoTime());
+        }
+        return chain.filter(exchange);
+    }
+}
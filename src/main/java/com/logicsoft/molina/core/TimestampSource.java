@@ -0,0 +1,31 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.time.Instant;
+
+/**
+ * Source of envelope timestamps. Besides the {@link Instant} used for {@code ApiResponse#timestamp},
+ * it exposes the ISO-8601 text already encoded, so the envelope writers can splice it in instead of
+ * formatting it on every response.
+ */
+public interface TimestampSource {
+
+    Instant now();
+
+    /**
+     * The ISO-8601 form of {@link #now()} (the same text Jackson writes for an {@link Instant}), without
+     * the surrounding quotes.
+     */
+    default SerializableString encodedNow() {
+        return new SerializedString(now().toString());
+    }
+
+    /**
+     * Uncached source backed by {@link Instant#now()}.
+     */
+    static TimestampSource system() {
+        return Instant::now;
+    }
+}
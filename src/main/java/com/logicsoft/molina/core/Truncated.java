@@ -0,0 +1,12 @@
+package com.logicsoft.molina.core;
+
+import java.util.List;
+
+/**
+ * The elements of a collected {@code Flux} that fit its bounds. {@link EnvelopeWriter} writes them as
+ * {@code data}, followed by {@code "message":"Result truncated"} and the {@code next} cursor.
+ */
+record Truncated(List<?> data, String next) {
+
+    static final String MESSAGE = "Result truncated";
+}
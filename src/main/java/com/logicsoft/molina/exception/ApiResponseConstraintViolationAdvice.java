@@ -1,48 +1,84 @@
 package com.logicsoft.molina.exception;
 
 import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.core.EnvelopeFormat;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.HeaderContentNegotiationStrategy;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
-
-import java.time.Instant;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @RestControllerAdvice
 public class ApiResponseConstraintViolationAdvice {
 
+    private static final HeaderContentNegotiationStrategy ACCEPT = new HeaderContentNegotiationStrategy();
+
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+    private final ExceptionClassifier classifier;
+
+    public ApiResponseConstraintViolationAdvice() {
+        this(TimestampSource.system());
+    }
+
+    public ApiResponseConstraintViolationAdvice(TimestampSource timestamps) {
+        this(timestamps, ResponseHandlerMetrics.NOOP);
+    }
+
+    public ApiResponseConstraintViolationAdvice(TimestampSource timestamps, ResponseHandlerMetrics metrics) {
+        this(timestamps, metrics, ExceptionClassifier.defaults());
+    }
+
+    public ApiResponseConstraintViolationAdvice(TimestampSource timestamps, ResponseHandlerMetrics metrics,
+                                                ExceptionClassifier classifier) {
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+        this.classifier = classifier;
+    }
+
     @ExceptionHandler(ConstraintViolationException.class)
-    public Object handleConstraintViolation(ConstraintViolationException ex, HttpServletResponse response) {
-        Map<String, String> violations = ex.getConstraintViolations().stream()
-                .collect(Collectors.toMap(
-                        v -> leafName(v.getPropertyPath().toString()),
-                        ConstraintViolation::getMessage,
-                        (a, b) -> a,
-                        LinkedHashMap::new
-                ));
+    public Object handleConstraintViolation(ConstraintViolationException ex, HttpServletRequest request,
+                                            HttpServletResponse response) {
+        Object env = handleConstraintViolation(ex, response);
+        response.setContentType(contentType(request));
+        return env;
+    }
 
+    /**
+     * JSON envelope for {@code ex}, left to the message converters to write.
+     *
+     * @deprecated the exception handler takes the request to negotiate the format itself; use
+     * {@link #handleConstraintViolation(ConstraintViolationException, HttpServletRequest, HttpServletResponse)}
+     */
+    @Deprecated
+    public Object handleConstraintViolation(ConstraintViolationException ex, HttpServletResponse response) {
+        ExceptionClassifier.Classification c = classifier.classify(ex);
+        metrics.recordError(c.status(), ex);
         ApiResponse<Object> env = new ApiResponse<>();
-        env.setTimestamp(Instant.now());
-        env.setStatus(HttpStatus.BAD_REQUEST.value());
+        env.setTimestamp(timestamps.now());
+        env.setStatus(c.status());
         env.setResult(false);
-        env.setMessage("Validation error");
-        env.setErrors(violations);
-        response.setStatus(HttpStatus.BAD_REQUEST.value());
-        response.setContentType("application/json");
+        env.setMessage(c.message());
+        env.setErrors(c.errors());
+        response.setStatus(c.status());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         return env;
     }
 
-    private static String leafName(String path) {
-        if (path == null || path.isBlank()) return path;
-        int i = path.lastIndexOf('.');
-        return (i >= 0 && i < path.length() - 1) ? path.substring(i + 1) : path;
+    private static String contentType(HttpServletRequest request) {
+        try {
+            return EnvelopeFormat.contentType(ACCEPT.resolveMediaTypes(new ServletWebRequest(request))).toString();
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            return MediaType.APPLICATION_JSON_VALUE;
+        }
     }
 }
@@ -1,71 +1,144 @@
 package com.logicsoft.molina.exception;
 
 import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.core.EnvelopeFormat;
+import com.logicsoft.molina.core.ErrorTemplates;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
-import org.springframework.http.HttpStatus;
-import org.springframework.validation.FieldError;
-import org.springframework.web.ErrorResponseException;
+import org.springframework.http.MediaType;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.HeaderContentNegotiationStrategy;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.io.IOException;
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @RestControllerAdvice
 public class ApiResponseGenericExceptionAdvice {
 
+    private static final Logger log = LoggerFactory.getLogger(ApiResponseGenericExceptionAdvice.class);
+
+    private static final HeaderContentNegotiationStrategy ACCEPT = new HeaderContentNegotiationStrategy();
+
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+    private final ExceptionClassifier classifier;
+    private final ErrorTemplates templates;
+
+    public ApiResponseGenericExceptionAdvice() {
+        this(TimestampSource.system());
+    }
+
+    public ApiResponseGenericExceptionAdvice(TimestampSource timestamps) {
+        this(timestamps, ResponseHandlerMetrics.NOOP);
+    }
+
+    public ApiResponseGenericExceptionAdvice(TimestampSource timestamps, ResponseHandlerMetrics metrics) {
+        this(timestamps, metrics, ExceptionClassifier.defaults(), ErrorTemplates.defaults());
+    }
+
+    public ApiResponseGenericExceptionAdvice(TimestampSource timestamps, ResponseHandlerMetrics metrics,
+                                             ExceptionClassifier classifier, ErrorTemplates templates) {
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+        this.classifier = classifier;
+        this.templates = templates;
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
-    public Object handleValidation(MethodArgumentNotValidException ex, HttpServletResponse response) {
-        Map<String, String> fieldErrors = ex.getBindingResult().getFieldErrors().stream()
-                .collect(Collectors.toMap(
-                        FieldError::getField,
-                        fe -> Optional.ofNullable(fe.getDefaultMessage()).orElse("Invalid"),
-                        (a, b) -> a,
-                        HashMap::new
-                ));
-
-        ApiResponse<Object> env = base(HttpStatus.BAD_REQUEST.value());
-        env.setMessage("Validation error");
-        env.setErrors(fieldErrors);
-        response.setStatus(HttpStatus.BAD_REQUEST.value());
-        response.setContentType("application/json");
-        return env;
+    public Object handleValidation(MethodArgumentNotValidException ex, HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        return respond(ex, request, response);
     }
 
     @ExceptionHandler(Exception.class)
     public Object handleAny(Exception ex,
-                            HttpServletResponse response) {
-        int status = resolveStatus(ex);
-        ApiResponse<Object> env = base(status);
-        env.setMessage(resolveMessage(ex));
-        response.setStatus(status);
-        response.setContentType("application/json");
-        return env;
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        return respond(ex, request, response);
+    }
+
+    /**
+     * JSON envelope for {@code ex}, left to the message converters to write.
+     *
+     * @deprecated the exception handlers take the request to negotiate the format themselves; use
+     * {@link #handleValidation(MethodArgumentNotValidException, HttpServletRequest, HttpServletResponse)}
+     */
+    @Deprecated
+    public Object handleValidation(MethodArgumentNotValidException ex, HttpServletResponse response) {
+        return envelope(ex, response);
+    }
+
+    /**
+     * JSON envelope for {@code ex}, left to the message converters to write.
+     *
+     * @deprecated the exception handlers take the request to negotiate the format themselves; use
+     * {@link #handleAny(Exception, HttpServletRequest, HttpServletResponse)}
+     */
+    @Deprecated
+    public Object handleAny(Exception ex, HttpServletResponse response) {
+        return envelope(ex, response);
     }
 
-    private ApiResponse<Object> base(int status) {
+    /**
+     * Writes a templated JSON envelope straight to {@code response} and returns {@code null} (the response
+     * parameter marks the request handled); otherwise returns the envelope for the converters. A response that
+     * is already committed (a streamed envelope that failed while writing) is left alone, since a second
+     * envelope would only corrupt the first.
+     */
+    private Object respond(Exception ex, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (response.isCommitted()) {
+            log.debug("[Molina] Response already committed, not writing an error envelope for {}", ex.toString());
+            return null;
+        }
+        ExceptionClassifier.Classification c = classifier.classify(ex);
+        metrics.recordError(c.status(), ex);
+        MediaType contentType = contentType(request);
+        ErrorTemplates.Template template = (EnvelopeFormat.of(contentType) == EnvelopeFormat.JSON)
+                ? templates.find(c) : null;
+        if (template != null) {
+            response.setStatus(c.status());
+            response.setContentType(contentType.toString());
+            template.writeTo(response.getOutputStream(), timestamps.encodedNow(), c);
+            return null;
+        }
+        response.setContentType(contentType.toString());
+        return envelope(c, response);
+    }
+
+    private ApiResponse<Object> envelope(Exception ex, HttpServletResponse response) {
+        ExceptionClassifier.Classification c = classifier.classify(ex);
+        metrics.recordError(c.status(), ex);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        return envelope(c, response);
+    }
+
+    private ApiResponse<Object> envelope(ExceptionClassifier.Classification c, HttpServletResponse response) {
         ApiResponse<Object> env = new ApiResponse<>();
-        env.setTimestamp(Instant.now());
+        env.setTimestamp(timestamps.now());
         env.setResult(false);
-        env.setStatus(status);
+        env.setStatus(c.status());
+        env.setMessage(c.message());
+        env.setErrors(c.errors());
+        response.setStatus(c.status());
         return env;
     }
 
-    private int resolveStatus(Exception ex) {
-        if (ex instanceof ErrorResponseException ere) return ere.getStatusCode().value();
-        if (ex instanceof IllegalArgumentException) return HttpStatus.BAD_REQUEST.value();
-        return HttpStatus.INTERNAL_SERVER_ERROR.value();
-    }
-
-    private String resolveMessage(Exception ex) {
-        String msg = ex.getMessage();
-        return (msg == null || msg.isBlank()) ? ex.getClass().getSimpleName() : msg;
+    private static MediaType contentType(HttpServletRequest request) {
+        try {
+            return EnvelopeFormat.contentType(ACCEPT.resolveMediaTypes(new ServletWebRequest(request)));
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            return MediaType.APPLICATION_JSON;
+        }
     }
 }
@@ -1,100 +1,194 @@
 package com.logicsoft.molina.exception;
 
 import com.logicsoft.molina.api.ApiResponse;
-import jakarta.validation.ConstraintViolation;
+import com.logicsoft.molina.core.EnvelopeFormat;
+import com.logicsoft.molina.core.ErrorTemplates;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
-import org.springframework.http.HttpStatus;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.reactive.accept.HeaderContentTypeResolver;
+import org.springframework.web.server.NotAcceptableStatusException;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Mono;
 
-import java.time.Instant;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @RestControllerAdvice
 public class ApiResponseReactiveExceptionAdvice {
 
+    private static final HeaderContentTypeResolver ACCEPT = new HeaderContentTypeResolver();
+
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+    private final ExceptionClassifier classifier;
+    private final ErrorTemplates templates;
+
+    public ApiResponseReactiveExceptionAdvice() {
+        this(TimestampSource.system());
+    }
+
+    public ApiResponseReactiveExceptionAdvice(TimestampSource timestamps) {
+        this(timestamps, ResponseHandlerMetrics.NOOP);
+    }
+
+    public ApiResponseReactiveExceptionAdvice(TimestampSource timestamps, ResponseHandlerMetrics metrics) {
+        this(timestamps, metrics, ExceptionClassifier.defaults(), ErrorTemplates.defaults());
+    }
+
+    public ApiResponseReactiveExceptionAdvice(TimestampSource timestamps, ResponseHandlerMetrics metrics,
+                                              ExceptionClassifier classifier, ErrorTemplates templates) {
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+        this.classifier = classifier;
+        this.templates = templates;
+    }
+
     @ExceptionHandler(WebExchangeBindException.class)
-    public Mono<ResponseEntity<ApiResponse<Object>>> handleBind(WebExchangeBindException ex) {
-        Map<String, String> errors = new LinkedHashMap<>();
-        ex.getFieldErrors().forEach(fe -> errors.put(fe.getField(), fe.getDefaultMessage()));
-        ex.getGlobalErrors().forEach(ge -> errors.putIfAbsent("_global", ge.getDefaultMessage()));
-        return Mono.just(ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
-                .body(error400("WebExchangeBindException error", errors)));
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleBind(WebExchangeBindException ex,
+                                                                ServerWebExchange exchange) {
+        return respond(ex, exchange);
     }
 
     @ExceptionHandler(ServerWebInputException.class)
-    public Mono<ResponseEntity<ApiResponse<Object>>> handleInput(ServerWebInputException ex) {
-        Map<String, String> errors = new LinkedHashMap<>();
-        String param = ex.getMethodParameter() != null ? ex.getMethodParameter().getParameterName() : "_request";
-        String msg = ex.getReason() != null ? ex.getReason() : "Invalid request parameter";
-        errors.put(param, msg);
-        return Mono.just(ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
-                .body(error400("ServerWebInputException error", errors)));
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleInput(ServerWebInputException ex,
+                                                                 ServerWebExchange exchange) {
+        return respond(ex, exchange);
     }
 
     @ExceptionHandler(ConstraintViolationException.class)
-    public Mono<ResponseEntity<ApiResponse<Object>>> handleCve(ConstraintViolationException ex) {
-        Map<String, String> errors = new LinkedHashMap<>();
-        for (ConstraintViolation<?> v : ex.getConstraintViolations()) {
-            String field = lastSegment(String.valueOf(v.getPropertyPath()));
-            errors.put(field != null && !field.isBlank() ? field : "_violation",
-                    v.getMessage() != null ? v.getMessage() : "invalid");
-        }
-        return Mono.just(ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
-                .body(error400("Validation error", errors)));
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleCve(ConstraintViolationException ex,
+                                                               ServerWebExchange exchange) {
+        return respond(ex, exchange);
     }
 
     @ExceptionHandler(ResponseStatusException.class)
-    public Mono<ResponseEntity<ApiResponse<Object>>> handleRse(ResponseStatusException ex) {
-        Map<String, String> errors = new LinkedHashMap<>();
-        if (ex.getReason() != null) errors.put("_reason", ex.getReason());
-        return Mono.just(ResponseEntity
-                .status(ex.getStatusCode())
-                .body(error(ex.getStatusCode().value(), "Request failed", errors)));
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleRse(ResponseStatusException ex, ServerWebExchange exchange) {
+        return respond(ex, exchange);
     }
 
     @ExceptionHandler(Throwable.class)
-    public Mono<ResponseEntity<ApiResponse<Object>>> handleAny(Throwable ex) {
-        Map<String, String> errors = new LinkedHashMap<>();
-        if (ex.getMessage() != null) errors.put("_error", ex.getMessage());
-        return Mono.just(ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(error(500, "Unexpected error", errors)));
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleAny(Throwable ex, ServerWebExchange exchange) {
+        return respond(ex, exchange);
     }
 
-    /* ---------- helpers ---------- */
+    /**
+     * Envelope for {@code ex}, left to the codecs to write in whatever format they negotiate.
+     *
+     * @deprecated the exception handlers take the exchange to negotiate the format themselves; use
+     * {@link #handleBind(WebExchangeBindException, ServerWebExchange)}
+     */
+    @Deprecated
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleBind(WebExchangeBindException ex) {
+        return respond(ex, null);
+    }
 
-    private static String lastSegment(String path) {
-        if (path == null) return null;
-        int dot = path.lastIndexOf('.');
-        String s = (dot >= 0 ? path.substring(dot + 1) : path);
-        return s.replaceAll("\\[.*?]", "");
+    /**
+     * Envelope for {@code ex}, left to the codecs to write in whatever format they negotiate.
+     *
+     * @deprecated the exception handlers take the exchange to negotiate the format themselves; use
+     * {@link #handleInput(ServerWebInputException, ServerWebExchange)}
+     */
+    @Deprecated
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleInput(ServerWebInputException ex) {
+        return respond(ex, null);
+    }
+
+    /**
+     * Envelope for {@code ex}, left to the codecs to write in whatever format they negotiate.
+     *
+     * @deprecated the exception handlers take the exchange to negotiate the format themselves; use
+     * {@link #handleCve(ConstraintViolationException, ServerWebExchange)}
+     */
+    @Deprecated
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleCve(ConstraintViolationException ex) {
+        return respond(ex, null);
     }
 
-    private static ApiResponse<Object> error400(String message, Map<String, String> errors) {
-        return error(400, message, errors);
+    /**
+     * Envelope for {@code ex}, left to the codecs to write in whatever format they negotiate.
+     *
+     * @deprecated the exception handlers take the exchange to negotiate the format themselves; use
+     * {@link #handleRse(ResponseStatusException, ServerWebExchange)}
+     */
+    @Deprecated
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleRse(ResponseStatusException ex) {
+        return respond(ex, null);
+    }
+
+    /**
+     * Envelope for {@code ex}, left to the codecs to write in whatever format they negotiate.
+     *
+     * @deprecated the exception handlers take the exchange to negotiate the format themselves; use
+     * {@link #handleAny(Throwable, ServerWebExchange)}
+     */
+    @Deprecated
+    public Mono<ResponseEntity<ApiResponse<Object>>> handleAny(Throwable ex) {
+        return respond(ex, null);
     }
 
-    private static ApiResponse<Object> error(int status, String message, Map<String, String> errors) {
+    /* ---------- helpers ---------- */
+
+    /**
+     * Writes a templated JSON envelope straight to the response and completes empty, which leaves nothing for the
+     * result handler to write; otherwise returns the envelope for the codecs. Without an {@code exchange} the
+     * content type is left for the codecs to negotiate.
+     */
+    private Mono<ResponseEntity<ApiResponse<Object>>> respond(Throwable ex, ServerWebExchange exchange) {
+        ExceptionClassifier.Classification c = classifier.classify(ex);
+        metrics.recordError(c.status(), ex);
+        MediaType contentType = (exchange != null) ? contentType(exchange) : null;
+        ErrorTemplates.Template template =
+                (contentType != null && EnvelopeFormat.of(contentType) == EnvelopeFormat.JSON) ? templates.find(c) : null;
+        if (template != null) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatusCode.valueOf(c.status()));
+            response.getHeaders().setContentType(contentType);
+            return response.writeWith(Mono.fromSupplier(() -> encode(response, template, c))).then(Mono.empty());
+        }
         ApiResponse<Object> r = new ApiResponse<>();
-        r.setTimestamp(Instant.now());
-        r.setStatus(status);
+        r.setTimestamp(timestamps.now());
+        r.setStatus(c.status());
         r.setResult(false);
-        r.setMessage(message);
-        r.setErrors(errors);
+        r.setMessage(c.message());
+        r.setErrors(c.errors());
         r.setData(null);
-        return r;
+        return Mono.just(ResponseEntity.status(c.status()).contentType(contentType).body(r));
+    }
+
+    private DataBuffer encode(ServerHttpResponse response, ErrorTemplates.Template template,
+                              ExceptionClassifier.Classification c) {
+        DataBuffer buffer = response.bufferFactory().allocateBuffer(256);
+        try (OutputStream out = buffer.asOutputStream()) {
+            template.writeTo(out, timestamps.encodedNow(), c);
+            return buffer;
+        } catch (IOException e) {
+            DataBufferUtils.release(buffer);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* Fixed up front, as in MVC: for a wildcard Accept the codecs would otherwise pick the first binary format */
+    private static MediaType contentType(ServerWebExchange exchange) {
+        try {
+            return EnvelopeFormat.contentType(ACCEPT.resolveMediaTypes(exchange));
+        } catch (NotAcceptableStatusException e) {
+            return MediaType.APPLICATION_JSON;
+        }
     }
 }
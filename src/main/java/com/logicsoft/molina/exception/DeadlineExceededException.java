@@ -0,0 +1,36 @@
+package com.logicsoft.molina.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * The time budget of a {@code @ResponseHandler} response ran out before the handler produced its value.
+ */
+public class DeadlineExceededException extends ResponseStatusException {
+
+    private final long budgetMillis;
+
+    public DeadlineExceededException(long budgetMillis) {
+        this(budgetMillis, true);
+    }
+
+    /**
+     * @param stackTrace whether to capture a stack trace; the envelope never shows it, and during an incident
+     *                   the exception is raised as often as requests fail
+     */
+    public DeadlineExceededException(long budgetMillis, boolean stackTrace) {
+        super(HttpStatus.GATEWAY_TIMEOUT, "Deadline of " + budgetMillis + " ms exceeded");
+        this.budgetMillis = budgetMillis;
+        if (stackTrace) super.fillInStackTrace();
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /* Called by the Throwable constructor, before stackTrace is known: the constructor fills it in */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,219 @@
+package com.logicsoft.molina.exception;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.ElementKind;
+import jakarta.validation.Path;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.ClassUtils;
+import org.springframework.validation.BindException;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.ObjectError;
+import org.springframework.web.ErrorResponse;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Maps exceptions to the status, message and {@code errors} of their error envelope, for MVC and WebFlux
+ * alike. The rule of an exception class is its own, or the one of its closest superclass (checking the
+ * interfaces of each class before moving up), and is resolved once per class.
+ * <p>
+ * {@link #defaults()} covers Bean Validation, binding, {@link ErrorResponse} exceptions (including
+ * {@code ResponseStatusException}), expired deadlines, oversized results and {@link IllegalArgumentException};
+ * anything else is a {@code 500}.
+ * Applications can add or override rules by declaring their own classifier bean.
+ * <p>
+ * Classifications with a {@code 5xx} status carry no {@code errors}, so exception messages of server failures stay
+ * out of responses, unless {@link #exposeServerErrors(boolean)} opts in.
+ */
+public class ExceptionClassifier {
+
+    public static final String VALIDATION_ERROR = "Validation error";
+    public static final String REQUEST_FAILED = "Request failed";
+    public static final String INVALID_REQUEST = "Invalid request";
+    public static final String UNEXPECTED_ERROR = "Unexpected error";
+    public static final String DEADLINE_EXCEEDED = "Deadline exceeded";
+    public static final String RESULT_TOO_LARGE = "Result too large";
+
+    private static final boolean validationPresent = ClassUtils.isPresent(
+            "jakarta.validation.ConstraintViolationException", ExceptionClassifier.class.getClassLoader());
+
+    /**
+     * The error envelope of an exception; {@code errors} is {@code null} when there are none.
+     */
+    public record Classification(int status, String message, Map<String, String> errors) {
+    }
+
+    private final Map<Class<?>, Rule<?>> rules = new ConcurrentHashMap<>();
+    /* Replaced on every registration: ClassValue entries cannot be evicted one by one */
+    private volatile ClassValue<Rule<?>> resolved = newCache();
+    private volatile boolean exposeServerErrors;
+
+    /**
+     * A classifier with the library's rules.
+     */
+    public static ExceptionClassifier defaults() {
+        ExceptionClassifier classifier = new ExceptionClassifier();
+        classifier.register(Throwable.class, HttpStatus.INTERNAL_SERVER_ERROR.value(), UNEXPECTED_ERROR,
+                ExceptionClassifier::errorMessage);
+        classifier.register(IllegalArgumentException.class, HttpStatus.BAD_REQUEST.value(), INVALID_REQUEST,
+                ExceptionClassifier::errorMessage);
+        classifier.register(ErrorResponse.class, e -> e.getStatusCode().value(), REQUEST_FAILED,
+                ExceptionClassifier::reason);
+        classifier.register(DeadlineExceededException.class, e -> e.getStatusCode().value(), DEADLINE_EXCEEDED,
+                ExceptionClassifier::reason);
+        classifier.register(ResultTooLargeException.class, e -> e.getStatusCode().value(), RESULT_TOO_LARGE,
+                ExceptionClassifier::reason);
+        classifier.register(ServerWebInputException.class, e -> e.getStatusCode().value(), INVALID_REQUEST,
+                ExceptionClassifier::inputErrors);
+        classifier.register(BindException.class, HttpStatus.BAD_REQUEST.value(), VALIDATION_ERROR,
+                ExceptionClassifier::bindingErrors);
+        classifier.register(MethodArgumentNotValidException.class, HttpStatus.BAD_REQUEST.value(), VALIDATION_ERROR,
+                ExceptionClassifier::bindingErrors);
+        classifier.register(WebExchangeBindException.class, HttpStatus.BAD_REQUEST.value(), VALIDATION_ERROR,
+                ExceptionClassifier::bindingErrors);
+        if (validationPresent) Violations.register(classifier);
+        return classifier;
+    }
+
+    /**
+     * Maps {@code type} (a class or an interface) and its subtypes without a closer rule.
+     *
+     * @param errors returns the {@code errors} of the envelope; {@code null} or empty for none
+     */
+    public <T> ExceptionClassifier register(Class<T> type, ToIntFunction<? super T> status, String message,
+                                            Function<? super T, Map<String, String>> errors) {
+        rules.put(type, new Rule<>(status, message, errors));
+        resolved = newCache();
+        return this;
+    }
+
+    public <T> ExceptionClassifier register(Class<T> type, int status, String message,
+                                            Function<? super T, Map<String, String>> errors) {
+        return register(type, e -> status, message, errors);
+    }
+
+    /**
+     * Whether {@code 5xx} classifications keep the {@code errors} of their rule, such as the {@code _error} message
+     * of an unmapped exception; off by default.
+     */
+    public ExceptionClassifier exposeServerErrors(boolean expose) {
+        this.exposeServerErrors = expose;
+        return this;
+    }
+
+    public Classification classify(Throwable ex) {
+        Classification c = resolved.get(ex.getClass()).apply(ex);
+        return (c.errors() == null || c.status() < 500 || exposeServerErrors)
+                ? c : new Classification(c.status(), c.message(), null);
+    }
+
+    private ClassValue<Rule<?>> newCache() {
+        return new ClassValue<>() {
+            @Override
+            protected Rule<?> computeValue(Class<?> type) {
+                return lookup(type);
+            }
+        };
+    }
+
+    private Rule<?> lookup(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            Rule<?> rule = rules.get(c);
+            if (rule == null) rule = lookupInterfaces(c);
+            if (rule != null) return rule;
+        }
+        throw new IllegalStateException("No rule for " + type.getName());
+    }
+
+    private Rule<?> lookupInterfaces(Class<?> type) {
+        for (Class<?> i : type.getInterfaces()) {
+            Rule<?> rule = rules.get(i);
+            if (rule == null) rule = lookupInterfaces(i);
+            if (rule != null) return rule;
+        }
+        return null;
+    }
+
+    private record Rule<T>(ToIntFunction<? super T> status, String message,
+                           Function<? super T, Map<String, String>> errors) {
+
+        @SuppressWarnings("unchecked")
+        Classification apply(Throwable ex) {
+            T t = (T) ex;
+            Map<String, String> map = errors.apply(t);
+            return new Classification(status.applyAsInt(t), message, (map != null && !map.isEmpty()) ? map : null);
+        }
+    }
+
+    /* -------- extractors -------- */
+
+    private static Map<String, String> errorMessage(Throwable ex) {
+        String msg = ex.getMessage();
+        return Map.of("_error", (msg == null || msg.isBlank()) ? ex.getClass().getSimpleName() : msg);
+    }
+
+    private static Map<String, String> reason(ErrorResponse ex) {
+        String detail = ex.getBody().getDetail();
+        return (detail != null) ? Map.of("_reason", detail) : null;
+    }
+
+    private static Map<String, String> inputErrors(ServerWebInputException ex) {
+        String param = (ex.getMethodParameter() != null) ? ex.getMethodParameter().getParameterName() : null;
+        String reason = ex.getReason();
+        return Map.of((param != null) ? param : "_request", (reason != null) ? reason : "Invalid request parameter");
+    }
+
+    private static Map<String, String> bindingErrors(BindingResult result) {
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (FieldError fe : result.getFieldErrors()) {
+            errors.putIfAbsent(fe.getField(), (fe.getDefaultMessage() != null) ? fe.getDefaultMessage() : "Invalid");
+        }
+        for (ObjectError ge : result.getGlobalErrors()) {
+            errors.putIfAbsent("_global", (ge.getDefaultMessage() != null) ? ge.getDefaultMessage() : "Invalid");
+        }
+        return errors;
+    }
+
+    /* Keeps the Bean Validation references out of the constant pool when it is not on the classpath. */
+    private static final class Violations {
+
+        static void register(ExceptionClassifier classifier) {
+            classifier.register(ConstraintViolationException.class, HttpStatus.BAD_REQUEST.value(), VALIDATION_ERROR,
+                    Violations::errors);
+        }
+
+        static Map<String, String> errors(ConstraintViolationException ex) {
+            Map<String, String> errors = new LinkedHashMap<>();
+            for (ConstraintViolation<?> v : ex.getConstraintViolations()) {
+                errors.putIfAbsent(leaf(v.getPropertyPath()), (v.getMessage() != null) ? v.getMessage() : "invalid");
+            }
+            return errors;
+        }
+
+        /**
+         * Name of the last property or parameter of {@code path}: {@code items[2].name} gives {@code name},
+         * {@code create.request} gives {@code request}. Index and key brackets are not part of node names.
+         */
+        static String leaf(Path path) {
+            String name = null;
+            if (path != null) {
+                for (Path.Node node : path) {
+                    ElementKind kind = node.getKind();
+                    if ((kind == ElementKind.PROPERTY || kind == ElementKind.PARAMETER) && node.getName() != null) {
+                        name = node.getName();
+                    }
+                }
+            }
+            return (name != null && !name.isEmpty()) ? name : "_violation";
+        }
+    }
+}
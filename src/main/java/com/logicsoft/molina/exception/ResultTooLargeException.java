@@ -0,0 +1,28 @@
+package com.logicsoft.molina.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A collected {@code Flux} crossed the bounds of its {@code @ResponseHandler} and was cancelled.
+ */
+public class ResultTooLargeException extends ResponseStatusException {
+
+    public ResultTooLargeException(String reason) {
+        this(reason, true);
+    }
+
+    /**
+     * @param stackTrace whether to capture a stack trace; the envelope never shows it
+     */
+    public ResultTooLargeException(String reason, boolean stackTrace) {
+        super(HttpStatus.INSUFFICIENT_STORAGE, reason);
+        if (stackTrace) super.fillInStackTrace();
+    }
+
+    /* Called by the Throwable constructor, before stackTrace is known: the constructor fills it in */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
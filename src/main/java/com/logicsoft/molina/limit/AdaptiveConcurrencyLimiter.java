@@ -0,0 +1,119 @@
+package com.logicsoft.molina.limit;
+
+import com.logicsoft.molina.annotations.Limited;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gradient concurrency limit of one handler. Two averages of the request round-trip time are kept: a short one
+ * following current latency and a long one standing for latency without queueing. Their ratio (capped to
+ * {@code [0.5, 1]}) scales the limit down when requests start to wait, and {@code sqrt(limit)} of headroom is
+ * added back on every sample so the limit keeps probing upward while latency holds.
+ * <p>
+ * Acquiring is one CAS on the in-flight counter. Samples update the averages under a lock that is only tried:
+ * under contention a sample is dropped rather than queued behind another.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double SHORT_WINDOW = 10;
+    private static final double LONG_WINDOW = 600;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final ReentrantLock sampling = new ReentrantLock();
+
+    private volatile int limit;
+    /* Guarded by sampling */
+    private double estimatedLimit;
+    private double shortRtt;
+    private double longRtt;
+    private long samples;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.estimatedLimit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    public static AdaptiveConcurrencyLimiter of(Limited spec) {
+        return new AdaptiveConcurrencyLimiter(spec.initialLimit(), spec.minLimit(), spec.maxLimit());
+    }
+
+    /**
+     * Takes a slot, or returns {@code null} when the limit is reached.
+     */
+    public Permit tryAcquire() {
+        for (;;) {
+            int current = inflight.get();
+            if (current >= limit) return null;
+            if (inflight.compareAndSet(current, current + 1)) return new Permit(current + 1);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /* Package-private for the tests, which feed round-trip times without waiting for them */
+    void sample(long rttNanos, int inflightAtStart) {
+        if (rttNanos <= 0 || !sampling.tryLock()) return;
+        try {
+            samples++;
+            if (samples == 1) {
+                shortRtt = rttNanos;
+                longRtt = rttNanos;
+            } else {
+                shortRtt += (rttNanos - shortRtt) / Math.min(samples, SHORT_WINDOW);
+                longRtt += (rttNanos - longRtt) / Math.min(samples, LONG_WINDOW);
+            }
+            // Latency dropped for good (e.g. a slow dependency recovered): let the baseline catch up faster
+            if (longRtt > 2 * shortRtt) longRtt *= 0.95;
+            // The handler is not using the limit: its latency says nothing about it
+            if (inflightAtStart < estimatedLimit / 2) return;
+
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+            double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            double next = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, next));
+            limit = (int) estimatedLimit;
+        } finally {
+            sampling.unlock();
+        }
+    }
+
+    /**
+     * A slot taken by one request; releasing it more than once has no effect.
+     */
+    public final class Permit {
+
+        private final int inflightAtStart;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inflightAtStart) {
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        /**
+         * Frees the slot.
+         *
+         * @param sample whether the request's round-trip time should adjust the limit; {@code false} for
+         *               failures and cancelled requests, whose timing does not reflect the handler's latency
+         */
+        public void release(boolean sample) {
+            if (!released.compareAndSet(false, true)) return;
+            inflight.decrementAndGet();
+            if (sample) sample(System.nanoTime() - start, inflightAtStart);
+        }
+    }
+}
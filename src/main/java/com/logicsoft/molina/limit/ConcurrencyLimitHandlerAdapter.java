@@ -0,0 +1,94 @@
+package com.logicsoft.molina.limit;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.logicsoft.molina.cache.CachedEnvelope;
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.HandlerAdapter;
+import org.springframework.web.reactive.HandlerResult;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * WebFlux counterpart of {@link ConcurrencyLimitInterceptor}: picked by the dispatcher ahead of the
+ * {@link RequestMappingHandlerAdapter} for {@link com.logicsoft.molina.annotations.Limited} handlers, it
+ * rejects requests over the limit without invoking the controller and delegates the others, leaving their
+ * permit in an exchange attribute for {@link ConcurrencyLimitWebFilter} to release once the response is done.
+ * The response cache adapter, which comes first, hands its misses to this adapter.
+ */
+public class ConcurrencyLimitHandlerAdapter implements HandlerAdapter, Ordered {
+
+    private final ConcurrencyLimits limits;
+    private final HandlerDescriptorRegistry descriptors;
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+    private final ObjectProvider<RequestMappingHandlerAdapter> delegate;
+
+    public ConcurrencyLimitHandlerAdapter(ConcurrencyLimits limits, HandlerDescriptorRegistry descriptors,
+                                          TimestampSource timestamps, ResponseHandlerMetrics metrics,
+                                          ObjectProvider<RequestMappingHandlerAdapter> delegate) {
+        this.limits = limits;
+        this.descriptors = descriptors;
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    @Override
+    public boolean supports(@NonNull Object handler) {
+        if (!(handler instanceof HandlerMethod hm)) return false;
+        HandlerDescriptor descriptor = descriptors.find(hm.getMethod());
+        return descriptor != null && descriptor.getLimit() != null;
+    }
+
+    @Override
+    @NonNull
+    public Mono<HandlerResult> handle(@NonNull ServerWebExchange exchange, @NonNull Object handler) {
+        HandlerDescriptor descriptor = descriptors.find(((HandlerMethod) handler).getMethod());
+        AdaptiveConcurrencyLimiter limiter = limits.get(descriptor);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit != null) {
+            exchange.getAttributes().put(ConcurrencyLimits.PERMIT_ATTRIBUTE, permit);
+            return delegate.getObject().handle(exchange, handler);
+        }
+        metrics.recordRejected(descriptor);
+        CachedEnvelope rejection = limits.getRejection();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatusCode.valueOf(rejection.getStatus()));
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(descriptor.getLimit().retryAfterSeconds()));
+        return response.writeWith(Mono.fromSupplier(() -> encode(response, rejection))).then(Mono.empty());
+    }
+
+    private DataBuffer encode(ServerHttpResponse response, CachedEnvelope entry) {
+        SerializableString timestamp = timestamps.encodedNow();
+        entry.writeHeaders(response.getHeaders(), timestamp, false);
+        DataBuffer buffer = response.bufferFactory().allocateBuffer((int) entry.length(timestamp, false));
+        try (OutputStream out = buffer.asOutputStream()) {
+            entry.writeTo(out, timestamp, false);
+            return buffer;
+        } catch (IOException e) {
+            DataBufferUtils.release(buffer);
+            throw new RuntimeException("Error in ApiResponse serialization", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.logicsoft.molina.limit;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.logicsoft.molina.cache.CachedEnvelope;
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.metrics.ResponseHandlerMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+/**
+ * Applies the {@link com.logicsoft.molina.annotations.Limited} concurrency limit of MVC handlers. It runs
+ * after the response cache interceptor, so cache hits are served even when the handler is at its limit. The
+ * permit is held across async processing and released when the request completes; its round-trip time feeds
+ * the limit unless the request failed.
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private final ConcurrencyLimits limits;
+    private final HandlerDescriptorRegistry descriptors;
+    private final TimestampSource timestamps;
+    private final ResponseHandlerMetrics metrics;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimits limits, HandlerDescriptorRegistry descriptors,
+                                       TimestampSource timestamps, ResponseHandlerMetrics metrics) {
+        this.limits = limits;
+        this.descriptors = descriptors;
+        this.timestamps = timestamps;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                             @NonNull Object handler) throws IOException {
+        // Async dispatches come back through preHandle with the permit of the initial dispatch
+        if (!(handler instanceof HandlerMethod hm)) return true;
+        if (request.getAttribute(ConcurrencyLimits.PERMIT_ATTRIBUTE) != null) return true;
+        HandlerDescriptor descriptor = descriptors.find(hm.getMethod());
+        AdaptiveConcurrencyLimiter limiter = (descriptor != null) ? limits.get(descriptor) : null;
+        if (limiter == null) return true;
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit != null) {
+            request.setAttribute(ConcurrencyLimits.PERMIT_ATTRIBUTE, permit);
+            return true;
+        }
+        metrics.recordRejected(descriptor);
+        CachedEnvelope rejection = limits.getRejection();
+        ServletServerHttpResponse out = new ServletServerHttpResponse(response);
+        out.setStatusCode(HttpStatusCode.valueOf(rejection.getStatus()));
+        out.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(descriptor.getLimit().retryAfterSeconds()));
+        SerializableString timestamp = timestamps.encodedNow();
+        rejection.writeHeaders(out.getHeaders(), timestamp, false);
+        rejection.writeTo(out.getBody(), timestamp, false);
+        out.flush();
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                @NonNull Object handler, @Nullable Exception ex) {
+        Object attribute = request.getAttribute(ConcurrencyLimits.PERMIT_ATTRIBUTE);
+        if (!(attribute instanceof AdaptiveConcurrencyLimiter.Permit permit)) return;
+        request.removeAttribute(ConcurrencyLimits.PERMIT_ATTRIBUTE);
+        permit.release(ex == null && response.getStatus() < 500);
+    }
+}
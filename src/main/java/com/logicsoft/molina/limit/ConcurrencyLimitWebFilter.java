@@ -0,0 +1,30 @@
+package com.logicsoft.molina.limit;
+
+import org.springframework.http.HttpStatusCode;
+import org.springframework.lang.NonNull;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Releases the permit {@link ConcurrencyLimitHandlerAdapter} took for an exchange once its response has been
+ * written. Only successful, non-5xx exchanges feed their round-trip time to the limit; a cancelled exchange (the
+ * client went away) just frees its slot.
+ */
+public class ConcurrencyLimitWebFilter implements WebFilter {
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        return chain.filter(exchange).doFinally(signal -> {
+            if (!(exchange.getAttributes().remove(ConcurrencyLimits.PERMIT_ATTRIBUTE)
+                    instanceof AdaptiveConcurrencyLimiter.Permit permit)) {
+                return;
+            }
+            HttpStatusCode status = exchange.getResponse().getStatusCode();
+            permit.release(signal == SignalType.ON_COMPLETE && (status == null || !status.is5xxServerError()));
+        });
+    }
+}
@@ -0,0 +1,96 @@
+package com.logicsoft.molina.limit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.Limited;
+import com.logicsoft.molina.cache.CachedEnvelope;
+import com.logicsoft.molina.core.EnvelopeWriter;
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * The {@link AdaptiveConcurrencyLimiter} of every handler declaring {@link Limited}, and the {@code 503}
+ * envelope rejected requests get. That envelope is encoded once, without timestamp, so a rejection costs no
+ * serialization.
+ */
+public class ConcurrencyLimits {
+
+    /** Request / exchange attribute holding the {@link AdaptiveConcurrencyLimiter.Permit} of a request. */
+    public static final String PERMIT_ATTRIBUTE = "com.logicsoft.molina.limit.ConcurrencyLimits.PERMIT";
+
+    public static final String OVERLOADED = "Service overloaded";
+
+    private final ConcurrentMap<Method, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, AdaptiveConcurrencyLimiter>> listeners = new CopyOnWriteArrayList<>();
+    private final CachedEnvelope rejection = rejection();
+
+    public ConcurrencyLimits(HandlerDescriptorRegistry descriptors) {
+        descriptors.addListener(this::register);
+    }
+
+    /**
+     * The limiter of {@code handler}, or {@code null} when it is not limited.
+     */
+    public AdaptiveConcurrencyLimiter get(HandlerDescriptor handler) {
+        AdaptiveConcurrencyLimiter limiter = limiters.get(handler.getMethod());
+        return (limiter != null || handler.getLimit() == null) ? limiter : register(handler);
+    }
+
+    /**
+     * The {@code 503} error envelope of rejected requests, to be served with a fresh timestamp.
+     */
+    public CachedEnvelope getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Calls {@code listener} with the name and limiter of every limited handler, existing and future (e.g. to
+     * bind gauges).
+     */
+    public void addListener(BiConsumer<String, AdaptiveConcurrencyLimiter> listener) {
+        listeners.add(listener);
+        limiters.forEach((method, limiter) -> listener.accept(nameOf(method), limiter));
+    }
+
+    private AdaptiveConcurrencyLimiter register(HandlerDescriptor handler) {
+        Limited spec = handler.getLimit();
+        if (spec == null) return null;
+        boolean[] created = {false};
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(handler.getMethod(), m -> {
+            created[0] = true;
+            return AdaptiveConcurrencyLimiter.of(spec);
+        });
+        if (created[0]) {
+            String name = nameOf(handler.getMethod());
+            listeners.forEach(l -> l.accept(name, limiter));
+        }
+        return limiter;
+    }
+
+    private static CachedEnvelope rejection() {
+        int status = HttpStatus.SERVICE_UNAVAILABLE.value();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try {
+            new EnvelopeWriter(new ObjectMapper()).writeErrorWithoutTimestamp(out, status,
+                    Map.of("_reason", "Concurrency limit reached"), OVERLOADED);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return CachedEnvelope.of(status, out.toByteArray(), false, null);
+    }
+
+    private static String nameOf(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+}
@@ -0,0 +1,61 @@
+package com.logicsoft.molina.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event of one wrapped response, from the moment the envelope writer got the handler's value
+ * until the envelope was handed to the response. Enabled by default in a recording: start one with
+ * {@code -XX:StartFlightRecording} or {@code jcmd <pid> JFR.start}, nothing is recorded otherwise. Phases that
+ * were not measured are {@code 0}.
+ */
+@Name("com.logicsoft.molina.Envelope")
+@Label("Envelope")
+@Category({"Molina", "Response Handler"})
+@Description("A response wrapped in the ApiResponse envelope")
+@StackTrace(false)
+public final class EnvelopeEvent extends Event {
+
+    @Label("Handler")
+    @Description("Class and method of the @ResponseHandler")
+    public String handler;
+
+    @Label("Status")
+    @Description("HTTP status of the response")
+    public int status;
+
+    @Label("Elements")
+    @Description("Elements of data: the size of a collection or array, 1 for a single value, 0 for none")
+    public long elements;
+
+    @Label("Bytes Written")
+    @Description("Encoded size of the envelope, -1 when a message converter encodes it later")
+    @DataAmount
+    public long bytes;
+
+    @Label("Handler Time")
+    @Description("From the request reaching the handler until the handler returned")
+    @Timespan
+    public long handlerTime;
+
+    @Label("Pipeline Time")
+    @Description("From the handler returning until its Mono or Flux produced the value (WebFlux)")
+    @Timespan
+    public long pipelineTime;
+
+    @Label("Wrap Time")
+    @Description("Building the envelope: format negotiation, projection, caching and ETag decisions")
+    @Timespan
+    public long wrapTime;
+
+    @Label("Encode Time")
+    @Description("Serializing the envelope")
+    @Timespan
+    public long encodeTime;
+}
@@ -0,0 +1,130 @@
+package com.logicsoft.molina.metrics;
+
+import com.logicsoft.molina.core.HandlerDescriptor;
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Micrometer-backed {@link ResponseHandlerMetrics}. Endpoint meters are registered when a handler descriptor
+ * is created (at startup for mapped handlers), so recording is a map lookup plus the meter update.
+ *
+ * <ul>
+ *     <li>{@code molina.envelope.write} — timer, wrap + serialize time per handler</li>
+ *     <li>{@code molina.envelope.size} — distribution summary, encoded bytes per handler</li>
+ *     <li>{@code molina.envelope.errors} — counter of error envelopes by status and exception class</li>
+ *     <li>{@code molina.envelope.coalesced} — counter of requests served by a pending identical request, for
+ *     handlers that coalesce</li>
+ *     <li>{@code molina.envelope.timeouts} — counter of responses whose time budget ran out, per handler</li>
+ *     <li>{@code molina.envelope.rejected} — counter of requests rejected at the concurrency limit, for limited
+ *     handlers</li>
+ * </ul>
+ */
+public class MicrometerResponseHandlerMetrics implements ResponseHandlerMetrics {
+
+    public static final String WRITE_METER = "molina.envelope.write";
+    public static final String SIZE_METER = "molina.envelope.size";
+    public static final String ERRORS_METER = "molina.envelope.errors";
+    public static final String COALESCED_METER = "molina.envelope.coalesced";
+    public static final String TIMEOUTS_METER = "molina.envelope.timeouts";
+    public static final String REJECTED_METER = "molina.envelope.rejected";
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<Method, EndpointMeters> endpoints = new ConcurrentHashMap<>(256);
+    private final ConcurrentMap<Class<?>, AtomicReferenceArray<Counter>> errors = new ConcurrentHashMap<>();
+    /* Registered on the first timeout: the request deadline header can put a budget on any handler */
+    private final ConcurrentMap<Method, Counter> timeouts = new ConcurrentHashMap<>();
+
+    public MicrometerResponseHandlerMetrics(MeterRegistry registry, HandlerDescriptorRegistry descriptors) {
+        this.registry = registry;
+        descriptors.addListener(this::register);
+    }
+
+    @Override
+    public void recordEnvelope(HandlerDescriptor handler, long durationNanos, long bytes) {
+        EndpointMeters meters = endpoints.get(handler.getMethod());
+        if (meters == null) meters = register(handler);
+        meters.write.record(durationNanos, TimeUnit.NANOSECONDS);
+        if (bytes >= 0) meters.size.record(bytes);
+    }
+
+    @Override
+    public void recordCoalesced(HandlerDescriptor handler) {
+        EndpointMeters meters = endpoints.get(handler.getMethod());
+        if (meters == null) meters = register(handler);
+        if (meters.coalesced != null) meters.coalesced.increment();
+    }
+
+    @Override
+    public void recordRejected(HandlerDescriptor handler) {
+        EndpointMeters meters = endpoints.get(handler.getMethod());
+        if (meters == null) meters = register(handler);
+        if (meters.rejected != null) meters.rejected.increment();
+    }
+
+    @Override
+    public void recordTimeout(HandlerDescriptor handler) {
+        timeouts.computeIfAbsent(handler.getMethod(), m -> Counter.builder(TIMEOUTS_METER)
+                .description("Responses whose time budget ran out")
+                .tag("handler", m.getDeclaringClass().getSimpleName() + "." + m.getName())
+                .register(registry)).increment();
+    }
+
+    @Override
+    public void recordError(int status, Throwable ex) {
+        int index = Math.max(MIN_STATUS, Math.min(MAX_STATUS, status)) - MIN_STATUS;
+        AtomicReferenceArray<Counter> byStatus = errors.get(ex.getClass());
+        if (byStatus == null) {
+            byStatus = errors.computeIfAbsent(ex.getClass(), c -> new AtomicReferenceArray<>(MAX_STATUS - MIN_STATUS + 1));
+        }
+        Counter counter = byStatus.get(index);
+        if (counter == null) {
+            counter = Counter.builder(ERRORS_METER)
+                    .description("Error envelopes produced, by status and exception")
+                    .tag("status", String.valueOf(index + MIN_STATUS))
+                    .tag("exception", ex.getClass().getSimpleName())
+                    .register(registry);
+            byStatus.set(index, counter);
+        }
+        counter.increment();
+    }
+
+    private EndpointMeters register(HandlerDescriptor handler) {
+        return endpoints.computeIfAbsent(handler.getMethod(), m -> {
+            String name = m.getDeclaringClass().getSimpleName() + "." + m.getName();
+            Timer write = Timer.builder(WRITE_METER)
+                    .description("Time spent wrapping and serializing envelopes")
+                    .tag("handler", name)
+                    .register(registry);
+            DistributionSummary size = DistributionSummary.builder(SIZE_METER)
+                    .description("Encoded envelope size")
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("handler", name)
+                    .register(registry);
+            Counter coalesced = (handler.getCoalesce() == null) ? null : Counter.builder(COALESCED_METER)
+                    .description("Requests served by a pending identical request")
+                    .tag("handler", name)
+                    .register(registry);
+            Counter rejected = (handler.getLimit() == null) ? null : Counter.builder(REJECTED_METER)
+                    .description("Requests rejected at the concurrency limit")
+                    .tag("handler", name)
+                    .register(registry);
+            return new EndpointMeters(write, size, coalesced, rejected);
+        });
+    }
+
+    private record EndpointMeters(Timer write, DistributionSummary size, Counter coalesced, Counter rejected) {
+    }
+}
@@ -0,0 +1,46 @@
+package com.logicsoft.molina.metrics;
+
+import com.logicsoft.molina.core.HandlerDescriptor;
+
+/**
+ * Receives measurements from the envelope writers and the exception advices. The default methods do
+ * nothing, which is what {@link #NOOP} uses when no meter registry is available.
+ */
+public interface ResponseHandlerMetrics {
+
+    ResponseHandlerMetrics NOOP = new ResponseHandlerMetrics() {
+    };
+
+    /**
+     * Records the time spent wrapping and serializing one envelope of {@code handler}.
+     *
+     * @param bytes encoded size of the envelope, or a negative value when serialization happens later in a
+     *              message converter and the size is not known
+     */
+    default void recordEnvelope(HandlerDescriptor handler, long durationNanos, long bytes) {
+    }
+
+    /**
+     * Counts a request to {@code handler} that joined a pending identical request instead of running its own.
+     */
+    default void recordCoalesced(HandlerDescriptor handler) {
+    }
+
+    /**
+     * Counts a response of {@code handler} whose time budget ran out.
+     */
+    default void recordTimeout(HandlerDescriptor handler) {
+    }
+
+    /**
+     * Counts a request to {@code handler} rejected because the handler was at its concurrency limit.
+     */
+    default void recordRejected(HandlerDescriptor handler) {
+    }
+
+    /**
+     * Counts an error envelope produced for {@code ex}.
+     */
+    default void recordError(int status, Throwable ex) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.logicsoft.molina.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class RawJsonTests {
+
+    private static final String JSON = "{\"id\": 7, \"tags\": [\"a\"]}";
+
+    @Test
+    void writesTheBytesOfEverySource() throws IOException {
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = ("xx" + JSON + "yy").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+
+        assertThat(written(RawJson.of(JSON))).isEqualTo(JSON);
+        assertThat(written(RawJson.of(padded, 2, bytes.length))).isEqualTo(JSON);
+        assertThat(written(RawJson.of(direct))).isEqualTo(JSON);
+        assertThat(written(RawJson.of(buffer))).isEqualTo(JSON);
+        assertThat(written(RawJson.of(new ByteArrayResource(bytes)))).isEqualTo(JSON);
+    }
+
+    @Test
+    void isSplicedVerbatimByJackson() throws IOException {
+        String json = new ObjectMapper().writeValueAsString(Map.of("raw", RawJson.of(JSON)));
+
+        assertThat(json).isEqualTo("{\"raw\":" + JSON + "}");
+    }
+
+    @Test
+    void isReencodedForBinaryFormats() throws IOException {
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+        byte[] encoded = cbor.writeValueAsBytes(Map.of("raw", RawJson.of(JSON)));
+
+        assertThat(cbor.readTree(encoded).at("/raw/tags/0").asText()).isEqualTo("a");
+        assertThat(cbor.readTree(encoded).at("/raw/id").asInt()).isEqualTo(7);
+    }
+
+    @Test
+    void validatesOnRequest() {
+        assertThat(RawJson.of(JSON).validate()).isNotNull();
+        assertThatIllegalStateException().isThrownBy(() -> RawJson.of("").validate())
+                .withMessage("Raw JSON is empty");
+        assertThatIllegalStateException().isThrownBy(() -> RawJson.of("{} {}").validate())
+                .withMessage("Raw JSON has trailing content");
+        assertThatIllegalStateException().isThrownBy(() -> RawJson.of("{\"id\":").validate())
+                .withMessage("Invalid raw JSON");
+    }
+
+    private static String written(RawJson raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        raw.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
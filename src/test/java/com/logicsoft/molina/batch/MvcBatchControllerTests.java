@@ -0,0 +1,279 @@
+package com.logicsoft.molina.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.api.RawJson;
+import com.logicsoft.molina.core.TimestampSource;
+import com.logicsoft.molina.exception.ExceptionClassifier;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@SpringBootTest(classes = MvcBatchControllerTests.App.class,
+        properties = "molina.response-handler.batch.enabled=true")
+@AutoConfigureMockMvc
+class MvcBatchControllerTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private DispatcherServlet dispatcherServlet;
+
+    /* Initialized by the container in a running application; MockMvc serves requests through its own */
+    @BeforeEach
+    void initDispatcherServlet() throws ServletException {
+        if (dispatcherServlet.getServletConfig() == null) {
+            dispatcherServlet.init(new MockServletConfig(context.getServletContext(), "dispatcherServlet"));
+        }
+    }
+
+    @Test
+    void oneFailingCallDoesNotAffectTheOthers() throws Exception {
+        JsonNode data = batch(post("/batch"), "[{\"path\":\"/items?id=1\"},{\"path\":\"/invalid\"},"
+                + "{\"path\":\"/broken\"},{\"path\":\"/items?id=2\"}]");
+
+        assertThat(data.get(0).at("/data/id").asText()).isEqualTo("1");
+        assertThat(data.get(1).get("status").asInt()).isEqualTo(400);
+        assertThat(data.get(1).at("/errors/_error").asText()).isEqualTo("bad id");
+        assertThat(data.get(2).get("status").asInt()).isEqualTo(500);
+        assertThat(data.get(2).get("message").asText()).isEqualTo(ExceptionClassifier.UNEXPECTED_ERROR);
+        assertThat(data.get(3).at("/data/id").asText()).isEqualTo("2");
+    }
+
+    @Test
+    void waitsForAsyncHandlers() throws Exception {
+        JsonNode data = batch(post("/batch"), "[{\"path\":\"/async\"},{\"path\":\"/async-failure\"}]");
+
+        assertThat(data.get(0).at("/data/async").asBoolean()).isTrue();
+        assertThat(data.get(1).get("status").asInt()).isEqualTo(400);
+        assertThat(data.get(1).at("/errors/_error").asText()).isEqualTo("late");
+    }
+
+    @Test
+    void runsCallsThroughTheFiltersMappedToTheirPath() throws Exception {
+        JsonNode data = batch(post("/batch").header("X-Tenant", "acme"),
+                "[{\"path\":\"/secured/report\"},{\"path\":\"/secured/report\",\"headers\":{\"X-Key\":\"open\"}},"
+                        + "{\"path\":\"/tenant\"}]");
+
+        assertThat(data.get(0).get("status").asInt()).isEqualTo(403);
+        assertThat(data.get(1).at("/data/report").asText()).isEqualTo("ok");
+        // Set by a filter on the worker thread, then read by the handler through the request context
+        assertThat(data.get(2).at("/data/tenant").asText()).isEqualTo("acme");
+        assertThat(data.get(2).at("/data/uri").asText()).isEqualTo("/tenant");
+    }
+
+    @Test
+    void splitsTheDispatcherServletPrefixFromThePath() throws Exception {
+        JsonNode data = batch(post("/api/batch").servletPath("/api"),
+                "[{\"path\":\"/api/mapping\"},{\"path\":\"/mapping\"}]");
+
+        assertThat(data.get(0).at("/data/servletPath").asText()).isEqualTo("/api");
+        assertThat(data.get(0).at("/data/pathInfo").asText()).isEqualTo("/mapping");
+        assertThat(data.get(0).at("/data/uri").asText()).isEqualTo("/api/mapping");
+        assertThat(data.get(1).get("status").asInt()).isEqualTo(404);
+    }
+
+    @Test
+    void keepsTheWholePathAsServletPathUnderTheDefaultServlet() throws Exception {
+        JsonNode data = batch(post("/batch").servletPath("/batch"), "[{\"path\":\"/mapping\"}]");
+
+        assertThat(data.get(0).at("/data/servletPath").asText()).isEqualTo("/mapping");
+        assertThat(data.get(0).at("/data/pathInfo").isNull()).isTrue();
+    }
+
+    @Test
+    void skipsCallsNotStartedOnceTheResponseIsClosed() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        MvcBatchController controller = new MvcBatchController(context.getBeanProvider(DispatcherServlet.class),
+                context, executor, mapper, TimestampSource.system(), ExceptionClassifier.defaults(), 20, 1);
+        Handlers.COUNTED.set(0);
+        Handlers.entered = new CountDownLatch(1);
+        Handlers.release = new CountDownLatch(1);
+        MockHttpServletRequest request = new MockHttpServletRequest(context.getServletContext(), "POST", "/batch");
+        List<BatchRequest> calls = mapper.readValue("[{\"path\":\"/gate\"},{\"path\":\"/counted\"},"
+                + "{\"path\":\"/counted\"}]", mapper.getTypeFactory().constructCollectionType(List.class,
+                BatchRequest.class));
+
+        Iterator<RawJson> results = controller.batch(calls, request, new MockHttpServletResponse());
+        assertThat(Handlers.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        // As when writing the batch response fails
+        ((AutoCloseable) results).close();
+        Handlers.release.countDown();
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(Handlers.COUNTED).hasValue(0);
+    }
+
+    private JsonNode batch(MockHttpServletRequestBuilder request, String calls) throws Exception {
+        byte[] body = mvc.perform(request.contentType(MediaType.APPLICATION_JSON).content(calls))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode envelope = mapper.readTree(body);
+        assertThat(envelope.get("status").asInt()).isEqualTo(200);
+        return envelope.get("data");
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import(Handlers.class)
+    static class App {
+
+        @Bean
+        FilterRegistrationBean<OncePerRequestFilter> keyFilter() {
+            FilterRegistrationBean<OncePerRequestFilter> registration = new FilterRegistrationBean<>(
+                    new OncePerRequestFilter() {
+                        @Override
+                        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                                        FilterChain chain) throws ServletException, IOException {
+                            if ("open".equals(request.getHeader("X-Key"))) {
+                                chain.doFilter(request, response);
+                            } else {
+                                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                            }
+                        }
+                    });
+            registration.addUrlPatterns("/secured/*");
+            return registration;
+        }
+
+        @Bean
+        OncePerRequestFilter tenantFilter() {
+            return new OncePerRequestFilter() {
+                @Override
+                protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                                FilterChain chain) throws ServletException, IOException {
+                    Handlers.TENANT.set(request.getHeader("X-Tenant"));
+                    try {
+                        chain.doFilter(request, response);
+                    } finally {
+                        Handlers.TENANT.remove();
+                    }
+                }
+            };
+        }
+    }
+
+    @RestController
+    static class Handlers {
+
+        static final ThreadLocal<String> TENANT = new ThreadLocal<>();
+        static final AtomicInteger COUNTED = new AtomicInteger();
+        static volatile CountDownLatch entered;
+        static volatile CountDownLatch release;
+
+        @GetMapping("/items")
+        @ResponseHandler
+        public Map<String, Object> item(String id) {
+            return Map.of("id", id);
+        }
+
+        @GetMapping("/invalid")
+        @ResponseHandler
+        public Map<String, Object> invalid() {
+            throw new IllegalArgumentException("bad id");
+        }
+
+        @GetMapping("/broken")
+        @ResponseHandler
+        public Map<String, Object> broken() {
+            throw new IllegalStateException("connection refused");
+        }
+
+        @GetMapping("/async")
+        @ResponseHandler
+        public CompletableFuture<Map<String, Object>> async() {
+            return CompletableFuture.supplyAsync(() -> Map.of("async", true));
+        }
+
+        @GetMapping("/async-failure")
+        @ResponseHandler
+        public CompletableFuture<Map<String, Object>> asyncFailure() {
+            return CompletableFuture.supplyAsync(() -> {
+                throw new IllegalArgumentException("late");
+            });
+        }
+
+        @GetMapping("/secured/report")
+        @ResponseHandler
+        public Map<String, Object> report() {
+            return Map.of("report", "ok");
+        }
+
+        @GetMapping("/tenant")
+        @ResponseHandler
+        public Map<String, Object> tenant() {
+            HttpServletRequest current = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                    .getRequest();
+            return Map.of("tenant", String.valueOf(TENANT.get()), "uri", current.getRequestURI());
+        }
+
+        @GetMapping("/mapping")
+        @ResponseHandler
+        public Map<String, Object> mapping(HttpServletRequest request) {
+            Map<String, Object> mapping = new HashMap<>();
+            mapping.put("servletPath", request.getServletPath());
+            mapping.put("pathInfo", request.getPathInfo());
+            mapping.put("uri", request.getRequestURI());
+            return mapping;
+        }
+
+        @GetMapping("/gate")
+        @ResponseHandler
+        public Map<String, Object> gate() throws InterruptedException {
+            entered.countDown();
+            return Map.of("released", release.await(5, TimeUnit.SECONDS));
+        }
+
+        @GetMapping("/counted")
+        @ResponseHandler
+        public Map<String, Object> counted() {
+            return Map.of("count", COUNTED.incrementAndGet());
+        }
+    }
+}
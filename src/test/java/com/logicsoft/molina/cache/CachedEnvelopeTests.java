@@ -0,0 +1,113 @@
+package com.logicsoft.molina.cache;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.logicsoft.molina.core.ETags;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class CachedEnvelopeTests {
+
+    private static final SerializableString TIMESTAMP = new SerializedString("2026-01-02T03:04:05.678Z");
+
+    @Test
+    void servesTheEnvelopeWithAFreshTimestamp() throws IOException {
+        CachedEnvelope cached = CachedEnvelope.of(200, envelope("[1,2]"), false, null);
+
+        assertThat(identity(cached, TIMESTAMP)).isEqualTo("{\"timestamp\":\"2026-01-02T03:04:05.678Z\","
+                + "\"status\":200,\"result\":true,\"data\":[1,2]}");
+        assertThat(identity(cached, new SerializedString("2026-01-02T03:04:06Z")))
+                .startsWith("{\"timestamp\":\"2026-01-02T03:04:06Z\",\"status\":200");
+    }
+
+    @Test
+    void gzipFormInflatesToTheIdentityForm() throws IOException {
+        Random random = new Random(42);
+        for (int size : new int[]{0, 1, 100, 70_000, 300_000}) {
+            StringBuilder data = new StringBuilder("\"");
+            for (int i = 0; i < size; i++) data.append((char) ('a' + random.nextInt(26)));
+            CachedEnvelope cached = CachedEnvelope.of(200, envelope(data.append('"').toString()), true, null);
+            byte[] gzip = gzip(cached, TIMESTAMP);
+            String identity = identity(cached, TIMESTAMP);
+
+            // GZIPInputStream checks the trailer's CRC32 and length against what it inflated
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+                assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(identity);
+            }
+            assertThat(trailerCrc(gzip)).isEqualTo(crc(identity));
+            assertThat(cached.length(TIMESTAMP, true)).isEqualTo(gzip.length);
+            assertThat(cached.length(TIMESTAMP, false)).isEqualTo(identity.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    @Test
+    void combinesTheCrcForEveryTimestamp() throws IOException {
+        CachedEnvelope cached = CachedEnvelope.of(200, envelope("{\"id\":7}"), true, null);
+
+        for (String timestamp : new String[]{"2026-01-02T03:04:05Z", "2026-12-31T23:59:59.999999999Z", ""}) {
+            SerializedString text = new SerializedString(timestamp);
+            assertThat(trailerCrc(gzip(cached, text))).isEqualTo(crc(identity(cached, text)));
+        }
+    }
+
+    @Test
+    void writesTheHeadersOfTheSelectedForm() {
+        CachedEnvelope cached = CachedEnvelope.of(200, envelope("1"), true, "\"abc\"");
+        HttpHeaders identity = new HttpHeaders();
+        cached.writeHeaders(identity, TIMESTAMP, false);
+        HttpHeaders gzip = new HttpHeaders();
+        cached.writeHeaders(gzip, TIMESTAMP, true);
+
+        assertThat(identity.getContentLength()).isEqualTo(cached.length(TIMESTAMP, false));
+        assertThat(identity.containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(gzip.getContentLength()).isEqualTo(cached.length(TIMESTAMP, true));
+        assertThat(gzip.getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(cached.getETag(false)).isEqualTo("\"abc\"");
+        assertThat(cached.getETag(true)).isEqualTo(ETags.gzip("\"abc\""));
+    }
+
+    @Test
+    void rejectsWhatIsNotAnEnvelope() {
+        assertThatIllegalArgumentException().isThrownBy(() -> CachedEnvelope.of(200, new byte[]{'['}, false, null));
+        assertThatIllegalArgumentException().isThrownBy(() -> CachedEnvelope.of(200, "[1]".getBytes(), false, null));
+    }
+
+    private static byte[] envelope(String data) {
+        return ("{\"status\":200,\"result\":true,\"data\":" + data + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String identity(CachedEnvelope cached, SerializableString timestamp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cached.writeTo(out, timestamp, false);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(CachedEnvelope cached, SerializableString timestamp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cached.writeTo(out, timestamp, true);
+        return out.toByteArray();
+    }
+
+    private static int trailerCrc(byte[] gzip) {
+        return ByteBuffer.wrap(gzip, gzip.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private static int crc(String identity) {
+        CRC32 crc = new CRC32();
+        crc.update(identity.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,152 @@
+package com.logicsoft.molina.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.logicsoft.molina.annotations.Cached;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.core.ETags;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest(classes = EnvelopeCacheMvcTests.App.class)
+@AutoConfigureMockMvc
+class EnvelopeCacheMvcTests {
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private EnvelopeCache cache;
+
+    @BeforeEach
+    void reset() {
+        cache.invalidateAll();
+        Handlers.CALLS.set(0);
+    }
+
+    @Test
+    void servesJsonHitsFromTheCache() throws Exception {
+        assertThat(json(fetch("/cached", MediaType.APPLICATION_JSON)).at("/data/calls").asInt()).isEqualTo(1);
+        assertThat(json(fetch("/cached", MediaType.APPLICATION_JSON)).at("/data/calls").asInt()).isEqualTo(1);
+        assertThat(Handlers.CALLS).hasValue(1);
+    }
+
+    @Test
+    void servesTheGzipCopyToClientsThatAcceptIt() throws Exception {
+        fetch("/gzipped", MediaType.APPLICATION_JSON);
+
+        MvcResult result = mvc.perform(get("/gzipped").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8")).andReturn();
+
+        assertThat(result.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        byte[] gzip = result.getResponse().getContentAsByteArray();
+        assertThat(result.getResponse().getContentLengthLong()).isEqualTo(gzip.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            JsonNode body = new ObjectMapper().readTree(in.readAllBytes());
+            assertThat(body.get("timestamp").asText()).isNotEmpty();
+            assertThat(body.at("/data/calls").asInt()).isEqualTo(1);
+        }
+        assertThat(Handlers.CALLS).hasValue(1);
+    }
+
+    @Test
+    void answersTheTagOfEachEncodingWith304() throws Exception {
+        MvcResult identity = fetch("/gzipped", MediaType.APPLICATION_JSON);
+        String etag = identity.getResponse().getHeader(HttpHeaders.ETAG);
+        MvcResult gzip = mvc.perform(get("/gzipped").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")).andReturn();
+
+        assertThat(gzip.getResponse().getHeader(HttpHeaders.ETAG)).isEqualTo(ETags.gzip(etag));
+        assertThat(mvc.perform(get("/gzipped").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn().getResponse().getStatus()).isEqualTo(304);
+        assertThat(mvc.perform(get("/gzipped").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, ETags.gzip(etag)))
+                .andReturn().getResponse().getStatus()).isEqualTo(304);
+        assertThat(Handlers.CALLS).hasValue(1);
+    }
+
+    @Test
+    void bypassesTheCacheForOtherAcceptedFormats() throws Exception {
+        fetch("/cached", MediaType.APPLICATION_JSON);
+
+        MvcResult result = fetch("/cached", CBOR);
+
+        assertThat(result.getResponse().getContentType()).startsWith(CBOR.toString());
+        JsonNode body = new ObjectMapper(new CBORFactory()).readTree(result.getResponse().getContentAsByteArray());
+        assertThat(body.at("/data/calls").asInt()).isEqualTo(2);
+    }
+
+    @Test
+    void negotiatesWithTheApplicationsStrategies() throws Exception {
+        fetch("/cached", MediaType.APPLICATION_JSON);
+
+        // Same key (the query is not part of it), but the app's parameter strategy picks CBOR
+        MvcResult result = mvc.perform(get("/cached").param("format", "cbor")).andReturn();
+
+        assertThat(result.getResponse().getContentType()).startsWith(CBOR.toString());
+        assertThat(Handlers.CALLS).hasValue(2);
+    }
+
+    private MvcResult fetch(String path, MediaType accept) throws Exception {
+        return mvc.perform(get(path).accept(accept)).andReturn();
+    }
+
+    private static JsonNode json(MvcResult result) throws Exception {
+        assertThat(result.getResponse().getContentType()).startsWith(MediaType.APPLICATION_JSON_VALUE);
+        return new ObjectMapper().readTree(result.getResponse().getContentAsByteArray());
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import(Handlers.class)
+    static class App implements WebMvcConfigurer {
+
+        @Override
+        public void configureContentNegotiation(ContentNegotiationConfigurer configurer) {
+            configurer.favorParameter(true).mediaType("cbor", CBOR);
+        }
+    }
+
+    @RestController
+    static class Handlers {
+
+        static final AtomicInteger CALLS = new AtomicInteger();
+
+        @GetMapping("/cached")
+        @ResponseHandler(cache = @Cached(ttlMillis = 60000, query = false))
+        public Map<String, Object> cached() {
+            return Map.of("calls", CALLS.incrementAndGet());
+        }
+
+        @GetMapping("/gzipped")
+        @ResponseHandler(etag = true, cache = @Cached(ttlMillis = 60000, gzip = true))
+        public Map<String, Object> gzipped() {
+            return Map.of("calls", CALLS.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.logicsoft.molina.config;
+
+import com.logicsoft.molina.core.HandlerDescriptorRegistry;
+import com.logicsoft.molina.core.OffloadingHandlerAdapter;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MvcOffloadConfigTests {
+
+    private final WebApplicationContextRunner runner = new WebApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class,
+                    HttpMessageConvertersAutoConfiguration.class, WebMvcAutoConfiguration.class,
+                    ResponseHandlerAutoConfiguration.class))
+            .withPropertyValues("molina.response-handler.mvc.virtual-threads=true")
+            .withBean(OffloadingHandlerAdapter.EXECUTOR_BEAN_NAME, AsyncTaskExecutor.class,
+                    SimpleAsyncTaskExecutor::new);
+
+    @Test
+    void installsTheOffloadingAdapter() {
+        runner.run(context -> assertThat(context).hasNotFailed()
+                .getBean(RequestMappingHandlerAdapter.class).isInstanceOf(OffloadingHandlerAdapter.class));
+    }
+
+    @Test
+    void failsWhenTheApplicationsRegistrationsKeepTheDefaultAdapter() {
+        runner.withUserConfiguration(DefaultAdapter.class).run(context -> assertThat(context).hasFailed()
+                .getFailure().hasMessageContaining("molina.response-handler.mvc.virtual-threads"));
+    }
+
+    @Test
+    void acceptsRegistrationsReturningAnOffloadingAdapter() {
+        runner.withUserConfiguration(OwnOffloadingAdapter.class).run(context -> assertThat(context).hasNotFailed()
+                .getBean(RequestMappingHandlerAdapter.class).isInstanceOf(OffloadingHandlerAdapter.class));
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class DefaultAdapter {
+
+        @Bean
+        WebMvcRegistrations registrations() {
+            return new WebMvcRegistrations() {
+            };
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    static class OwnOffloadingAdapter {
+
+        @Bean
+        WebMvcRegistrations registrations() {
+            return new WebMvcRegistrations() {
+                @Override
+                public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                    return new OffloadingHandlerAdapter(new HandlerDescriptorRegistry(), new SimpleAsyncTaskExecutor());
+                }
+            };
+        }
+    }
+}
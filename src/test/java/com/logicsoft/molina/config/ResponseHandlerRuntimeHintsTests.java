@@ -0,0 +1,73 @@
+package com.logicsoft.molina.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.batch.BatchRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.ReflectionHintsPredicates;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseHandlerRuntimeHintsTests {
+
+    private final ReflectionHintsPredicates reflection = RuntimeHintsPredicates.reflection();
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @BeforeEach
+    void registerHints() {
+        new ResponseHandlerRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void envelopeIsBound() {
+        assertThat(reflection.onType(ApiResponse.class)).accepts(hints);
+        assertThat(reflection.onMethod(ApiResponse.class, "getData")).accepts(hints);
+        assertThat(reflection.onMethod(ApiResponse.class, "setData")).accepts(hints);
+    }
+
+    @Test
+    void batchCallIsBound() {
+        assertThat(reflection.onType(BatchRequest.class)).accepts(hints);
+        assertThat(reflection.onMethod(BatchRequest.class, "path")).accepts(hints);
+    }
+
+    @Test
+    void serializersCanBeInstantiated() {
+        assertThat(reflection.onType(TypeReference.of("com.logicsoft.molina.api.RawJson$Serializer"))
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).accepts(hints);
+        assertThat(reflection.onType(TypeReference.of("com.logicsoft.molina.core.Projected$Serializer"))
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).accepts(hints);
+    }
+
+    @Test
+    void fallbackReturnTypeCanBeIntrospected() throws ClassNotFoundException {
+        assertThat(reflection.onMethod("com.logicsoft.molina.core.ApiResponseResultHandler$Dummy", "m").introspect())
+                .accepts(hints);
+    }
+
+    @Test
+    void binaryFactoriesOnTheClasspathCanBeInstantiated() {
+        assertThat(reflection.onType(SmileFactory.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)).accepts(hints);
+        assertThat(reflection.onType(CBORFactory.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)).accepts(hints);
+        assertThat(reflection.onType(MessagePackFactory.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)).accepts(hints);
+    }
+
+    @Test
+    void missingBinaryFactoriesAreSkipped() {
+        RuntimeHints isolated = new RuntimeHints();
+        new ResponseHandlerRuntimeHints().registerHints(isolated, new ClassLoader(null) { });
+        assertThat(reflection.onType(SmileFactory.class)).rejects(isolated);
+        assertThat(reflection.onType(ApiResponse.class)).accepts(isolated);
+    }
+}
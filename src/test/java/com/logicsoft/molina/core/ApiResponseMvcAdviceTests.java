@@ -0,0 +1,172 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.api.Versioned;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest(classes = ApiResponseMvcAdviceTests.App.class)
+@AutoConfigureMockMvc
+class ApiResponseMvcAdviceTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void streamsTheElementsOfAnIterator() throws Exception {
+        JsonNode envelope = envelope(get("/iterator"));
+
+        assertThat(envelope.get("status").asInt()).isEqualTo(200);
+        assertThat(envelope.get("data")).hasSize(100);
+        assertThat(envelope.at("/data/99/n").asInt()).isEqualTo(99);
+    }
+
+    @Test
+    void endsTheStreamWithTheErrorOfAFailingIterator() throws Exception {
+        JsonNode envelope = envelope(get("/iterator-failure"));
+
+        assertThat(envelope.get("status").asInt()).isEqualTo(200);
+        assertThat(envelope.get("data")).hasSize(1);
+        assertThat(envelope.at("/errors/_error").asText()).isEqualTo("cursor closed");
+    }
+
+    @Test
+    void tagsTheEnvelopeAndAnswersAMatchingIfNoneMatchWith304() throws Exception {
+        MockHttpServletResponse first = mvc.perform(get("/tagged").accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        String etag = first.getHeader(HttpHeaders.ETAG);
+
+        assertThat(etag).matches("\"[0-9a-f]{32}\"");
+        MockHttpServletResponse second = mvc.perform(get("/tagged").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn().getResponse();
+        assertThat(second.getStatus()).isEqualTo(304);
+        assertThat(second.getContentAsByteArray()).isEmpty();
+        assertThat(second.getHeader(HttpHeaders.ETAG)).isEqualTo(etag);
+        MockHttpServletResponse other = mvc.perform(get("/tagged").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\"")).andReturn().getResponse();
+        assertThat(other.getStatus()).isEqualTo(200);
+        assertThat(mapper.readTree(other.getContentAsByteArray()).at("/data/id").asInt()).isEqualTo(7);
+    }
+
+    @Test
+    void answersAMatchingVersionBeforeLoadingTheData() throws Exception {
+        Handlers.LOADS.set(0);
+        String etag = mvc.perform(get("/versioned").accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse response = mvc.perform(get("/versioned").accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn().getResponse();
+
+        assertThat(etag).isEqualTo(ETags.ofVersion(EnvelopeFormat.JSON, "r42"));
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(Handlers.LOADS).hasValue(1);
+    }
+
+    @Test
+    void writesTheFieldsTheRequestAsksFor() throws Exception {
+        JsonNode requested = envelope(get("/profile").param("fields", "name,address.city"));
+        JsonNode defaults = envelope(get("/profile"));
+
+        assertThat(requested.get("data").toString()).isEqualTo("{\"name\":\"Ada\",\"address\":{\"city\":\"London\"}}");
+        assertThat(defaults.get("data").toString()).isEqualTo("{\"id\":1,\"name\":\"Ada\"}");
+    }
+
+    @Test
+    void answersAMalformedFieldListWith400() throws Exception {
+        MockHttpServletResponse response = mvc.perform(get("/profile").param("fields", "name(")
+                .accept(MediaType.APPLICATION_JSON)).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        assertThat(mapper.readTree(response.getContentAsByteArray()).get("result").asBoolean()).isFalse();
+    }
+
+    private JsonNode envelope(MockHttpServletRequestBuilder request) throws Exception {
+        byte[] body = mvc.perform(request.accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsByteArray();
+        return mapper.readTree(body);
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import(Handlers.class)
+    static class App {
+    }
+
+    @RestController
+    static class Handlers {
+
+        static final AtomicInteger LOADS = new AtomicInteger();
+
+        @GetMapping("/iterator")
+        @ResponseHandler
+        public Iterator<Map<String, Object>> iterator() {
+            return IntStream.range(0, 100).<Map<String, Object>>mapToObj(n -> Map.of("n", n)).iterator();
+        }
+
+        @GetMapping("/tagged")
+        @ResponseHandler(etag = true)
+        public Map<String, Object> tagged() {
+            return Map.of("id", 7);
+        }
+
+        @GetMapping("/versioned")
+        @ResponseHandler(etag = true)
+        public Versioned<Map<String, Object>> versioned() {
+            return Versioned.lazy("r42", () -> Map.of("loads", LOADS.incrementAndGet()));
+        }
+
+        @GetMapping("/profile")
+        @ResponseHandler(fields = "id,name")
+        public Map<String, Object> profile() {
+            Map<String, Object> profile = new LinkedHashMap<>();
+            profile.put("id", 1);
+            profile.put("name", "Ada");
+            profile.put("address", Map.of("city", "London", "street", "St James's Square"));
+            return profile;
+        }
+
+        @GetMapping("/iterator-failure")
+        @ResponseHandler
+        public Iterator<Integer> iteratorFailure() {
+            Iterator<Integer> first = List.of(1).iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public Integer next() {
+                    if (!first.hasNext()) throw new IllegalArgumentException("cursor closed");
+                    return first.next();
+                }
+            };
+        }
+    }
+}
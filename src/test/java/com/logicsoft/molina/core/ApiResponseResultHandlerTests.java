@@ -0,0 +1,189 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.Bounded;
+import com.logicsoft.molina.annotations.FluxMode;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = ApiResponseResultHandlerTests.App.class,
+        properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+class ApiResponseResultHandlerTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private WebTestClient client;
+
+    @Test
+    void writesTheEnvelopeWithItsLength() throws Exception {
+        byte[] body = client.get().uri("/item").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody().returnResult().getResponseBody();
+        JsonNode envelope = mapper.readTree(body);
+
+        assertThat(envelope.get("status").asInt()).isEqualTo(200);
+        assertThat(envelope.at("/data/id").asInt()).isEqualTo(7);
+        client.get().uri("/item").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectHeader().contentLength(body.length);
+    }
+
+    @Test
+    void answersAMatchingIfNoneMatchWith304() {
+        String etag = client.get().uri("/tagged").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class).getResponseHeaders().getETag();
+
+        assertThat(etag).matches("\"[0-9a-f]{32}\"");
+        client.get().uri("/tagged").accept(MediaType.APPLICATION_JSON).ifNoneMatch(etag).exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+                .expectBody().isEmpty();
+        client.get().uri("/tagged").accept(MediaType.APPLICATION_JSON).ifNoneMatch("\"other\"").exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void streamsEachElementIntoTheDataArray() throws Exception {
+        JsonNode envelope = get("/stream");
+
+        assertThat(envelope.get("status").asInt()).isEqualTo(200);
+        assertThat(envelope.get("result").asBoolean()).isTrue();
+        assertThat(envelope.get("data")).hasSize(3);
+        assertThat(envelope.at("/data/2/n").asInt()).isEqualTo(3);
+        assertThat(envelope.has("errors")).isFalse();
+    }
+
+    @Test
+    void closesTheArrayWithTheErrorWhenTheFluxFailsMidStream() throws Exception {
+        JsonNode envelope = get("/stream-failure");
+
+        // The status was already sent with the prefix
+        assertThat(envelope.get("status").asInt()).isEqualTo(200);
+        assertThat(envelope.get("data")).hasSize(2);
+        assertThat(envelope.at("/errors/_error").asText()).isEqualTo("third element");
+        assertThat(envelope.get("message").asText()).isNotEmpty();
+    }
+
+    @Test
+    void streamsAnEmptyFluxAsAnEmptyArray() throws Exception {
+        JsonNode envelope = get("/stream-empty");
+
+        assertThat(envelope.get("data").isArray()).isTrue();
+        assertThat(envelope.get("data")).isEmpty();
+    }
+
+    @Test
+    void negotiatesNdjsonForAStreamHandler() {
+        String body = client.get().uri("/stream").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        // One envelope per element, then the terminal one
+        assertThat(body.strip().split("\n")).hasSize(4);
+    }
+
+    @Test
+    void truncatesACollectedFluxAndCancelsItAtTheBound() throws Exception {
+        Handlers.EMITTED.set(0);
+        JsonNode envelope = get("/bounded");
+
+        assertThat(envelope.get("data")).hasSize(3);
+        assertThat(envelope.get("message").asText()).isEqualTo("Result truncated");
+        assertThat(envelope.get("next").asText()).isEqualTo("3");
+        assertThat(Handlers.EMITTED).hasValue(4);
+    }
+
+    @Test
+    void rejectsACollectedFluxOverItsBound() throws Exception {
+        byte[] body = client.get().uri("/bounded-reject").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isEqualTo(507)
+                .expectBody().returnResult().getResponseBody();
+
+        assertThat(mapper.readTree(body).get("result").asBoolean()).isFalse();
+    }
+
+    private JsonNode get(String uri) throws Exception {
+        byte[] body = client.get().uri(uri).accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBody().returnResult().getResponseBody();
+        return mapper.readTree(body);
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import(Handlers.class)
+    static class App {
+    }
+
+    @RestController
+    static class Handlers {
+
+        static final AtomicInteger EMITTED = new AtomicInteger();
+
+        @GetMapping("/item")
+        @ResponseHandler
+        public Map<String, Object> item() {
+            return Map.of("id", 7);
+        }
+
+        @GetMapping("/tagged")
+        @ResponseHandler(etag = true)
+        public Map<String, Object> tagged() {
+            return Map.of("id", 7);
+        }
+
+        @GetMapping("/bounded")
+        @ResponseHandler(bounds = @Bounded(maxElements = 3, overflow = Bounded.Overflow.TRUNCATE, cursor = "n"))
+        public Flux<Map<String, Object>> bounded() {
+            return Flux.range(1, 1000).doOnNext(n -> EMITTED.incrementAndGet()).map(n -> Map.of("n", n));
+        }
+
+        @GetMapping("/bounded-reject")
+        @ResponseHandler(bounds = @Bounded(maxElements = 3))
+        public Flux<Integer> boundedReject() {
+            return Flux.range(1, 1000);
+        }
+
+        @GetMapping("/stream")
+        @ResponseHandler(flux = FluxMode.STREAM)
+        public Flux<Map<String, Object>> stream() {
+            return Flux.range(1, 3).map(n -> Map.of("n", n));
+        }
+
+        @GetMapping("/stream-failure")
+        @ResponseHandler(flux = FluxMode.STREAM)
+        public Flux<Map<String, Object>> streamFailure() {
+            return Flux.range(1, 2).<Map<String, Object>>map(n -> Map.of("n", n))
+                    .concatWith(Flux.error(new IllegalArgumentException("third element")));
+        }
+
+        @GetMapping("/stream-empty")
+        @ResponseHandler(flux = FluxMode.STREAM)
+        public Flux<Map<String, Object>> streamEmpty() {
+            return Flux.empty();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.Bounded;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import com.logicsoft.molina.exception.ResultTooLargeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class BoundedCollectorTests {
+
+    private final EnvelopeWriter writer = new EnvelopeWriter(new ObjectMapper());
+
+    @Test
+    void keepsEverythingWithinTheBounds() {
+        List<Map<String, Object>> elements = items(5);
+
+        assertThat(collect(new FluxBounds(5, 0, Bounded.Overflow.TRUNCATE, ""), elements)).isEqualTo(elements);
+    }
+
+    @Test
+    void truncatesAtTheElementThatCrossesTheBound() {
+        Object result = collect(new FluxBounds(3, 0, Bounded.Overflow.TRUNCATE, ""), items(10));
+
+        assertThat(result).isInstanceOf(Truncated.class);
+        Truncated truncated = (Truncated) result;
+        assertThat(truncated.data()).isEqualTo(items(3));
+        assertThat(truncated.next()).isEqualTo("3");
+    }
+
+    @Test
+    void takesTheNextCursorFromTheLastElementKept() {
+        Truncated truncated = (Truncated) collect(new FluxBounds(3, 0, Bounded.Overflow.TRUNCATE, "id"), items(10));
+
+        assertThat(truncated.next()).isEqualTo("id-2");
+    }
+
+    @Test
+    void boundsTheEstimatedSize() {
+        // {"id":"id-0"} is 13 bytes, 14 with its separator
+        Truncated truncated = (Truncated) collect(new FluxBounds(0, 14 * 20, Bounded.Overflow.TRUNCATE, ""),
+                items(100));
+
+        assertThat(truncated.data()).hasSizeBetween(15, 20);
+    }
+
+    @Test
+    void rejectsWhatCrossesABoundUnlessTruncating() {
+        assertThatExceptionOfType(ResultTooLargeException.class)
+                .isThrownBy(() -> collect(new FluxBounds(3, 0, Bounded.Overflow.REJECT, ""), items(10)))
+                .satisfies(ex -> {
+                    assertThat(ex.getReason()).isEqualTo("More than 3 elements");
+                    assertThat(ex.getStatusCode().value()).isEqualTo(507);
+                    assertThat(ex.getStackTrace()).isEmpty();
+                });
+    }
+
+    @Test
+    void handlerAttributesOverrideTheGlobalBounds() {
+        FluxBounds global = new FluxBounds(100, 1000, null, null);
+        Bounded handler = Handler.class.getDeclaredMethods()[0].getAnnotation(ResponseHandler.class).bounds();
+
+        assertThat(global.overflow()).isEqualTo(Bounded.Overflow.REJECT);
+        assertThat(global.with(null)).isSameAs(global);
+        assertThat(global.with(handler)).isEqualTo(new FluxBounds(10, 1000, Bounded.Overflow.TRUNCATE, "id"));
+        assertThat(FluxBounds.UNBOUNDED.isBounded()).isFalse();
+    }
+
+    /* What ApiResponseResultHandler does: takeUntil keeps the element that crosses the bound */
+    private Object collect(FluxBounds bounds, List<?> elements) {
+        BoundedCollector collector = new BoundedCollector(bounds, writer, false);
+        List<Object> collected = new ArrayList<>();
+        for (Object element : elements) {
+            collected.add(element);
+            if (collector.exceeds(element)) break;
+        }
+        return collector.finish(collected);
+    }
+
+    private static List<Map<String, Object>> items(int count) {
+        return IntStream.range(0, count).<Map<String, Object>>mapToObj(i -> Map.of("id", "id-" + i)).toList();
+    }
+
+    interface Handler {
+
+        @ResponseHandler(bounds = @Bounded(maxElements = 10, overflow = Bounded.Overflow.TRUNCATE, cursor = "id"))
+        void bounded();
+    }
+}
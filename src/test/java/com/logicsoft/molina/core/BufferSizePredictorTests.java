@@ -0,0 +1,33 @@
+package com.logicsoft.molina.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BufferSizePredictorTests {
+
+    @Test
+    void predictsTheAverageWithHeadroom() {
+        BufferSizePredictor sizes = new BufferSizePredictor(8192);
+
+        assertThat(sizes.predict()).isEqualTo(8192 + 1024);
+    }
+
+    @Test
+    void movesTowardsTheRecordedSizes() {
+        BufferSizePredictor sizes = new BufferSizePredictor();
+        for (int i = 0; i < 100; i++) sizes.record(4000);
+
+        assertThat(sizes.predict()).isBetween(4000, 4000 + 500);
+    }
+
+    @Test
+    void staysWithinItsBounds() {
+        BufferSizePredictor sizes = new BufferSizePredictor(0);
+        for (int i = 0; i < 100; i++) sizes.record(0);
+        assertThat(sizes.predict()).isEqualTo(BufferSizePredictor.MIN_SIZE + (BufferSizePredictor.MIN_SIZE >>> 3));
+
+        for (int i = 0; i < 200; i++) sizes.record(Integer.MAX_VALUE);
+        assertThat(sizes.predict()).isLessThanOrEqualTo(BufferSizePredictor.MAX_SIZE);
+    }
+}
@@ -0,0 +1,144 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest(classes = DeadlineInterceptorTests.App.class,
+        properties = "molina.response-handler.deadline.header=X-Deadline-Millis")
+@AutoConfigureMockMvc
+class DeadlineInterceptorTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void answersADeferredResultOverItsBudgetWith504() throws Exception {
+        MvcResult started = start(get("/deferred"));
+
+        assertThat(asyncContext(started).getTimeout()).isEqualTo(100);
+        JsonNode envelope = expire(started);
+        assertThat(envelope.get("status").asInt()).isEqualTo(504);
+        assertThat(envelope.get("result").asBoolean()).isFalse();
+    }
+
+    @Test
+    void answersACallableOverItsBudgetWith504() throws Exception {
+        MvcResult started = start(get("/callable"));
+
+        assertThat(asyncContext(started).getTimeout()).isEqualTo(100);
+        assertThat(expire(started).get("status").asInt()).isEqualTo(504);
+        Handlers.release.countDown();
+    }
+
+    @Test
+    void aShorterClientDeadlineReplacesTheBudget() throws Exception {
+        assertThat(asyncContext(start(get("/deferred").header("X-Deadline-Millis", "40"))).getTimeout())
+                .isEqualTo(40);
+        assertThat(asyncContext(start(get("/deferred").header("X-Deadline-Millis", "5000"))).getTimeout())
+                .isEqualTo(100);
+        assertThat(asyncContext(start(get("/deferred").header("X-Deadline-Millis", "soon"))).getTimeout())
+                .isEqualTo(100);
+    }
+
+    @Test
+    void leavesTheTimeoutOfHandlersWithoutABudgetToSpring() throws Exception {
+        MvcResult started = start(get("/unbounded").header("X-Deadline-Millis", "soon"));
+
+        assertThat(started.getRequest().getAttributeNames().asIterator()).toIterable()
+                .noneMatch(name -> name.startsWith(DeadlineInterceptor.class.getName()));
+    }
+
+    private MvcResult start(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mvc.perform(request.accept(MediaType.APPLICATION_JSON)).andReturn();
+        assertThat(result.getRequest().isAsyncStarted()).isTrue();
+        return result;
+    }
+
+    /* MockMvc never times an async request out by itself: fire the container's timeout */
+    private JsonNode expire(MvcResult started) throws Exception {
+        MockAsyncContext context = asyncContext(started);
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context));
+        }
+        byte[] body = mvc.perform(redispatch(started)).andReturn().getResponse().getContentAsByteArray();
+        return mapper.readTree(body);
+    }
+
+    /*
+     * The timeout has set the result by now. asyncDispatch would wait for the one MockMvc records as a Callable
+     * returns, which an interrupted Callable may not have done yet.
+     */
+    private static RequestBuilder redispatch(MvcResult started) {
+        return servletContext -> {
+            MockHttpServletRequest request = started.getRequest();
+            request.setDispatcherType(DispatcherType.ASYNC);
+            request.setAsyncStarted(false);
+            return request;
+        };
+    }
+
+    private static MockAsyncContext asyncContext(MvcResult result) {
+        return (MockAsyncContext) result.getRequest().getAsyncContext();
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import(Handlers.class)
+    static class App {
+    }
+
+    @RestController
+    static class Handlers {
+
+        static final CountDownLatch release = new CountDownLatch(1);
+
+        @GetMapping("/deferred")
+        @ResponseHandler(timeoutMillis = 100)
+        public DeferredResult<Map<String, Object>> deferred() {
+            return new DeferredResult<>();
+        }
+
+        @GetMapping("/callable")
+        @ResponseHandler(timeoutMillis = 100)
+        public Callable<Map<String, Object>> callable() {
+            return () -> Map.of("released", release.await(5, TimeUnit.SECONDS));
+        }
+
+        @GetMapping("/unbounded")
+        @ResponseHandler
+        public DeferredResult<Map<String, Object>> unbounded() {
+            return new DeferredResult<>();
+        }
+    }
+}
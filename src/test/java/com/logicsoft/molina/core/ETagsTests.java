@@ -0,0 +1,50 @@
+package com.logicsoft.molina.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ETagsTests {
+
+    @Test
+    void hashesWhatFollowsTheSkippedPrefix() throws IOException {
+        byte[] envelope = "{\"timestamp\":\"2026-01-02T03:04:05Z\",\"status\":200,\"result\":true}"
+                .getBytes(StandardCharsets.UTF_8);
+        int head = "{\"timestamp\":\"2026-01-02T03:04:05Z\",".length();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ETags.Hashing hashing = ETags.hashing(out, head);
+        hashing.write(envelope, 0, 10);
+        hashing.write(envelope[10]);
+        hashing.write(envelope, 11, envelope.length - 11);
+
+        assertThat(out.toByteArray()).isEqualTo(envelope);
+        assertThat(hashing.getETag()).isEqualTo(ETags.of(envelope, head, envelope.length - head));
+    }
+
+    @Test
+    void ignoresTheTimestamp() {
+        byte[] first = "{\"timestamp\":\"1\",\"status\":200}".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "{\"timestamp\":\"22\",\"status\":200}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(ETags.of(first, 17, first.length - 17)).isEqualTo(ETags.of(second, 18, second.length - 18));
+    }
+
+    @Test
+    void tagsAreQuotedStrongTags() {
+        String etag = ETags.of(new byte[]{1, 2, 3}, 0, 3);
+
+        assertThat(etag).matches("\"[0-9a-f]{32}\"");
+        assertThat(ETags.gzip(etag)).isEqualTo(etag.substring(0, 33) + "-gzip\"");
+    }
+
+    @Test
+    void versionTagsDependOnTheFormat() {
+        assertThat(ETags.ofVersion(EnvelopeFormat.JSON, "v1")).isEqualTo(ETags.ofVersion(EnvelopeFormat.JSON, "v1"))
+                .isNotEqualTo(ETags.ofVersion(EnvelopeFormat.JSON, "v2"))
+                .isNotEqualTo(ETags.ofVersion(EnvelopeFormat.CBOR, "v1"));
+    }
+}
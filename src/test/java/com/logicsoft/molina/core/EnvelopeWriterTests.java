@@ -0,0 +1,150 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.api.RawJson;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnvelopeWriterTests {
+
+    private static final Instant NOW = Instant.parse("2026-01-02T03:04:05.678Z");
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final EnvelopeWriter writer = new EnvelopeWriter(mapper, () -> NOW);
+
+    @Test
+    void writesTheBytesOfTheReflectiveSerialization() throws IOException {
+        assertSameAsReflective(new ApiResponse<>(NOW, 200, true, Map.of("id", 7), null, null));
+        assertSameAsReflective(new ApiResponse<>(NOW, 201, true, List.of("a", "b"), null, "created"));
+        assertSameAsReflective(new ApiResponse<>(NOW, 400, false, null, Map.of("_error", "bad id"), "Bad request"));
+        assertSameAsReflective(new ApiResponse<>(null, 204, true, null, null, null));
+    }
+
+    @Test
+    void buildsTheEnvelopeFromItsParts() throws IOException {
+        ByteArrayOutputStream success = new ByteArrayOutputStream();
+        writer.write(success, 200, true, Map.of("id", 7));
+        ByteArrayOutputStream error = new ByteArrayOutputStream();
+        writer.writeError(error, 404, Map.of("_reason", "no item"), "Not found");
+
+        assertThat(success.toByteArray()).isEqualTo(
+                mapper.writeValueAsBytes(new ApiResponse<>(NOW, 200, true, Map.of("id", 7), null, null)));
+        assertThat(error.toByteArray()).isEqualTo(mapper.writeValueAsBytes(
+                new ApiResponse<>(NOW, 404, false, null, Map.of("_reason", "no item"), "Not found")));
+    }
+
+    @Test
+    void leavesTheTimestampOutForCachedEnvelopes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeWithoutTimestamp(out, 200, true, "x");
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("{\"status\":200,\"result\":true,\"data\":\"x\"}");
+    }
+
+    @Test
+    void splicesRawJsonIntoTheData() throws IOException {
+        String raw = "{\"id\": 7,  \"name\": \"x\"}";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, 200, true, RawJson.of(raw));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        writer.writeStream(stream, 200, true, List.of(RawJson.of(raw), RawJson.of("[]")).iterator(), ex -> null);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"timestamp\":\"" + NOW + "\",\"status\":200,\"result\":true,\"data\":" + raw + "}");
+        assertThat(stream.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"timestamp\":\"" + NOW + "\",\"status\":200,\"result\":true,\"data\":[" + raw + ",[]]}");
+    }
+
+    @Test
+    void streamsTheElementsOfAnIterator() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeStream(out, 200, true, List.of(1, 2, 3).iterator(), ex -> null);
+
+        assertThat(out.toByteArray()).isEqualTo(
+                mapper.writeValueAsBytes(new ApiResponse<>(NOW, 200, true, List.of(1, 2, 3), null, null)));
+    }
+
+    @Test
+    void endsTheStreamWithTheTrailerWhenIterationFails() throws IOException {
+        Iterator<Integer> failing = new Iterator<>() {
+            private int next = 1;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                if (next > 2) throw new IllegalStateException("cursor closed");
+                return next++;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeStream(out, 200, true, failing, ex -> new ApiResponse<>(null, 500, false, null,
+                Map.of("_error", ex.getMessage()), "Unexpected error"));
+
+        JsonNode envelope = mapper.readTree(out.toByteArray());
+        assertThat(envelope.get("data")).hasSize(2);
+        assertThat(envelope.at("/errors/_error").asText()).isEqualTo("cursor closed");
+        assertThat(envelope.get("message").asText()).isEqualTo("Unexpected error");
+    }
+
+    @Test
+    void closesAnElementLeftHalfWrittenBeforeTheTrailer() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeStream(out, 200, true, List.of(new Failing(false), new Failing(true)).iterator(),
+                ex -> new ApiResponse<>(null, 500, false, null, null, "Unexpected error"));
+
+        JsonNode envelope = mapper.readTree(out.toByteArray());
+        assertThat(envelope.at("/data/0/name").asText()).isEqualTo("ok");
+        assertThat(envelope.at("/data/1/name").asText()).isEqualTo("ok");
+        assertThat(envelope.at("/data/1").has("value")).isFalse();
+        assertThat(envelope.get("message").asText()).isEqualTo("Unexpected error");
+    }
+
+    @Test
+    void endsABinaryStreamWithTheTrailer() throws IOException {
+        ObjectMapper cbor = new ObjectMapper(new CBORFactory()).registerModule(new JavaTimeModule());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new EnvelopeWriter(cbor, () -> NOW).writeStream(out, 200, true,
+                List.of(new Failing(false), new Failing(true)).iterator(),
+                ex -> new ApiResponse<>(null, 500, false, null, null, "Unexpected error"));
+
+        JsonNode envelope = cbor.readTree(out.toByteArray());
+        assertThat(envelope.get("data")).hasSize(2);
+        assertThat(envelope.get("message").asText()).isEqualTo("Unexpected error");
+    }
+
+    private void assertSameAsReflective(ApiResponse<?> env) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out, env);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(mapper.writeValueAsString(env));
+    }
+
+    /* Fails in its second property when asked to, after Jackson has written the first one */
+    public record Failing(boolean fail) {
+
+        public String getName() {
+            return "ok";
+        }
+
+        public String getValue() {
+            if (fail) throw new IllegalStateException("lazy load failed");
+            return "v";
+        }
+    }
+}
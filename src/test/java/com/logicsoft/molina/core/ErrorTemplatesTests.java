@@ -0,0 +1,76 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.logicsoft.molina.api.ApiResponse;
+import com.logicsoft.molina.exception.ExceptionClassifier.Classification;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class ErrorTemplatesTests {
+
+    private static final Instant NOW = Instant.parse("2026-01-02T03:04:05.678Z");
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final ErrorTemplates templates = ErrorTemplates.of(List.of(400, 404, 500, 503));
+
+    @Test
+    void writesTheBytesOfTheSerializedEnvelope() throws IOException {
+        assertSameAsSerialized(new Classification(404, "Not found", null));
+        assertSameAsSerialized(new Classification(503, null, null));
+        assertSameAsSerialized(new Classification(400, "Bad request", Map.of("_error", "bad id")));
+        assertSameAsSerialized(new Classification(404, "Not found", Map.of("_reason", "no item")));
+    }
+
+    @Test
+    void escapesTheMessageKeyAndValueAsJacksonDoes() throws IOException {
+        assertSameAsSerialized(new Classification(400, "Say \"hi\"\n", Map.of("_error", "tab\there \\ \u0001 é ✓")));
+        assertSameAsSerialized(new Classification(400, "</script> 😀", Map.of("a\"b😀", "😀")));
+        assertSameAsSerialized(new Classification(400, "Bad request", Map.of("_error", "lone \ud800 surrogate")));
+    }
+
+    @Test
+    void reusesTheTemplateForTheSameStatusMessageAndKey() {
+        ErrorTemplates.Template template = templates.find(new Classification(400, "Bad", Map.of("_error", "a")));
+
+        assertThat(templates.find(new Classification(400, "Bad", Map.of("_error", "b")))).isSameAs(template);
+        assertThat(templates.find(new Classification(400, "Bad", Map.of("_reason", "a")))).isNotSameAs(template);
+    }
+
+    @Test
+    void onlyTemplatesItsStatusesWithAtMostOneError() {
+        assertThat(templates.find(new Classification(409, "Conflict", null))).isNull();
+        assertThat(templates.find(new Classification(400, "Bad", Map.of("a", "1", "b", "2")))).isNull();
+        assertThat(ErrorTemplates.NONE.find(new Classification(500, "Unexpected error", null))).isNull();
+        assertThat(ErrorTemplates.of(List.of())).isSameAs(ErrorTemplates.NONE);
+        assertThat(ErrorTemplates.defaults().find(new Classification(429, "Too many requests", null))).isNotNull();
+    }
+
+    @Test
+    void rejectsInvalidStatuses() {
+        assertThatIllegalArgumentException().isThrownBy(() -> ErrorTemplates.of(List.of(99)))
+                .withMessage("Invalid error template status 99");
+        assertThatIllegalArgumentException().isThrownBy(() -> ErrorTemplates.of(List.of(600)));
+    }
+
+    private void assertSameAsSerialized(Classification c) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        templates.find(c).writeTo(out, new SerializedString(NOW.toString()), c);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        new EnvelopeWriter(mapper, () -> NOW).writeError(written, c.status(), c.errors(), c.message());
+
+        byte[] serialized = mapper.writeValueAsBytes(new ApiResponse<>(NOW, c.status(), false, null, c.errors(),
+                c.message()));
+        assertThat(out.toByteArray()).isEqualTo(serialized);
+        assertThat(written.toByteArray()).isEqualTo(serialized);
+    }
+}
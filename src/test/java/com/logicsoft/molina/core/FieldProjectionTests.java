@@ -0,0 +1,124 @@
+package com.logicsoft.molina.core;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.api.RawJson;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class FieldProjectionTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void parsesToACanonicalForm() {
+        assertThat(FieldProjection.parse("b.x, a ,b.y")).hasToString("a,b(x,y)");
+        assertThat(FieldProjection.parse("items(sku,qty),id")).hasToString("id,items(qty,sku)");
+        assertThat(FieldProjection.parse("a.b.c,a(d)")).hasToString("a(b(c),d)");
+        assertThat(FieldProjection.parse("b.x,b")).hasToString("b");
+        assertThat(FieldProjection.parse("a,b")).isEqualTo(FieldProjection.parse("b, a"));
+    }
+
+    @Test
+    void selectsNamesAndTheirNestedProjections() {
+        FieldProjection fields = FieldProjection.parse("id,address.city");
+
+        assertThat(fields.includes("id")).isTrue();
+        assertThat(fields.child("id")).isNull();
+        assertThat(fields.includes("name")).isFalse();
+        assertThat(fields.child("address")).hasToString("city");
+    }
+
+    @Test
+    void blankSpecsSelectEverything() {
+        assertThat(FieldProjection.parse(null)).isNull();
+        assertThat(FieldProjection.parse("  ")).isNull();
+    }
+
+    @Test
+    void rejectsMalformedLists() {
+        assertThatIllegalArgumentException().isThrownBy(() -> FieldProjection.parse("a,"))
+                .withMessage("Invalid field list 'a,': field name expected at 2");
+        assertThatIllegalArgumentException().isThrownBy(() -> FieldProjection.parse("a(b"))
+                .withMessage("Invalid field list 'a(b': missing ')'");
+        assertThatIllegalArgumentException().isThrownBy(() -> FieldProjection.parse("a)b"))
+                .withMessage("Invalid field list 'a)b': unexpected ')'");
+        assertThatIllegalArgumentException().isThrownBy(() -> FieldProjection.parse("a..b"));
+    }
+
+    @Test
+    void writesTheSelectedPropertiesOfBeans() throws IOException {
+        Order order = new Order(7, "open", new Address("Lyon", "69001"), List.of(new Line("A1", 2), new Line("B2", 1)));
+
+        assertThat(project(order, "id,address.city,lines(sku)")).isEqualTo(
+                "{\"id\":7,\"address\":{\"city\":\"Lyon\"},\"lines\":[{\"sku\":\"A1\"},{\"sku\":\"B2\"}]}");
+        assertThat(project(order, "address,unknown")).isEqualTo("{\"address\":{\"city\":\"Lyon\",\"zip\":\"69001\"}}");
+    }
+
+    @Test
+    void usesTheSerializedNames() throws IOException {
+        assertThat(project(new Order(7, "open", null, List.of()), "order_state")).isEqualTo(
+                "{\"order_state\":\"open\"}");
+    }
+
+    @Test
+    void neverReadsThePropertiesLeftOut() throws IOException {
+        assertThat(project(new Lazy(), "id")).isEqualTo("{\"id\":1}");
+    }
+
+    @Test
+    void projectsMapsNodesCollectionsAndArrays() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", 1);
+        map.put("tags", List.of(Map.of("name", "x", "color", "red")));
+
+        assertThat(project(map, "tags.name")).isEqualTo("{\"tags\":[{\"name\":\"x\"}]}");
+        assertThat(project(mapper.readTree("{\"a\":1,\"b\":{\"c\":2,\"d\":3}}"), "b.d")).isEqualTo("{\"b\":{\"d\":3}}");
+        assertThat(project(new Address[]{new Address("Lyon", "69001")}, "zip")).isEqualTo("[{\"zip\":\"69001\"}]");
+        assertThat(project(List.of(1, 2), "id")).isEqualTo("[1,2]");
+    }
+
+    @Test
+    void leavesRawAndProjectedValuesAsTheyAre() {
+        FieldProjection fields = FieldProjection.parse("id");
+        RawJson raw = RawJson.of("{\"id\":1,\"name\":\"x\"}");
+        Object projected = fields.apply(Map.of("id", 1));
+
+        assertThat(fields.apply(raw)).isSameAs(raw);
+        assertThat(fields.apply(projected)).isSameAs(projected);
+        assertThat(fields.apply(null)).isNull();
+        assertThat(fields.apply(new Truncated(List.of(Map.of("id", 1)), "1"))).isInstanceOfSatisfying(
+                Truncated.class, truncated -> assertThat(truncated.data()).first().isInstanceOf(Projected.class));
+    }
+
+    private String project(Object data, String fields) throws IOException {
+        return mapper.writeValueAsString(FieldProjection.parse(fields).apply(data));
+    }
+
+    public record Order(int id, @JsonProperty("order_state") String state, Address address, List<Line> lines) {
+    }
+
+    public record Address(String city, String zip) {
+    }
+
+    public record Line(String sku, int qty) {
+    }
+
+    public static class Lazy {
+
+        public int getId() {
+            return 1;
+        }
+
+        public String getDetails() {
+            throw new IllegalStateException("not loaded");
+        }
+    }
+}
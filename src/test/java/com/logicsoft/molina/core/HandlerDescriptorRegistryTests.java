@@ -0,0 +1,85 @@
+package com.logicsoft.molina.core;
+
+import com.logicsoft.molina.annotations.ResponseHandler;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HandlerDescriptorRegistryTests {
+
+    private final HandlerDescriptorRegistry registry = new HandlerDescriptorRegistry();
+
+    @Test
+    void findsAnnotatedMethodsOnly() throws Exception {
+        assertThat(registry.find(Handlers.class.getMethod("wrapped"))).isNotNull();
+        assertThat(registry.find(Handlers.class.getMethod("plain"))).isNull();
+        assertThat(registry.getDescriptors()).hasSize(1);
+    }
+
+    @Test
+    void listenerMayLookUpOtherDescriptors() throws Exception {
+        Method other = Handlers.class.getMethod("other");
+        List<HandlerDescriptor> seen = new ArrayList<>();
+        registry.addListener(d -> {
+            seen.add(d);
+            if (!d.getMethod().equals(other)) registry.find(other);
+        });
+
+        HandlerDescriptor wrapped = registry.find(Handlers.class.getMethod("wrapped"));
+
+        assertThat(wrapped).isNotNull();
+        assertThat(seen).extracting(HandlerDescriptor::getMethod)
+                .containsExactlyInAnyOrder(Handlers.class.getMethod("wrapped"), other);
+    }
+
+    @Test
+    void concurrentLookupsNotifyListenersOnce() throws Exception {
+        Method method = Handlers.class.getMethod("wrapped");
+        AtomicInteger calls = new AtomicInteger();
+        registry.addListener(d -> calls.incrementAndGet());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<HandlerDescriptor>> found = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                found.add(pool.submit(() -> {
+                    start.await();
+                    return registry.find(method);
+                }));
+            }
+            start.countDown();
+            HandlerDescriptor first = found.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<HandlerDescriptor> f : found) assertThat(f.get(5, TimeUnit.SECONDS)).isSameAs(first);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    static class Handlers {
+
+        @ResponseHandler
+        public String wrapped() {
+            return "w";
+        }
+
+        @ResponseHandler
+        public String other() {
+            return "o";
+        }
+
+        public String plain() {
+            return "p";
+        }
+    }
+}
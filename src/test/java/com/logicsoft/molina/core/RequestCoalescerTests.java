@@ -0,0 +1,112 @@
+package com.logicsoft.molina.core;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCoalescerTests {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final RequestCoalescer.Key key = new RequestCoalescer.Key(Object.class.getMethods()[0], "/items",
+            null, List.of(), null);
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger joined = new AtomicInteger();
+
+    @Test
+    void identicalRequestsShareOnePendingWork() {
+        Sinks.One<String> work = Sinks.one();
+
+        Mono<String> first = join(work);
+        Mono<String> second = join(work);
+        AtomicReference<String> firstValue = new AtomicReference<>();
+        AtomicReference<String> secondValue = new AtomicReference<>();
+        first.subscribe(firstValue::set);
+        second.subscribe(secondValue::set);
+        work.tryEmitValue("v");
+
+        assertThat(started).hasValue(1);
+        assertThat(joined).hasValue(1);
+        assertThat(firstValue).hasValue("v");
+        assertThat(secondValue).hasValue("v");
+    }
+
+    @Test
+    void releasesTheKeyOnceTheWorkSignalsItsResult() {
+        Sinks.One<String> work = Sinks.one();
+        join(work).subscribe();
+        work.tryEmitValue("v");
+
+        Sinks.One<String> next = Sinks.one();
+        AtomicReference<String> value = new AtomicReference<>();
+        join(next).subscribe(value::set);
+        next.tryEmitValue("w");
+
+        assertThat(started).hasValue(2);
+        assertThat(joined).hasValue(0);
+        assertThat(value).hasValue("w");
+    }
+
+    @Test
+    void sharesTheErrorWithEveryWaitingRequest() {
+        Sinks.One<String> work = Sinks.one();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        AtomicReference<Throwable> secondError = new AtomicReference<>();
+        join(work).subscribe(v -> { }, firstError::set);
+        join(work).subscribe(v -> { }, secondError::set);
+        IllegalStateException failure = new IllegalStateException("upstream down");
+        work.tryEmitError(failure);
+
+        assertThat(firstError).hasValue(failure);
+        assertThat(secondError).hasValue(failure);
+        // The failure is not reused either
+        join(Sinks.one()).subscribe();
+        assertThat(started).hasValue(2);
+    }
+
+    @Test
+    void cancelsTheWorkOnlyWhenEveryRequestHasGoneAway() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Sinks.One<String> work = Sinks.one();
+        Mono<String> source = work.asMono().doOnCancel(() -> cancelled.set(true));
+        Disposable first = coalescer.join(key, () -> source, joined::incrementAndGet).subscribe();
+        Disposable second = coalescer.join(key, () -> source, joined::incrementAndGet).subscribe();
+
+        first.dispose();
+        assertThat(cancelled).isFalse();
+        second.dispose();
+        assertThat(cancelled).isTrue();
+
+        join(Sinks.one()).subscribe();
+        assertThat(started).hasValue(1);
+        assertThat(joined).hasValue(1);
+    }
+
+    @Test
+    void requestsOfAnotherKeyRunTheirOwnWork() {
+        RequestCoalescer.Key other = new RequestCoalescer.Key(key.handler(), "/items", "page=2", List.of(), null);
+        Sinks.One<String> work = Sinks.one();
+        join(work).subscribe();
+        coalescer.join(other, () -> {
+            started.incrementAndGet();
+            return Mono.just("x");
+        }, joined::incrementAndGet).subscribe();
+
+        assertThat(started).hasValue(2);
+        assertThat(joined).hasValue(0);
+    }
+
+    private Mono<String> join(Sinks.One<String> work) {
+        return coalescer.join(key, () -> {
+            started.incrementAndGet();
+            return work.asMono();
+        }, joined::incrementAndGet);
+    }
+}
@@ -0,0 +1,32 @@
+package com.logicsoft.molina.exception;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadlineExceededExceptionTests {
+
+    @Test
+    void capturesTheStackTraceOfTheRaisingCode() {
+        DeadlineExceededException ex = new DeadlineExceededException(250, true);
+
+        assertThat(ex.getStackTrace()).isNotEmpty();
+        assertThat(ex.getStackTrace()[0].getMethodName()).isEqualTo("capturesTheStackTraceOfTheRaisingCode");
+        assertThat(ex.getStatusCode().value()).isEqualTo(504);
+        assertThat(ex.getReason()).isEqualTo("Deadline of 250 ms exceeded");
+    }
+
+    @Test
+    void skipsTheStackTraceWhenAskedTo() {
+        assertThat(new DeadlineExceededException(250, false).getStackTrace()).isEmpty();
+        assertThat(new ResultTooLargeException("Over 10 bytes", false).getStackTrace()).isEmpty();
+    }
+
+    @Test
+    void eachInstanceDecidesForItself() {
+        new DeadlineExceededException(250, false);
+
+        assertThat(new DeadlineExceededException(250).getStackTrace()).isNotEmpty();
+        assertThat(new ResultTooLargeException("Over 10 bytes").getStackTrace()).isNotEmpty();
+    }
+}
@@ -0,0 +1,60 @@
+package com.logicsoft.molina.exception;
+
+import com.logicsoft.molina.exception.ExceptionClassifier.Classification;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExceptionClassifierTests {
+
+    private final ExceptionClassifier classifier = ExceptionClassifier.defaults();
+
+    @Test
+    void unmappedExceptionsKeepTheirMessageOutOfTheEnvelope() {
+        Classification c = classifier.classify(new IllegalStateException("jdbc:postgresql://db/prod refused"));
+
+        assertThat(c.status()).isEqualTo(500);
+        assertThat(c.message()).isEqualTo(ExceptionClassifier.UNEXPECTED_ERROR);
+        assertThat(c.errors()).isNull();
+    }
+
+    @Test
+    void serverErrorsOfAnyRuleCarryNoErrors() {
+        classifier.register(UnsupportedOperationException.class, 503, "Unavailable", e -> Map.of("_reason", "x"));
+
+        assertThat(classifier.classify(new UnsupportedOperationException()).errors()).isNull();
+        assertThat(classifier.classify(new ResponseStatusException(HttpStatus.BAD_GATEWAY, "upstream")).errors())
+                .isNull();
+    }
+
+    @Test
+    void clientErrorsKeepTheirErrors() {
+        assertThat(classifier.classify(new IllegalArgumentException("bad id")).errors())
+                .containsExactly(Map.entry("_error", "bad id"));
+        assertThat(classifier.classify(new ResponseStatusException(HttpStatus.NOT_FOUND, "no item")).errors())
+                .containsExactly(Map.entry("_reason", "no item"));
+    }
+
+    @Test
+    void exposingServerErrorsIsAnOptIn() {
+        classifier.exposeServerErrors(true);
+
+        assertThat(classifier.classify(new IllegalStateException("boom")).errors())
+                .containsExactly(Map.entry("_error", "boom"));
+        assertThat(classifier.classify(new IllegalStateException()).errors())
+                .containsExactly(Map.entry("_error", "IllegalStateException"));
+    }
+
+    @Test
+    void closestSupertypeRuleApplies() {
+        classifier.register(RuntimeException.class, 409, "Conflict", e -> null);
+
+        assertThat(classifier.classify(new IllegalStateException()).status()).isEqualTo(409);
+        assertThat(classifier.classify(new IllegalArgumentException()).status()).isEqualTo(400);
+        assertThat(classifier.classify(new Exception()).status()).isEqualTo(500);
+    }
+}
@@ -0,0 +1,70 @@
+package com.logicsoft.molina.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTests {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long QUEUED = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void rejectsOnceTheLimitIsInFlight() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+        first.release(false);
+        first.release(false);
+        assertThat(limiter.getInflight()).isEqualTo(1);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void probesUpwardWhileLatencyHolds() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 50);
+
+        for (int i = 0; i < 20; i++) limiter.sample(FAST, limiter.getLimit());
+
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+    }
+
+    @Test
+    void shrinksWhenRequestsStartToQueue() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(40, 4, 200);
+        for (int i = 0; i < 200; i++) limiter.sample(FAST, 40);
+        int settled = limiter.getLimit();
+
+        for (int i = 0; i < 50; i++) limiter.sample(QUEUED, limiter.getLimit());
+
+        assertThat(limiter.getLimit()).isLessThan(settled / 2);
+    }
+
+    @Test
+    void ignoresSamplesOfAnUnderusedLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(40, 4, 200);
+
+        for (int i = 0; i < 50; i++) limiter.sample(i % 2 == 0 ? FAST : QUEUED, 1);
+
+        assertThat(limiter.getLimit()).isEqualTo(40);
+    }
+
+    @Test
+    void staysWithinItsBounds() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 5, 12);
+        for (int i = 0; i < 100; i++) limiter.sample(FAST, limiter.getLimit());
+        assertThat(limiter.getLimit()).isEqualTo(12);
+
+        for (int i = 0; i < 200; i++) limiter.sample(QUEUED * (i + 1), limiter.getLimit());
+        assertThat(limiter.getLimit()).isEqualTo(5);
+
+        assertThat(new AdaptiveConcurrencyLimiter(100, 0, 3).getLimit()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,78 @@
+package com.logicsoft.molina.limit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logicsoft.molina.annotations.Limited;
+import com.logicsoft.molina.annotations.ResponseHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+@SpringBootTest(classes = ConcurrencyLimitMvcTests.App.class)
+@AutoConfigureMockMvc
+class ConcurrencyLimitMvcTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void rejectsRequestsOverTheLimitWith503UntilThePermitIsReleased() throws Exception {
+        MvcResult holding = mvc.perform(get("/limited").accept(MediaType.APPLICATION_JSON)).andReturn();
+        assertThat(holding.getRequest().isAsyncStarted()).isTrue();
+
+        MockHttpServletResponse rejected = mvc.perform(get("/limited").accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+        JsonNode envelope = mapper.readTree(rejected.getContentAsByteArray());
+        assertThat(envelope.get("status").asInt()).isEqualTo(503);
+        assertThat(envelope.get("result").asBoolean()).isFalse();
+        assertThat(envelope.get("timestamp").asText()).isNotEmpty();
+
+        Handlers.pending.setResult(Map.of("done", true));
+        assertThat(mvc.perform(asyncDispatch(holding)).andReturn().getResponse().getStatus()).isEqualTo(200);
+        MvcResult next = mvc.perform(get("/limited").accept(MediaType.APPLICATION_JSON)).andReturn();
+        assertThat(next.getRequest().isAsyncStarted()).isTrue();
+        Handlers.pending.setResult(Map.of("done", true));
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import(Handlers.class)
+    static class App {
+    }
+
+    @RestController
+    static class Handlers {
+
+        static volatile DeferredResult<Map<String, Object>> pending;
+
+        @GetMapping("/limited")
+        @ResponseHandler(limit = @Limited(enabled = true, initialLimit = 1, minLimit = 1, maxLimit = 1,
+                retryAfterSeconds = 3))
+        public DeferredResult<Map<String, Object>> limited() {
+            pending = new DeferredResult<>();
+            return pending;
+        }
+    }
+}